@@ -1,7 +1,7 @@
 package rt.tests.accumappender;
 
 import org.apache.logging.log4j.Level;
-import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Core;
 import org.apache.logging.log4j.core.Filter;
@@ -16,29 +16,47 @@ import org.apache.logging.log4j.core.config.plugins.*;
 import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.core.util.Booleans;
 import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.StringMap;
+import rt.tests.accumappender.file.Spill;
+import rt.tests.logger.FieldsMessage;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import static org.apache.logging.log4j.Level.ERROR;
-import static rt.tests.accumappender.Markers.*;
 
 
 @Plugin(name = "Accumulating", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
 public class AccumulatingAppender extends AbstractAppender {
 
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
     private static volatile AccumulatingAppender instance;
-    private static final ThreadLocal<List<LogEvent>> logs = ThreadLocal.withInitial(() -> new ArrayList<>());
 
     private final Configuration config;
     private final ConcurrentMap<String, AppenderControl> appenders = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TransactionControl> transactionAppenders = new ConcurrentHashMap<>();
+    // Per instance, so the events and their count stay with the appender which accumulated them
+    private final ThreadLocal<List<LogEvent>> logs = ThreadLocal.withInitial(this::newThreadLogs);
+    // The current list of every thread by its id, to take the events of the dead threads off the count
+    private final ConcurrentMap<Long, List<LogEvent>> threadLogs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, List<LogEvent>> handedOffLogs = new ConcurrentHashMap<>();
+    private final LongCounter bufferedEvents = new LongCounter();
+    private volatile long nextDeadThreadsCheck = System.nanoTime();
     private final RewritePolicy rewritePolicy;
     private final AppenderRef[] appenderRefs;
     private final Level passThroughLevel;
     private final boolean passExceptions;
+    private final MarkerPolicyTable markerPolicies;
+    private final Spill spill;
 
 
     /**
@@ -51,6 +69,8 @@ public class AccumulatingAppender extends AbstractAppender {
      * @param config        The Configuration.
      * @param rewritePolicy The policy to use to modify the event.
      * @param filter        A Filter to filter events.
+     * @param markerPolicies What to do with the accumulated events on the marked ones, see {@link MarkerPolicy}.
+     * @param spill         Where to write the accumulated events as they arrive, to recover them after a crash.
      * @return The created AccumulatingAppender.
      */
     @PluginFactory
@@ -62,7 +82,9 @@ public class AccumulatingAppender extends AbstractAppender {
             @PluginElement("AppenderRef") final AppenderRef[] appenderRefs,
             @PluginConfiguration final Configuration config,
             @PluginElement("RewritePolicy") final RewritePolicy rewritePolicy, // TODO implement later
-            @PluginElement("Filter") final Filter filter) { // TODO implement later
+            @PluginElement("Filter") final Filter filter, // TODO implement later
+            @PluginElement("MarkerPolicy") final MarkerPolicy[] markerPolicies,
+            @PluginElement("Spill") final Spill spill) {
 
         final boolean ignoreExceptions = Booleans.parseBoolean(ignore, true);
         final boolean passExceptions = Booleans.parseBoolean(passExceptionThrough, true);
@@ -78,7 +100,7 @@ public class AccumulatingAppender extends AbstractAppender {
         Level passThroughlevel = Level.toLevel(passThroughLevel, ERROR);
 
         instance = new AccumulatingAppender(name, passThroughlevel, ignoreExceptions, passExceptions,
-                appenderRefs, filter, rewritePolicy, config, null);
+                appenderRefs, filter, rewritePolicy, markerPolicies, spill, config, null);
         return instance;
     }
 
@@ -87,6 +109,8 @@ public class AccumulatingAppender extends AbstractAppender {
                                  final AppenderRef[] appenderRefs,
                                  final Filter filter,
                                  final RewritePolicy rewritePolicy,
+                                 final MarkerPolicy[] markerPolicies,
+                                 final Spill spill,
                                  final Configuration config, final Property[] properties) {
         super(name, filter, null, ignoreExceptions, properties);
 
@@ -95,11 +119,16 @@ public class AccumulatingAppender extends AbstractAppender {
         this.passExceptions = passExceptions;
         this.rewritePolicy = rewritePolicy;
         this.appenderRefs = appenderRefs;
+        this.markerPolicies = new MarkerPolicyTable(markerPolicies);
+        this.spill = spill;
     }
 
     @Override
     public void start() {
         clearLogEvents();
+        if (spill != null) {
+            spill.recover();
+        }
 
         for (final AppenderRef ref : appenderRefs) {
             final String name = ref.getRef();
@@ -108,6 +137,10 @@ public class AccumulatingAppender extends AbstractAppender {
                 final Filter filter = appender instanceof AbstractAppender ?
                         ((AbstractAppender) appender).getFilter() : null;
                 appenders.put(name, new AppenderControl(appender, ref.getLevel(), filter));
+                if (appender instanceof TransactionAppender) {
+                    transactionAppenders.put(name,
+                            new TransactionControl((TransactionAppender) appender, ref.getLevel(), filter));
+                }
             } else {
                 LOGGER.error("Appender " + ref + " cannot be located. Reference ignored");
             }
@@ -116,20 +149,144 @@ public class AccumulatingAppender extends AbstractAppender {
         super.start();
     }
 
+    /**
+     * The transactions which have not ended are not flushed, as the appenders they would go to may be stopped
+     * already: their events are dropped and counted to the status logger.
+     */
     @Override
     public boolean stop(long timeout, TimeUnit timeUnit) {
-        clearLogEvents();
+        reportDropped(clearLogEvents());
+        closeSpill();
         return super.stop(timeout, timeUnit);
     }
 
     @Override
     public void stop() {
-        clearLogEvents();
+        reportDropped(clearLogEvents());
+        closeSpill();
         super.stop();
     }
 
-    private void clearLogEvents() {
+    private void reportDropped(long dropped) {
+        if (dropped > 0) {
+            LOGGER.warn("AccumulatingAppender {} stopped with {} events of unfinished transactions, dropped",
+                    getName(), dropped);
+        }
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    /**
+     * @return The number of events dropped.
+     */
+    private long clearLogEvents() {
+        long dropped = removeThreadLogs().size();
+        for (Long threadId : handedOffLogs.keySet()) {
+            List<LogEvent> logEvents = handedOffLogs.remove(threadId);
+            if (logEvents != null) {
+                dropped += logEvents.size();
+            }
+        }
+        bufferedEvents.addAndGet(-dropped);
+        return dropped;
+    }
+
+    /**
+     * The events of the threads which died in a transaction are taken off the count at most once a second.
+     *
+     * @return The number of events accumulated by all the threads and not logged yet.
+     */
+    public long getBufferedEventCount() {
+        final long now = System.nanoTime();
+        if (now - nextDeadThreadsCheck >= 0) {
+            nextDeadThreadsCheck = now + TimeUnit.SECONDS.toNanos(1);
+            dropLogsOfDeadThreads(threadLogs);
+        }
+        return bufferedEvents.get();
+    }
+
+    /**
+     * Events handed over by an asynchronous logger are appended on a background thread, so these are accumulated
+     * by the id of the thread which logged them.
+     */
+    private boolean isHandedOff(LogEvent event) {
+        return event.getThreadId() != Thread.currentThread().getId();
+    }
+
+    private List<LogEvent> getLogEvents(LogEvent event) {
+        if (isHandedOff(event)) {
+            final List<LogEvent> logEvents = handedOffLogs.get(event.getThreadId());
+            if (logEvents != null) {
+                return logEvents;
+            }
+            dropLogsOfDeadThreads(handedOffLogs);
+            return handedOffLogs.computeIfAbsent(event.getThreadId(), threadId -> new ArrayList<>());
+        }
+        return logs.get();
+    }
+
+    /**
+     * The first event of a thread drops the events the dead threads accumulated. The list a thread gets after a
+     * flush replaces its own entry, without another check.
+     */
+    private List<LogEvent> newThreadLogs() {
+        final List<LogEvent> logEvents = new ArrayList<>();
+        if (threadLogs.put(Thread.currentThread().getId(), logEvents) == null) {
+            dropLogsOfDeadThreads(threadLogs);
+        }
+        return logEvents;
+    }
+
+    private List<LogEvent> removeThreadLogs() {
+        final List<LogEvent> logEvents = logs.get();
         logs.remove();
+        threadLogs.put(Thread.currentThread().getId(), Collections.emptyList());
+        return logEvents;
+    }
+
+    /**
+     * The transactions of a thread which ended without a flushing marker would stay in {@link #threadLogs} or
+     * {@link #handedOffLogs} forever: they are dropped whenever another thread logs or hands over its first events,
+     * like the spill files of the dead threads. The handed-off ones are only dropped by the thread appending them.
+     */
+    private void dropLogsOfDeadThreads(final ConcurrentMap<Long, List<LogEvent>> map) {
+        final long[] live = THREADS.getAllThreadIds();
+        Arrays.sort(live);
+        long dropped = 0;
+        for (Long threadId : map.keySet()) {
+            if (Arrays.binarySearch(live, threadId) < 0) {
+                final List<LogEvent> logEvents = map.remove(threadId);
+                if (logEvents != null) {
+                    dropped += logEvents.size();
+                }
+            }
+        }
+        if (dropped > 0) {
+            bufferedEvents.addAndGet(-dropped);
+            LOGGER.warn("AccumulatingAppender {} dropped {} events of threads which ended in a transaction",
+                    getName(), dropped);
+        }
+    }
+
+    private List<LogEvent> removeLogEvents(LogEvent event) {
+        if (spill != null) {
+            spill.reset(event.getThreadId(), isHandedOff(event));
+        }
+        if (isHandedOff(event)) {
+            List<LogEvent> logEvents = handedOffLogs.remove(event.getThreadId());
+            if (logEvents == null) {
+                return new ArrayList<>();
+            }
+            bufferedEvents.addAndGet(-logEvents.size());
+            return logEvents;
+        }
+        List<LogEvent> logEvents = removeThreadLogs();
+        bufferedEvents.addAndGet(-logEvents.size());
+        return logEvents;
     }
 
     @Override
@@ -138,14 +295,26 @@ public class AccumulatingAppender extends AbstractAppender {
 //        if (rewritePolicy != null) {
 //            event = rewritePolicy.rewrite(event);
 //        }
-        logs.get().add(event.toImmutable());    // TODO wrap it
-
-        Marker marker = event.getMarker();
+        List<LogEvent> logEvents = getLogEvents(event);
+        LogEvent accumulated = ContextSnapshots.share(event.toImmutable(), logEvents);
+        logEvents.add(accumulated);
+        bufferedEvents.incrementAndGet();
+        if (spill != null) {
+            spill.append(accumulated, isHandedOff(event));
+        }
 
-        if (marker == SUCCESS) {
-            logAccumulatedEvents(event);
-        } else if (marker == FAIL) {
-            logAccumulatedEvents(event);
+        FlushAction action = markerPolicies.getAction(event.getMarker());
+
+        if (action == FlushAction.FLUSH_ALL) {
+            logAccumulatedEvents(event, removeLogEvents(event), false);
+        } else if (action == FlushAction.FLUSH_SUMMARY) {
+            logAccumulatedEvents(event, removeLogEvents(event), true);
+        } else if (action == FlushAction.CHECKPOINT) {
+            logAccumulatedEvents(event, getLogEvents(event), false);
+        } else if (action == FlushAction.DISCARD) {
+            removeLogEvents(event);
+        } else if (action == FlushAction.PASS_THROUGH) {
+            propagateEventFurther(event);
         } else if (event.getLevel().isMoreSpecificThan(passThroughLevel)) {
             propagateEventFurther(event);
         } else if (event.getThrown() != null && this.passExceptions) {
@@ -159,17 +328,31 @@ public class AccumulatingAppender extends AbstractAppender {
         }
     }
 
-    private void logAccumulatedEvents(LogEvent logEvent) {
-        List<LogEvent> logEvents = logs.get();
-        logs.remove();
+    /**
+     * The {@link TransactionAppender}s get the accumulated events themselves, unless only a summary is logged.
+     * The event with the messages joined is only made for the other appenders.
+     */
+    private void logAccumulatedEvents(LogEvent logEvent, List<LogEvent> logEvents, boolean summary) {
+        if (!summary && !transactionAppenders.isEmpty()) {
+            for (final TransactionControl control : transactionAppenders.values()) {
+                control.callAppender(logEvent, logEvents);
+            }
+            if (transactionAppenders.size() == appenders.size()) {
+                return;
+            }
+        }
 
         StringBuilder sb = new StringBuilder();
+        ContextSnapshots.Merger contextData = new ContextSnapshots.Merger();
         LogEvent lastWithThrown = null;
         for (LogEvent event : logEvents) {
-            if (sb.length() > 0)
-                sb.append(" : ");
+            if (!summary) {
+                if (sb.length() > 0)
+                    sb.append(" : ");
 
-            sb.append(event.getMessage().getFormattedMessage());
+                sb.append(event.getMessage().getFormattedMessage());
+            }
+            mergeContextData(contextData, event);
 
             if (!this.passExceptions) {
                 if (event.getThrown() != null) {
@@ -177,17 +360,47 @@ public class AccumulatingAppender extends AbstractAppender {
                 }
             }
         }
+        if (summary) {
+            sb.append(logEvent.getMessage().getFormattedMessage())
+                    .append(" [").append(logEvents.size() - 1).append(" events accumulated]");
+        }
         String formattedMessage = sb.toString();
 
         if (logEvent.getThrown() != null) {
             lastWithThrown = logEvent;
         }
 
-        LogEvent eventToLog = makeLogEventCopy(logEvent, formattedMessage, lastWithThrown);
-        propagateEventFurther(eventToLog);
+        // The flushing event is the last one accumulated, its stack is the shared one
+        ThreadContext.ContextStack contextStack = logEvents.isEmpty() ?
+                logEvent.getContextStack() : logEvents.get(logEvents.size() - 1).getContextStack();
+
+        LogEvent eventToLog = makeLogEventCopy(logEvent, formattedMessage, contextData.get(), contextStack,
+                lastWithThrown);
+        if (summary || transactionAppenders.isEmpty()) {
+            propagateEventFurther(eventToLog);
+        } else {
+            for (final Map.Entry<String, AppenderControl> entry : appenders.entrySet()) {
+                if (!transactionAppenders.containsKey(entry.getKey())) {
+                    entry.getValue().callAppender(eventToLog);
+                }
+            }
+        }
+    }
+
+    /**
+     * The structured fields of the accumulated events are kept as context data, the later events overwriting the
+     * values of the earlier ones.
+     */
+    private static void mergeContextData(ContextSnapshots.Merger contextData, LogEvent event) {
+        contextData.merge(event.getContextData());
+        if (event.getMessage() instanceof FieldsMessage) {
+            ((FieldsMessage) event.getMessage()).putFields(contextData.mutable());
+        }
     }
 
-    private LogEvent makeLogEventCopy(LogEvent event, String formattedMessage, LogEvent lastWithThrown) {
+    private LogEvent makeLogEventCopy(LogEvent event, String formattedMessage, StringMap contextData,
+                                      ThreadContext.ContextStack contextStack,
+                                      LogEvent lastWithThrown) {
         Log4jLogEvent.Builder builder = Log4jLogEvent.newBuilder()
                 .setMarker(event.getMarker())
                 .setLevel(event.getLevel())
@@ -196,8 +409,8 @@ public class AccumulatingAppender extends AbstractAppender {
                 .setInstant(event.getInstant())
                 .setTimeMillis(event.getTimeMillis())
                 .setNanoTime(event.getNanoTime())
-                .setContextData(null)   // TODO
-                .setContextStack(null)  // TODO
+                .setContextData(contextData)
+                .setContextStack(contextStack)
                 .setEndOfBatch(event.isEndOfBatch())
                 .setIncludeLocation(event.isIncludeLocation())
                 .setLoggerFqcn(event.getLoggerFqcn())
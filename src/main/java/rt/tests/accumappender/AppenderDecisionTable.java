@@ -0,0 +1,145 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.AppenderControl;
+import org.apache.logging.log4j.core.filter.CompositeFilter;
+import org.apache.logging.log4j.core.filter.LevelRangeFilter;
+import org.apache.logging.log4j.core.filter.MarkerFilter;
+import org.apache.logging.log4j.core.filter.ThresholdFilter;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.spi.StandardLevel;
+import rt.tests.logger.ExtLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The appenders an {@link ExtLoggerConfig} passes an event to, precomputed for every combination of logger kind
+ * ({@code ExtLogger} or not), standard level and {@link Markers} value.
+ * <p>
+ * Each cell is computed by running the level and the filter of every appender reference on a sample event, so only
+ * filters whose result depends on nothing else can be compiled: {@link ExtLoggerFilter}, {@link NoExtLoggerFilter},
+ * {@code ThresholdFilter}, {@code LevelRangeFilter}, {@code MarkerFilter} and composites of those. The appenders of a
+ * cell are called through controls without level nor filter, so the reference checks are not repeated; the appender
+ * filters and the recursion guard still apply.
+ * </p>
+ */
+final class AppenderDecisionTable {
+
+    private static final StandardLevel[] LEVELS = StandardLevel.values();
+    private static final Markers[] MARKERS = Markers.values();
+    private static final String OTHER_FQCN = "org.apache.logging.log4j.spi.AbstractLogger";
+
+    private final AppenderControl[][] cells;
+
+    private AppenderDecisionTable(AppenderControl[][] cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * @return The table, or {@code null} if one of the references has a filter which cannot be compiled.
+     */
+    static AppenderDecisionTable compile(Collection<Route> routes) {
+        for (Route route : routes) {
+            if (!isCompilable(route.filter)) {
+                return null;
+            }
+        }
+        final List<AppenderControl> controls = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            controls.add(new AppenderControl(route.appender, null, null));
+        }
+
+        final AppenderControl[][] cells = new AppenderControl[2 * LEVELS.length * (MARKERS.length + 1)][];
+        for (int kind = 0; kind < 2; kind++) {
+            for (StandardLevel level : LEVELS) {
+                for (int marker = 0; marker <= MARKERS.length; marker++) {
+                    final LogEvent sample = Log4jLogEvent.newBuilder()
+                            .setLoggerFqcn(kind == 1 ? ExtLogger.FQCN : OTHER_FQCN)
+                            .setLevel(Level.getLevel(level.name()))
+                            .setMarker(marker == 0 ? null : MARKERS[marker - 1])
+                            .setMessage(new SimpleMessage(""))
+                            .build();
+                    final List<AppenderControl> targets = new ArrayList<>();
+                    int i = 0;
+                    for (Route route : routes) {
+                        if (route.accepts(sample)) {
+                            targets.add(controls.get(i));
+                        }
+                        i++;
+                    }
+                    cells[index(kind, level.ordinal(), marker)] = targets.toArray(new AppenderControl[0]);
+                }
+            }
+        }
+        return new AppenderDecisionTable(cells);
+    }
+
+    private static boolean isCompilable(Filter filter) {
+        if (filter == null || filter instanceof ExtLoggerFilter || filter instanceof ThresholdFilter
+                || filter instanceof LevelRangeFilter || filter instanceof MarkerFilter) {
+            return true;
+        }
+        if (filter instanceof CompositeFilter) {
+            for (Filter part : ((CompositeFilter) filter).getFiltersArray()) {
+                if (!isCompilable(part)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static int index(int kind, int level, int marker) {
+        return (kind * LEVELS.length + level) * (MARKERS.length + 1) + marker;
+    }
+
+    /**
+     * @return The appenders to call, or {@code null} if the event has a custom level or a foreign marker.
+     */
+    AppenderControl[] lookup(LogEvent event) {
+        final Level level = event.getLevel();
+        final StandardLevel standardLevel = level.getStandardLevel();
+        if (standardLevel.intLevel() != level.intLevel()) {
+            return null;
+        }
+        final Marker marker = event.getMarker();
+        final int markerIndex;
+        if (marker == null) {
+            markerIndex = 0;
+        } else if (marker instanceof Markers) {
+            markerIndex = ((Markers) marker).ordinal() + 1;
+        } else {
+            return null;
+        }
+        final int kind = LoggerClassifier.isExtLoggerFqcn(event.getLoggerFqcn()) ? 1 : 0;
+        return cells[index(kind, standardLevel.ordinal(), markerIndex)];
+    }
+
+    /**
+     * An appender reference of a logger configuration.
+     */
+    static final class Route {
+        final Appender appender;
+        final Level level;
+        final Filter filter;
+
+        Route(Appender appender, Level level, Filter filter) {
+            this.appender = appender;
+            this.level = level;
+            this.filter = filter;
+        }
+
+        boolean accepts(LogEvent event) {
+            return (filter == null || filter.filter(event) != Filter.Result.DENY)
+                    && (level == null || level.intLevel() >= event.getLevel().intLevel());
+        }
+    }
+}
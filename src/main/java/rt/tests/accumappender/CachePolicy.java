@@ -0,0 +1,20 @@
+package rt.tests.accumappender;
+
+/**
+ * How often the value of a resolved {@code ctxScg} key is computed, see
+ * {@link LogContextLookup#register(String, CachePolicy, long, java.util.concurrent.TimeUnit, java.util.function.Supplier)}.
+ */
+public enum CachePolicy {
+    /**
+     * Computed when registered, and again only after an invalidation.
+     */
+    CONSTANT,
+    /**
+     * Computed again when looked up after the time to live has passed, or after an invalidation.
+     */
+    TTL,
+    /**
+     * Computed for every event.
+     */
+    PER_EVENT
+}
@@ -0,0 +1,69 @@
+package rt.tests.accumappender;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A {@code ctxScg} value computed by a supplier and cached according to its {@link CachePolicy}.
+ * The cache is a single immutable entry swapped by CAS: concurrent lookups of an expired value may all compute it,
+ * but none of them blocks. An invalidation installs a new invalid entry rather than clearing it, so a value computed
+ * before the invalidation fails its CAS instead of being cached for good.
+ */
+final class CachedResolver {
+
+    private final CachePolicy policy;
+    private final long ttlNanos;
+    private final Supplier<String> supplier;
+    private final AtomicReference<Entry> entry = new AtomicReference<>(Entry.invalid());
+
+    CachedResolver(CachePolicy policy, long ttlNanos, Supplier<String> supplier) {
+        this.policy = policy;
+        this.ttlNanos = ttlNanos;
+        this.supplier = supplier;
+        if (policy == CachePolicy.CONSTANT) {
+            resolve(entry.get(), System.nanoTime());
+        }
+    }
+
+    String get() {
+        if (policy == CachePolicy.PER_EVENT) {
+            return supplier.get();
+        }
+        final Entry current = entry.get();
+        if (current.valid && (policy == CachePolicy.CONSTANT || System.nanoTime() - current.expiresAt < 0)) {
+            return current.value;
+        }
+        return resolve(current, System.nanoTime());
+    }
+
+    private String resolve(Entry current, long now) {
+        final String value = supplier.get();
+        entry.compareAndSet(current, new Entry(value, now + ttlNanos));
+        return value;
+    }
+
+    void invalidate() {
+        entry.set(Entry.invalid());
+    }
+
+    private static final class Entry {
+        final String value;
+        final long expiresAt;
+        final boolean valid;
+
+        Entry(String value, long expiresAt) {
+            this(value, expiresAt, true);
+        }
+
+        private Entry(String value, long expiresAt, boolean valid) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.valid = valid;
+        }
+
+        // A new instance every time, distinct from every entry a lookup may have observed
+        static Entry invalid() {
+            return new Entry(null, 0L, false);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringMap;
+
+import java.util.List;
+
+/**
+ * Shares the context data and the context stacks of accumulated events.
+ * <p>
+ * The events of a transaction mostly carry the same context data. An event whose context data equals the one of the
+ * previously accumulated event is given that event's frozen map, so the buffer keeps a single copy of it, and the
+ * flush only merges the maps which differ from the previous one.
+ * </p>
+ * <p>
+ * The context stacks are converted to {@link LinkedContextStack}s, each one sharing the frames it has in common with
+ * the stack of the previous event.
+ * </p>
+ */
+final class ContextSnapshots {
+
+    private ContextSnapshots() {
+    }
+
+    /**
+     * @param event       An immutable event about to be accumulated.
+     * @param accumulated The events accumulated before it.
+     * @return The event, or a copy of it referencing the frozen context data snapshot and the
+     * {@link LinkedContextStack} it shares.
+     */
+    static LogEvent share(LogEvent event, List<LogEvent> accumulated) {
+        final LogEvent previous = accumulated.isEmpty() ? null : accumulated.get(accumulated.size() - 1);
+        final ReadOnlyStringMap contextData = shareContextData(event.getContextData(), previous);
+        final ThreadContext.ContextStack contextStack = LinkedContextStack.share(event.getContextStack(),
+                previous == null ? null : previous.getContextStack());
+        if (contextData == event.getContextData() && contextStack == event.getContextStack()) {
+            return event;
+        }
+        final Log4jLogEvent.Builder builder = new Log4jLogEvent.Builder(event).setContextStack(contextStack);
+        if (contextData != event.getContextData()) {
+            builder.setContextData((StringMap) contextData);
+        }
+        return builder.build();
+    }
+
+    private static ReadOnlyStringMap shareContextData(ReadOnlyStringMap contextData, LogEvent previousEvent) {
+        if (contextData == null || contextData.isEmpty()) {
+            return contextData;
+        }
+        if (previousEvent != null) {
+            final ReadOnlyStringMap previous = previousEvent.getContextData();
+            if (previous == contextData) {
+                return contextData;
+            }
+            if (isFrozen(previous) && previous.equals(contextData)) {
+                return previous;
+            }
+        }
+        if (isFrozen(contextData)) {
+            return contextData;
+        }
+        final StringMap snapshot = ContextDataFactory.createContextData(contextData);
+        snapshot.freeze();
+        return snapshot;
+    }
+
+    private static boolean isFrozen(ReadOnlyStringMap contextData) {
+        return contextData instanceof StringMap && ((StringMap) contextData).isFrozen();
+    }
+
+    /**
+     * Merges the context data of the events being flushed, the later events overwriting the values of the earlier
+     * ones. A map equal to the previously merged one is skipped, and the snapshot itself is returned when all the
+     * events share it.
+     */
+    static final class Merger {
+        private ReadOnlyStringMap last;
+        private StringMap merged;
+        private boolean overwritten;
+
+        void merge(ReadOnlyStringMap contextData) {
+            if (contextData == null || contextData.isEmpty() || (contextData == last && !overwritten)) {
+                return;
+            }
+            if (merged == null && last == null && isFrozen(contextData)) {
+                last = contextData;
+                return;
+            }
+            mutable().putAll(contextData);
+            last = contextData;
+            overwritten = false;
+        }
+
+        /**
+         * @return The map to put values into, which are not part of the context data of the events.
+         */
+        StringMap mutable() {
+            if (merged == null) {
+                merged = ContextDataFactory.createContextData();
+                if (last != null) {
+                    merged.putAll(last);
+                }
+            }
+            overwritten = true;
+            return merged;
+        }
+
+        /**
+         * @return The frozen merged context data.
+         */
+        StringMap get() {
+            if (merged == null) {
+                if (last != null) {
+                    return (StringMap) last;
+                }
+                merged = ContextDataFactory.createContextData();
+            }
+            merged.freeze();
+            return merged;
+        }
+    }
+}
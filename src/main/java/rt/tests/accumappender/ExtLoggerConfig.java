@@ -1,21 +1,47 @@
 package rt.tests.accumappender;
 
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.config.*;
 import org.apache.logging.log4j.core.config.plugins.*;
 import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.util.PropertiesUtil;
 import org.apache.logging.log4j.util.Strings;
+import rt.tests.logger.ExtLogEventFactory;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * A {@link LoggerConfig} for {@link rt.tests.logger.ExtLogger}s. The levels and filters of its appender references are
+ * compiled into an {@link AppenderDecisionTable} whenever the appenders change, so picking the appenders of an event
+ * takes one array lookup. Events the table does not cover are routed the regular way.
+ */
 @Plugin(name = "ExtLogger", category = Node.CATEGORY, printObject = true)
 public class ExtLoggerConfig extends LoggerConfig {
 
+    private final Map<String, AppenderDecisionTable.Route> routes = new LinkedHashMap<>();
+    private volatile AppenderDecisionTable decisionTable;
+
     public ExtLoggerConfig(String name, List<AppenderRef> appenderRefs, Filter filter, Level level, boolean additivity,
                            Property[] properties, Configuration config, boolean includeLocation) {
         super(name, appenderRefs, filter, level, additivity, properties, config, includeLocation);
+        if (isDefaultLogEventFactory()) {
+            setLogEventFactory(new ExtLogEventFactory());
+        }
+    }
+
+    /**
+     * @return {@code false} if a factory is set with the {@code Log4jLogEventFactory} system property, which is then
+     * kept as it is.
+     */
+    protected static boolean isDefaultLogEventFactory() {
+        return PropertiesUtil.getProperties().getStringProperty(Constants.LOG4J_LOG_EVENT_FACTORY) == null;
     }
 
     /**
@@ -47,5 +73,55 @@ public class ExtLoggerConfig extends LoggerConfig {
                 includeLocation(includeLocation, config));
     }
 
+    @Override
+    public void addAppender(Appender appender, Level level, Filter filter) {
+        super.addAppender(appender, level, filter);
+        synchronized (routes) {
+            routes.putIfAbsent(appender.getName(), new AppenderDecisionTable.Route(appender, level, filter));
+            compileDecisionTable();
+        }
+    }
+
+    @Override
+    public void removeAppender(String name) {
+        super.removeAppender(name);
+        synchronized (routes) {
+            routes.remove(name);
+            compileDecisionTable();
+        }
+    }
 
+    @Override
+    protected void clearAppenders() {
+        synchronized (routes) {
+            routes.clear();
+            decisionTable = null;
+        }
+        super.clearAppenders();
+    }
+
+    private void compileDecisionTable() {
+        decisionTable = AppenderDecisionTable.compile(routes.values());
+    }
+
+    /**
+     * @return {@code true} if the appenders are picked by a decision table.
+     */
+    public boolean isDecisionTableCompiled() {
+        return decisionTable != null;
+    }
+
+    @Override
+    protected void callAppenders(LogEvent event) {
+        final AppenderDecisionTable table = decisionTable;
+        final AppenderControl[] controls = table == null ? null : table.lookup(event);
+        if (controls == null) {
+            super.callAppenders(event);
+            return;
+        }
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0; i < controls.length; i++) {
+            controls[i].callAppender(event);
+        }
+    }
 }
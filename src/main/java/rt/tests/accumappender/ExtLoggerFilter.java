@@ -10,7 +10,6 @@ import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
 import org.apache.logging.log4j.core.filter.AbstractFilter;
 import org.apache.logging.log4j.message.Message;
-import rt.tests.logger.ExtLogger;
 
 @Plugin(name = "ExtLoggerFilter", category = Node.CATEGORY, elementType = Filter.ELEMENT_TYPE, printObject = true)
 public class ExtLoggerFilter extends AbstractFilter {
@@ -101,7 +100,7 @@ public class ExtLoggerFilter extends AbstractFilter {
     }
 
     protected boolean isMatch(LogEvent event) {
-        return ExtLogger.FQCN.equals(event.getLoggerFqcn());
+        return LoggerClassifier.isExtLoggerFqcn(event.getLoggerFqcn());
     }
 
     protected Result filterInternal(Logger logger) {
@@ -111,7 +110,7 @@ public class ExtLoggerFilter extends AbstractFilter {
     }
 
     protected boolean isMatch(Logger logger) {
-        return ExtLogger.class.isAssignableFrom(logger.getClass());
+        return LoggerClassifier.isExtLoggerClass(logger.getClass());
     }
 
     protected static class Builder extends AbstractFilterBuilder<Builder> implements org.apache.logging.log4j.core.util.Builder<ExtLoggerFilter> {
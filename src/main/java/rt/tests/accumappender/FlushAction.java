@@ -0,0 +1,28 @@
+package rt.tests.accumappender;
+
+/**
+ * What the {@link AccumulatingAppender} does when it gets an event with a marker, see {@link MarkerPolicy}.
+ */
+public enum FlushAction {
+    /**
+     * Logs all the accumulated events as a single event and starts over.
+     */
+    FLUSH_ALL,
+    /**
+     * Logs only the marked event, with the number of events accumulated before, and starts over.
+     */
+    FLUSH_SUMMARY,
+    /**
+     * Drops the accumulated events, including the marked one, and starts over.
+     */
+    DISCARD,
+    /**
+     * Logs the events accumulated so far as a single event and keeps them, so the event closing the unit of work
+     * still carries all of them.
+     */
+    CHECKPOINT,
+    /**
+     * Accumulates the marked event and logs it right away, as for events at the pass through level.
+     */
+    PASS_THROUGH
+}
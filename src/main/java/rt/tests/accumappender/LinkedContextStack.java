@@ -0,0 +1,156 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.spi.MutableThreadContextStack;
+import org.apache.logging.log4j.spi.ThreadContextStack;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable {@link ThreadContext.ContextStack} made of linked frames, each one referencing the stack below it.
+ * <p>
+ * Pushing a frame ({@link #with(String)}) or popping one ({@link #parent()}) costs one allocation at most, and the
+ * stacks of the accumulated events share their common frames instead of each holding a copy of the whole stack.
+ * The mutating methods of {@code ContextStack} are not supported, {@link #copy()} gives a mutable copy.
+ * </p>
+ */
+final class LinkedContextStack extends AbstractCollection<String> implements ThreadContextStack {
+    private static final long serialVersionUID = 3482367285193659342L;
+
+    static final LinkedContextStack EMPTY = new LinkedContextStack(null, null);
+
+    private final String frame;
+    private final LinkedContextStack parent;
+    private final int depth;
+
+    private LinkedContextStack(String frame, LinkedContextStack parent) {
+        this.frame = frame;
+        this.parent = parent;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * @return The stack with the frame pushed on top of this one.
+     */
+    LinkedContextStack with(String frame) {
+        return new LinkedContextStack(frame, this);
+    }
+
+    /**
+     * @return The stack below the top frame, or this one if it is empty.
+     */
+    LinkedContextStack parent() {
+        return depth == 0 ? this : parent;
+    }
+
+    /**
+     * Converts the stack of an event to a linked one sharing the frames it has in common with the given stack.
+     * Only the frames above the common ones are allocated.
+     *
+     * @param stack    The stack of the event.
+     * @param previous The stack of the previously accumulated event, or {@code null}.
+     * @return The linked stack, or the given one if it is empty or linked already.
+     */
+    static ThreadContext.ContextStack share(ThreadContext.ContextStack stack, ThreadContext.ContextStack previous) {
+        if (stack == null || stack.getDepth() == 0 || stack instanceof LinkedContextStack) {
+            return stack;
+        }
+        final List<String> frames = stack.asList();
+        LinkedContextStack common = previous instanceof LinkedContextStack ? (LinkedContextStack) previous : EMPTY;
+        while (common.depth > frames.size()) {
+            common = common.parent;
+        }
+        // The frames of the shared stack are kept up to the lowest one which differs
+        for (LinkedContextStack node = common; node.depth > 0; node = node.parent) {
+            if (!Objects.equals(node.frame, frames.get(node.depth - 1))) {
+                common = node.parent;
+            }
+        }
+        LinkedContextStack linked = common;
+        for (int i = common.depth; i < frames.size(); i++) {
+            linked = linked.with(frames.get(i));
+        }
+        return linked;
+    }
+
+    @Override
+    public String pop() {
+        throw new UnsupportedOperationException("The linked context stack is immutable");
+    }
+
+    @Override
+    public String peek() {
+        return depth == 0 ? null : frame;
+    }
+
+    @Override
+    public void push(String message) {
+        throw new UnsupportedOperationException("The linked context stack is immutable");
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public int size() {
+        return depth;
+    }
+
+    /**
+     * @return The frames, from the bottom of the stack to its top, as the {@code ThreadContext} stacks list them.
+     */
+    @Override
+    public List<String> asList() {
+        final String[] frames = new String[depth];
+        for (LinkedContextStack node = this; node.depth > 0; node = node.parent) {
+            frames[node.depth - 1] = node.frame;
+        }
+        return Collections.unmodifiableList(Arrays.asList(frames));
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return asList().iterator();
+    }
+
+    @Override
+    public void trim(int depth) {
+        throw new UnsupportedOperationException("The linked context stack is immutable");
+    }
+
+    @Override
+    public ThreadContext.ContextStack copy() {
+        return new MutableThreadContextStack(asList());
+    }
+
+    @Override
+    public ThreadContext.ContextStack getImmutableStackOrNull() {
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ThreadContextStack)) {
+            return false;
+        }
+        return asList().equals(((ThreadContextStack) o).asList());
+    }
+
+    /**
+     * The same as the hash code of a {@link MutableThreadContextStack} with the same frames.
+     */
+    @Override
+    public int hashCode() {
+        return 31 + asList().hashCode();
+    }
+}
@@ -0,0 +1,330 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.message.Message;
+import rt.tests.accumappender.async.AsyncExtLoggerConfig;
+
+import static org.apache.logging.log4j.Level.*;
+import static rt.tests.accumappender.Markers.FAIL;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+/**
+ * Drops low level events while the {@link AccumulatingAppender} holds too many events or the queue of an
+ * {@link AsyncExtLoggerConfig} fills up:
+ * <pre>
+ * &lt;AsyncExtLogger name="com.acme" level="DEBUG"&gt;
+ *     &lt;LoadSheddingFilter appender="AccuAppender" logger="com.acme" highWatermark="100000" lowWatermark="50000"/&gt;
+ *     &lt;AppenderRef ref="AccuAppender"/&gt;
+ * &lt;/AsyncExtLogger&gt;
+ * </pre>
+ * The filter has to run on the logging thread before the event is queued, so it goes on the logger or, to drop the
+ * events before their message is even created, on the whole configuration. On the {@code AppenderRef} of an
+ * {@code AsyncExtLogger} it runs on the background thread once the event has been queued, and cannot relieve the
+ * queue.
+ * <p>
+ * Every {@code checkInterval} events the pressure is checked: above a high watermark the minimum accepted level is
+ * raised one step, from ALL to DEBUG, INFO, WARN, ERROR and FATAL, up to {@code maxLevel}, below both low watermarks
+ * it is lowered one step. In between it stays as it is. Events marked with {@code SUCCESS}, {@code FAIL} or their descendants are never
+ * dropped, since they release the accumulated events.
+ * </p>
+ */
+@Plugin(name = "LoadSheddingFilter", category = Node.CATEGORY, elementType = Filter.ELEMENT_TYPE, printObject = true)
+public class LoadSheddingFilter extends AbstractFilter {
+
+    private static final Level[] STEPS = {ALL, DEBUG, INFO, WARN, ERROR, FATAL};
+    private static final long RELEASING_MARKERS = SUCCESS.bit() | FAIL.bit();
+
+    private final Configuration config;
+    private final String appenderName;
+    private final String loggerName;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final double queueHighWatermark;
+    private final double queueLowWatermark;
+    private final int checkInterval;
+    private final int maxStep;
+
+    private final LongCounter shedEvents = new LongCounter();
+    private volatile int step;
+    private int eventsSinceCheck;
+    private volatile AccumulatingAppender appender;
+    private volatile AsyncExtLoggerConfig asyncLogger;
+
+    @PluginBuilderFactory
+    public static LoadSheddingFilter.Builder newLoadSheddingFilterBuilder() {
+        return new LoadSheddingFilter.Builder();
+    }
+
+    public LoadSheddingFilter(Result onMatch, Result onMismatch, Configuration config, String appenderName,
+                              String loggerName, long highWatermark, long lowWatermark, double queueHighWatermark,
+                              double queueLowWatermark, int checkInterval, Level maxLevel) {
+        super(onMatch, onMismatch);
+        this.config = config;
+        this.appenderName = appenderName;
+        this.loggerName = loggerName;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        this.queueHighWatermark = queueHighWatermark;
+        this.queueLowWatermark = Math.min(queueLowWatermark, queueHighWatermark);
+        this.checkInterval = Math.max(1, checkInterval);
+        int maxStep = 0;
+        while (maxStep < STEPS.length - 1 && STEPS[maxStep + 1].isLessSpecificThan(maxLevel)) {
+            maxStep++;
+        }
+        this.maxStep = maxStep;
+    }
+
+    @Override
+    public Result filter(LogEvent event) {
+        return filterInternal(event.getLevel(), event.getMarker());
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Message msg, Throwable t) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Object msg, Throwable t) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object... params) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2, Object p3) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2, Object p3, Object p4) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2, Object p3, Object p4, Object p5) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6, Object p7) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6, Object p7, Object p8) {
+        return filterInternal(level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6, Object p7, Object p8, Object p9) {
+        return filterInternal(level, marker);
+    }
+
+    protected Result filterInternal(Level level, Marker marker) {
+        // A racy counter: a lost increment only delays the next check
+        if (++eventsSinceCheck >= checkInterval) {
+            eventsSinceCheck = 0;
+            checkPressure();
+        }
+        final int current = step;
+        if (current == 0 || level.isMoreSpecificThan(STEPS[current])
+                || Markers.isInstanceOfAny(marker, RELEASING_MARKERS)) {
+            return getOnMatch();
+        }
+        shedEvents.incrementAndGet();
+        return getOnMismatch();
+    }
+
+    /**
+     * Raises or lowers the minimum accepted level by one step according to the current buffer and queue metrics.
+     */
+    public synchronized void checkPressure() {
+        final long buffered = getBufferedEventCount();
+        final double queueFill = getQueueFill();
+        final int current = step;
+        if ((buffered >= highWatermark || queueFill >= queueHighWatermark) && current < maxStep) {
+            step = current + 1;
+            LOGGER.warn("{} raised the minimum level to {}: {} buffered events, queue {}% full",
+                    getClass().getSimpleName(), STEPS[current + 1], buffered, Math.round(queueFill * 100));
+        } else if (buffered <= lowWatermark && queueFill <= queueLowWatermark && current > 0) {
+            step = current - 1;
+            LOGGER.info("{} lowered the minimum level to {}: {} buffered events, queue {}% full",
+                    getClass().getSimpleName(), STEPS[current - 1], buffered, Math.round(queueFill * 100));
+        }
+    }
+
+    private long getBufferedEventCount() {
+        AccumulatingAppender appender = this.appender;
+        if (appender == null && appenderName != null && config != null) {
+            final Appender found = config.getAppender(appenderName);
+            if (found instanceof AccumulatingAppender) {
+                this.appender = appender = (AccumulatingAppender) found;
+            }
+        }
+        return appender == null ? 0L : appender.getBufferedEventCount();
+    }
+
+    private double getQueueFill() {
+        AsyncExtLoggerConfig asyncLogger = this.asyncLogger;
+        if (asyncLogger == null && loggerName != null && config != null) {
+            final LoggerConfig found = config.getLoggerConfig(loggerName);
+            if (found instanceof AsyncExtLoggerConfig) {
+                this.asyncLogger = asyncLogger = (AsyncExtLoggerConfig) found;
+            }
+        }
+        return asyncLogger == null ? 0.0 : (double) asyncLogger.getQueuedEventCount() / asyncLogger.getRingSize();
+    }
+
+    /**
+     * @return {@code ALL} when nothing is dropped, otherwise the lowest level accepted.
+     */
+    public Level getMinimumLevel() {
+        return STEPS[step];
+    }
+
+    public boolean isShedding() {
+        return step > 0;
+    }
+
+    /**
+     * @return The number of events dropped since the filter was created.
+     */
+    public long getShedEventCount() {
+        return shedEvents.get();
+    }
+
+    @Override
+    public String toString() {
+        return "minimumLevel=" + getMinimumLevel() + ", shedEvents=" + getShedEventCount();
+    }
+
+    public static class Builder extends AbstractFilterBuilder<Builder> implements org.apache.logging.log4j.core.util.Builder<LoadSheddingFilter> {
+
+        @PluginConfiguration
+        private Configuration config;
+
+        @PluginBuilderAttribute
+        private String appender;
+
+        @PluginBuilderAttribute
+        private String logger;
+
+        @PluginBuilderAttribute
+        private long highWatermark = 100_000;
+
+        @PluginBuilderAttribute
+        private long lowWatermark = 50_000;
+
+        @PluginBuilderAttribute
+        private double queueHighWatermark = 0.75;
+
+        @PluginBuilderAttribute
+        private double queueLowWatermark = 0.25;
+
+        @PluginBuilderAttribute
+        private int checkInterval = 64;
+
+        @PluginBuilderAttribute
+        private Level maxLevel = WARN;
+
+        public Builder setConfiguration(Configuration config) {
+            this.config = config;
+            return this;
+        }
+
+        /**
+         * @param appender The name of the {@link AccumulatingAppender} whose buffered events are watched.
+         */
+        public Builder setAppender(String appender) {
+            this.appender = appender;
+            return this;
+        }
+
+        /**
+         * @param logger The name of the {@link AsyncExtLoggerConfig} whose queue is watched.
+         */
+        public Builder setLogger(String logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        public Builder setHighWatermark(long highWatermark) {
+            this.highWatermark = highWatermark;
+            return this;
+        }
+
+        public Builder setLowWatermark(long lowWatermark) {
+            this.lowWatermark = lowWatermark;
+            return this;
+        }
+
+        /**
+         * @param queueHighWatermark The fill ratio of the queue, from 0 to 1.
+         */
+        public Builder setQueueHighWatermark(double queueHighWatermark) {
+            this.queueHighWatermark = queueHighWatermark;
+            return this;
+        }
+
+        public Builder setQueueLowWatermark(double queueLowWatermark) {
+            this.queueLowWatermark = queueLowWatermark;
+            return this;
+        }
+
+        public Builder setCheckInterval(int checkInterval) {
+            this.checkInterval = checkInterval;
+            return this;
+        }
+
+        /**
+         * @param maxLevel The highest minimum level, events at this level and above are never dropped.
+         */
+        public Builder setMaxLevel(Level maxLevel) {
+            this.maxLevel = maxLevel;
+            return this;
+        }
+
+        @Override
+        public LoadSheddingFilter build() {
+            return new LoadSheddingFilter(this.getOnMatch(), this.getOnMismatch(), config, appender, logger,
+                    highWatermark, lowWatermark, queueHighWatermark, queueLowWatermark, checkInterval, maxLevel);
+        }
+    }
+}
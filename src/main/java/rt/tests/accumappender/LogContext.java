@@ -0,0 +1,187 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.ThreadContext;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The request context of the current thread, read by the {@code ctxScg} lookup ({@link LogContextLookup}) and the
+ * {@code %ctxScg} pattern converter ({@link LogContextPatternConverter}).
+ * <p>
+ * Every key is given an integer slot the first time it is seen, by the configuration or by the code, and the values of
+ * a thread are kept in an array indexed by slot. Code setting a value on every request should keep the {@link Key}:
+ * <pre>
+ * private static final LogContext.Key REQUEST_ID = LogContext.key("requestId");
+ * ...
+ * REQUEST_ID.set(request.getId());
+ * </pre>
+ * </p>
+ */
+public final class LogContext {
+
+    private static final ConcurrentMap<String, Key> KEYS = new ConcurrentHashMap<>();
+    private static volatile Key[] slots = new Key[0];
+    private static final ThreadLocal<String[]> VALUES = ThreadLocal.withInitial(() -> new String[16]);
+    private static final ThreadLocal<LinkedContextStack> STACK = ThreadLocal.withInitial(() -> LinkedContextStack.EMPTY);
+
+    private LogContext() {
+    }
+
+    /**
+     * @return The key of the given name, given the next free slot if it is new.
+     */
+    public static Key key(String name) {
+        final Key key = KEYS.get(name);
+        return key != null ? key : register(name);
+    }
+
+    private static synchronized Key register(String name) {
+        Key key = KEYS.get(name);
+        if (key == null) {
+            final Key[] current = slots;
+            key = new Key(name, current.length);
+            final Key[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[key.slot] = key;
+            slots = grown;
+            KEYS.put(name, key);
+        }
+        return key;
+    }
+
+    /**
+     * @return The key of the given name, or {@code null} if it was never used.
+     */
+    public static Key findKey(String name) {
+        return KEYS.get(name);
+    }
+
+    public static void put(String name, String value) {
+        key(name).set(value);
+    }
+
+    public static String get(String name) {
+        final Key key = KEYS.get(name);
+        return key == null ? null : key.get();
+    }
+
+    public static void remove(String name) {
+        final Key key = KEYS.get(name);
+        if (key != null) {
+            key.remove();
+        }
+    }
+
+    /**
+     * Removes all the values and the stack frames of the current thread, e.g. at the end of a request.
+     */
+    public static void clear() {
+        Arrays.fill(VALUES.get(), null);
+        STACK.remove();
+    }
+
+    /**
+     * @return {@code true} if no value is set on the current thread.
+     */
+    public static boolean isEmpty() {
+        for (String value : VALUES.get()) {
+            if (value != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes every value set on the current thread with its key name to the consumer.
+     */
+    public static void forEach(BiConsumer<String, String> consumer) {
+        final String[] values = VALUES.get();
+        final Key[] current = slots;
+        for (int i = 0; i < values.length && i < current.length; i++) {
+            if (values[i] != null) {
+                consumer.accept(current[i].name, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Pushes a frame on the context stack of the current thread. Unlike {@code ThreadContext.push}, which copies the
+     * whole stack, this allocates the new frame only: the frames below are shared with the stacks of the events logged
+     * before. The events created by {@link rt.tests.logger.ExtLogEventFactory} carry this stack, when it is not empty,
+     * in place of the {@code ThreadContext} one.
+     */
+    public static void push(String frame) {
+        STACK.set(STACK.get().with(frame));
+    }
+
+    /**
+     * @return The frame removed from the top of the context stack of the current thread, or {@code null} if it is
+     *         empty.
+     */
+    public static String pop() {
+        final LinkedContextStack stack = STACK.get();
+        STACK.set(stack.parent());
+        return stack.peek();
+    }
+
+    /**
+     * @return The immutable context stack of the current thread, or {@code null} if it is empty.
+     */
+    public static ThreadContext.ContextStack getStack() {
+        final LinkedContextStack stack = STACK.get();
+        return stack.getDepth() == 0 ? null : stack;
+    }
+
+    /**
+     * A key of the context with its slot.
+     */
+    public static final class Key {
+        private final String name;
+        private final int slot;
+
+        private Key(String name, int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        public void set(String value) {
+            String[] values = VALUES.get();
+            if (slot >= values.length) {
+                values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+                VALUES.set(values);
+            }
+            values[slot] = value;
+        }
+
+        /**
+         * @return The value of the current thread, or {@code null} if not set.
+         */
+        public String get() {
+            final String[] values = VALUES.get();
+            return slot < values.length ? values[slot] : null;
+        }
+
+        public void remove() {
+            final String[] values = VALUES.get();
+            if (slot < values.length) {
+                values[slot] = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + "#" + slot;
+        }
+    }
+}
@@ -4,16 +4,101 @@ import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.lookup.AbstractLookup;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Looks up the values of the {@link LogContext} of the current thread, e.g. {@code ${ctxScg:requestId}}.
+ * <p>
+ * Like the other lookups, {@code ${ctxScg:requestId}} is resolved once, when the configuration is parsed. In a pattern
+ * the {@code %ctxScg{requestId}} converter ({@link LogContextPatternConverter}) resolves the slot of the key when the
+ * pattern is parsed and reads it for every event with an array index. The {@code $${ctxScg:requestId:-none}} form is
+ * resolved by name for every event and supports default values.
+ * </p>
+ * <p>
+ * Keys which are not set on the thread can be computed by a supplier registered with
+ * {@link #register(String, CachePolicy, long, TimeUnit, Supplier)}, e.g. the build version or the tenant configuration.
+ * </p>
+ * <p>
+ * For events logged on another thread, like those of an {@code AsyncExtLogger}, the values are taken from the context
+ * data of the event.
+ * </p>
+ */
 @Plugin(name = "ctxScg", category = "Lookup")
 public class LogContextLookup extends AbstractLookup{
 
+    private static volatile CachedResolver[] resolvers = new CachedResolver[0];
+
+    /**
+     * Registers the supplier of the values of a key, used when the key is not set on the logging thread.
+     *
+     * @param key The key.
+     * @param policy How often the value is computed.
+     * @param ttl The time to live of a {@link CachePolicy#TTL} value, ignored otherwise.
+     * @param unit The unit of the time to live.
+     * @param resolver Computes the value, may be called concurrently.
+     */
+    public static void register(String key, CachePolicy policy, long ttl, TimeUnit unit, Supplier<String> resolver) {
+        setResolver(LogContext.key(key).getSlot(), new CachedResolver(policy, unit.toNanos(ttl), resolver));
+    }
+
+    /**
+     * Registers the supplier of the values of a key for the {@link CachePolicy#CONSTANT} or
+     * {@link CachePolicy#PER_EVENT} policies.
+     */
+    public static void register(String key, CachePolicy policy, Supplier<String> resolver) {
+        if (policy == CachePolicy.TTL) {
+            throw new IllegalArgumentException("The TTL policy needs a time to live");
+        }
+        register(key, policy, 0, TimeUnit.NANOSECONDS, resolver);
+    }
+
+    public static void unregister(String key) {
+        final LogContext.Key contextKey = LogContext.findKey(key);
+        if (contextKey != null) {
+            setResolver(contextKey.getSlot(), null);
+        }
+    }
+
+    /**
+     * Makes the cached value of the key be computed again on the next lookup.
+     */
+    public static void invalidate(String key) {
+        final LogContext.Key contextKey = LogContext.findKey(key);
+        final CachedResolver resolver = contextKey == null ? null : getResolver(contextKey.getSlot());
+        if (resolver != null) {
+            resolver.invalidate();
+        }
+    }
+
+    public static void invalidateAll() {
+        for (CachedResolver resolver : resolvers) {
+            if (resolver != null) {
+                resolver.invalidate();
+            }
+        }
+    }
+
+    private static synchronized void setResolver(int slot, CachedResolver resolver) {
+        final CachedResolver[] current = resolvers;
+        final CachedResolver[] updated = Arrays.copyOf(current, Math.max(current.length, slot + 1));
+        updated[slot] = resolver;
+        resolvers = updated;
+    }
+
+    private static CachedResolver getResolver(int slot) {
+        final CachedResolver[] current = resolvers;
+        return slot < current.length ? current[slot] : null;
+    }
+
     /**
      * Lookup the value for the key.
      * @param key  the key to be looked up, may be null
-     * @return The value for the key.
+     * @return The value of the key on the current thread.
      */
     public String lookup(String key) {
-        return "a key value from SCG ctx";
+        return lookup(null, key);
     }
 
     /**
@@ -23,6 +108,42 @@ public class LogContextLookup extends AbstractLookup{
      * @return The value associated with the key.
      */
     public String lookup(LogEvent event, String key) {
-        return "a key value from SCG ctx and current ";
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        final LogContext.Key contextKey = LogContext.findKey(key);
+        if (contextKey == null) {
+            return isOtherThread(event) && event.getContextData() != null
+                    ? event.getContextData().getValue(key) : null;
+        }
+        return lookup(event, contextKey);
+    }
+
+    /**
+     * Lookup the value for the key of a slot, without any map lookup for the events of the current thread.
+     * @param event The current LogEvent, may be null.
+     * @param key  the key to be looked up
+     * @return The value associated with the key.
+     */
+    static String lookup(LogEvent event, LogContext.Key key) {
+        String value = null;
+        if (isOtherThread(event)) {
+            if (event.getContextData() != null) {
+                value = event.getContextData().getValue(key.getName());
+            }
+        } else {
+            value = key.get();
+        }
+        if (value == null) {
+            final CachedResolver resolver = getResolver(key.getSlot());
+            if (resolver != null) {
+                value = resolver.get();
+            }
+        }
+        return value;
+    }
+
+    private static boolean isOtherThread(LogEvent event) {
+        return event != null && event.getThreadId() != Thread.currentThread().getId();
     }
 }
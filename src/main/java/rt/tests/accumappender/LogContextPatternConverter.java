@@ -0,0 +1,46 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.pattern.ConverterKeys;
+import org.apache.logging.log4j.core.pattern.LogEventPatternConverter;
+import org.apache.logging.log4j.core.pattern.PatternConverter;
+
+/**
+ * Writes the value of a {@link LogContext} key, e.g. {@code %ctxScg{requestId}}, or nothing if it is not set.
+ * <p>
+ * The slot of the key is resolved when the pattern is parsed, so every event only costs an array index. The values
+ * are the same as those of the {@code ctxScg} lookup, see {@link LogContextLookup}.
+ * </p>
+ */
+@Plugin(name = "LogContextPatternConverter", category = PatternConverter.CATEGORY)
+@ConverterKeys({"ctxScg"})
+public final class LogContextPatternConverter extends LogEventPatternConverter {
+
+    private final LogContext.Key key;
+
+    private LogContextPatternConverter(final LogContext.Key key) {
+        super("ctxScg", "ctxScg");
+        this.key = key;
+    }
+
+    /**
+     * @param options The name of the key.
+     * @return A new converter, or {@code null} without a key name.
+     */
+    public static LogContextPatternConverter newInstance(final String[] options) {
+        if (options == null || options.length == 0 || options[0].isEmpty()) {
+            LOGGER.error("The %ctxScg converter needs the name of a key, e.g. %ctxScg{requestId}");
+            return null;
+        }
+        return new LogContextPatternConverter(LogContext.key(options[0]));
+    }
+
+    @Override
+    public void format(final LogEvent event, final StringBuilder toAppendTo) {
+        final String value = LogContextLookup.lookup(event, key);
+        if (value != null) {
+            toAppendTo.append(value);
+        }
+    }
+}
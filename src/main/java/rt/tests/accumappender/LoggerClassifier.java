@@ -0,0 +1,31 @@
+package rt.tests.accumappender;
+
+import rt.tests.logger.ExtLogger;
+
+/**
+ * Tells whether an event or a logger comes from an {@link ExtLogger}, for the filters run several times per event.
+ * <p>
+ * The FQCN of an event is the constant of the logger class which created it, so it is nearly always compared by
+ * identity, see {@link ExtLogger#isExtLoggerFqcn(String)}. The classification of a logger class is computed once.
+ * </p>
+ */
+final class LoggerClassifier {
+
+    private static final ClassValue<Boolean> EXT_LOGGER_CLASSES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return ExtLogger.class.isAssignableFrom(type);
+        }
+    };
+
+    private LoggerClassifier() {
+    }
+
+    static boolean isExtLoggerFqcn(String fqcn) {
+        return ExtLogger.isExtLoggerFqcn(fqcn);
+    }
+
+    static boolean isExtLoggerClass(Class<?> type) {
+        return EXT_LOGGER_CLASSES.get(type);
+    }
+}
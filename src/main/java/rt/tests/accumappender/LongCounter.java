@@ -0,0 +1,60 @@
+package rt.tests.accumappender;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A padded {@code long} counter kept on its own cache line. This is the Java 8 version based on an
+ * {@link AtomicLongFieldUpdater}, the Java 9+ version in {@code src/main/java9} uses a {@code VarHandle} with
+ * acquire/release access.
+ */
+public final class LongCounter {
+
+    private static final AtomicLongFieldUpdater<LongCounter> VALUE =
+            AtomicLongFieldUpdater.newUpdater(LongCounter.class, "value");
+
+    long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    public LongCounter() {
+    }
+
+    public LongCounter(final long initialValue) {
+        this.value = initialValue;
+    }
+
+    /**
+     * Reads the value with acquire semantics.
+     */
+    public long get() {
+        return value;
+    }
+
+    /**
+     * Sets the value with release semantics.
+     */
+    public void setRelease(final long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    public boolean compareAndSet(final long expected, final long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+
+    public long addAndGet(final long delta) {
+        return VALUE.addAndGet(this, delta);
+    }
+
+    public long incrementAndGet() {
+        return VALUE.incrementAndGet(this);
+    }
+
+    public long getAndSet(final long newValue) {
+        return VALUE.getAndSet(this, newValue);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
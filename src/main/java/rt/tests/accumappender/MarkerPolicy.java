@@ -0,0 +1,74 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.util.Locale;
+
+/**
+ * Maps a marker to the {@link FlushAction} of the {@link AccumulatingAppender}:
+ * <pre>
+ * &lt;Accumulating name="AccuAppender"&gt;
+ *     &lt;MarkerPolicy marker="RETRY" action="CHECKPOINT"/&gt;
+ *     &lt;MarkerPolicy marker="AUDIT" action="PASS_THROUGH"/&gt;
+ *     ...
+ * </pre>
+ * A policy applies to the descendants of the marker as well, unless they have their own.
+ * Without policies {@code SUCCESS} and {@code FAIL} flush all the accumulated events.
+ */
+@Plugin(name = "MarkerPolicy", category = Core.CATEGORY_NAME, printObject = true)
+public final class MarkerPolicy {
+
+    private static final StatusLogger LOGGER = StatusLogger.getLogger();
+
+    private final String marker;
+    private final FlushAction action;
+
+    public MarkerPolicy(String marker, FlushAction action) {
+        this.marker = marker;
+        this.action = action;
+    }
+
+    /**
+     * Creates a MarkerPolicy.
+     *
+     * @param marker The name of the marker.
+     * @param action The name of the {@link FlushAction}, case insensitive.
+     * @return The created MarkerPolicy.
+     */
+    @PluginFactory
+    public static MarkerPolicy createPolicy(
+            @PluginAttribute("marker") final String marker,
+            @PluginAttribute("action") final String action) {
+        if (marker == null) {
+            LOGGER.error("No marker provided for MarkerPolicy");
+            return null;
+        }
+        if (action == null) {
+            LOGGER.error("No action provided for MarkerPolicy of marker " + marker);
+            return null;
+        }
+        try {
+            return new MarkerPolicy(marker, FlushAction.valueOf(action.trim().toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Unknown action " + action + " of MarkerPolicy for marker " + marker);
+            return null;
+        }
+    }
+
+    public String getMarker() {
+        return marker;
+    }
+
+    public FlushAction getAction() {
+        return action;
+    }
+
+    @Override
+    public String toString() {
+        return marker + "=" + action;
+    }
+}
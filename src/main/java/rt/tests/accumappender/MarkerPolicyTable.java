@@ -0,0 +1,91 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.Marker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@link FlushAction} of every marker, resolved once from the {@link MarkerPolicy}s of the appender.
+ * The actions of {@link Markers} are looked up by ordinal, inherited actions included. Other markers are looked up by
+ * name, then by the {@code Markers} they descend from.
+ */
+final class MarkerPolicyTable {
+
+    private static final Markers[] MARKERS = Markers.values();
+
+    private final FlushAction[] actions = new FlushAction[MARKERS.length];
+    private final Map<String, FlushAction> foreignActions = new HashMap<>();
+
+    MarkerPolicyTable(MarkerPolicy[] policies) {
+        final FlushAction[] explicit = new FlushAction[MARKERS.length];
+        explicit[Markers.SUCCESS.ordinal()] = FlushAction.FLUSH_ALL;
+        explicit[Markers.FAIL.ordinal()] = FlushAction.FLUSH_ALL;
+        if (policies != null) {
+            for (MarkerPolicy policy : policies) {
+                if (policy == null) {
+                    continue;
+                }
+                final Markers marker = findMarker(policy.getMarker());
+                if (marker != null) {
+                    explicit[marker.ordinal()] = policy.getAction();
+                } else {
+                    foreignActions.put(policy.getMarker(), policy.getAction());
+                }
+            }
+        }
+        for (Markers marker : MARKERS) {
+            actions[marker.ordinal()] = resolve(marker, explicit);
+        }
+    }
+
+    private static Markers findMarker(String name) {
+        for (Markers marker : MARKERS) {
+            if (marker.name().equals(name)) {
+                return marker;
+            }
+        }
+        return null;
+    }
+
+    private static FlushAction resolve(Markers marker, FlushAction[] explicit) {
+        if (explicit[marker.ordinal()] != null) {
+            return explicit[marker.ordinal()];
+        }
+        final Marker[] parents = marker.getParents();
+        if (parents != null) {
+            for (Marker parent : parents) {
+                final FlushAction action = resolve((Markers) parent, explicit);
+                if (action != null) {
+                    return action;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The action for the marker, or {@code null} if the event is handled by its level.
+     */
+    FlushAction getAction(Marker marker) {
+        if (marker instanceof Markers) {
+            return actions[((Markers) marker).ordinal()];
+        }
+        if (marker == null) {
+            return null;
+        }
+        if (!foreignActions.isEmpty()) {
+            final FlushAction action = foreignActions.get(marker.getName());
+            if (action != null) {
+                return action;
+            }
+        }
+        // Markers declared later are the more specific ones
+        for (int i = MARKERS.length - 1; i >= 0; i--) {
+            if (actions[i] != null && marker.isInstanceOf(MARKERS[i])) {
+                return actions[i];
+            }
+        }
+        return null;
+    }
+}
@@ -2,12 +2,104 @@ package rt.tests.accumappender;
 
 import org.apache.logging.log4j.Marker;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The markers understood by the {@link AccumulatingAppender}. A marker is an instance of itself and of its parents, e.g.
+ * {@code PARTIAL_SUCCESS} is a {@code SUCCESS}. The hierarchy is fixed, so the ancestors of every marker are
+ * precomputed as a bit set and {@code isInstanceOf} is a single bit test.
+ * <p>
+ * Every marker has a code identifying it in the binary logs, which does not depend on the order of the constants. A
+ * code is never changed nor reused, a new marker takes the next one, below 255.
+ * </p>
+ */
 public enum Markers implements Marker {
-    SUCCESS, FAIL;
+    SUCCESS(1),
+    FAIL(2),
+    PARTIAL_SUCCESS(3, SUCCESS),
+    RETRY(4, FAIL);
+
+    private static final Markers[] VALUES = values();
+    private static final Map<String, Markers> BY_NAME = new HashMap<>();
+    private static final Markers[] BY_CODE;
+
+    static {
+        // The bit of a marker is its ordinal, a 65th constant would take the bit of the first one
+        if (VALUES.length > Long.SIZE) {
+            throw new IllegalStateException("Markers has " + VALUES.length + " constants, at most " + Long.SIZE
+                    + " fit in the ancestor bit sets");
+        }
+        int maxCode = 0;
+        for (Markers marker : VALUES) {
+            BY_NAME.put(marker.name(), marker);
+            maxCode = Math.max(maxCode, marker.code);
+        }
+        BY_CODE = new Markers[maxCode + 1];
+        for (Markers marker : VALUES) {
+            BY_CODE[marker.code] = marker;
+        }
+    }
+
+    private final int code;
+    private final Markers[] parents;
+    private final long bit;
+    private final long ancestors;
+
+    Markers(int code, Markers... parents) {
+        this.code = code;
+        this.parents = parents;
+        this.bit = 1L << ordinal();
+        long ancestors = bit;
+        for (Markers parent : parents) {
+            ancestors |= parent.ancestors;
+        }
+        this.ancestors = ancestors;
+    }
+
+    /**
+     * @return The code of this marker in the binary logs.
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * @return The marker of the code, or {@code null} if there is none.
+     */
+    public static Markers forCode(int code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * @return The bit of this marker, to be combined into a mask for {@link #isInstanceOfAny(Marker, long)}.
+     */
+    public long bit() {
+        return bit;
+    }
+
+    /**
+     * @return {@code true} if the marker is an instance of any of the markers of the mask. Markers created by the
+     *         {@code MarkerManager} with one of these as a parent are checked through their own hierarchy.
+     */
+    public static boolean isInstanceOfAny(Marker marker, long mask) {
+        if (marker instanceof Markers) {
+            return (((Markers) marker).ancestors & mask) != 0;
+        }
+        if (marker == null) {
+            return false;
+        }
+        for (Markers candidate : VALUES) {
+            if ((candidate.bit & mask) != 0 && marker.isInstanceOf(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     @Override
     public Marker addParents(Marker... markers) {
-        throw new UnsupportedOperationException("Not supported");
+        throw new UnsupportedOperationException("The hierarchy of Markers is fixed");
     }
 
     @Override
@@ -17,31 +109,38 @@ public enum Markers implements Marker {
 
     @Override
     public Marker[] getParents() {
-        throw new UnsupportedOperationException("Not supported");
+        return parents.length == 0 ? null : parents.clone();
     }
 
     @Override
     public boolean hasParents() {
-        throw new UnsupportedOperationException("Not supported");
+        return parents.length > 0;
     }
 
     @Override
     public boolean isInstanceOf(Marker m) {
-        return false;
+        if (m == null) {
+            throw new IllegalArgumentException("A marker parameter is required");
+        }
+        return m instanceof Markers && (ancestors & ((Markers) m).bit) != 0;
     }
 
     @Override
     public boolean isInstanceOf(String name) {
-        return false;
+        if (name == null) {
+            throw new IllegalArgumentException("A marker name is required");
+        }
+        final Markers marker = BY_NAME.get(name);
+        return marker != null && (ancestors & marker.bit) != 0;
     }
 
     @Override
     public boolean remove(Marker marker) {
-        throw new UnsupportedOperationException("Not supported");
+        throw new UnsupportedOperationException("The hierarchy of Markers is fixed");
     }
 
     @Override
     public Marker setParents(Marker... markers) {
-        throw new UnsupportedOperationException("Not supported");
+        throw new UnsupportedOperationException("The hierarchy of Markers is fixed");
     }
 }
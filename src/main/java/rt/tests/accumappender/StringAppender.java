@@ -13,7 +13,10 @@ import java.io.*;
  * A Custom Appender for Log4j2 that logs to a String. This is useful for testing logging.
  *
  * @author rewolf
+ * @deprecated Use {@link rt.tests.accumappender.memory.MemoryAppender}, which appends without locking and reads the
+ * output without copying it.
  */
+@Deprecated
 public class StringAppender extends AbstractOutputStreamAppender<StringAppender.StringOutputStreamManager> {
     private static LoggerContext context = (LoggerContext) LogManager.getContext(false);
     private static Configuration configuration = context.getConfiguration();
@@ -0,0 +1,20 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+
+import java.util.List;
+
+/**
+ * An appender which receives the transactions flushed by an {@link AccumulatingAppender} as the list of their
+ * events, instead of a single event with their messages joined. The events passed through one by one are still given
+ * to {@link #append(LogEvent)}.
+ */
+public interface TransactionAppender extends Appender {
+
+    /**
+     * @param flushEvent The event which flushed the transaction.
+     * @param events     The accumulated events, the flushing one last. The list must not be kept after the call.
+     */
+    void appendTransaction(LogEvent flushEvent, List<LogEvent> events);
+}
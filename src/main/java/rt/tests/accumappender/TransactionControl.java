@@ -0,0 +1,48 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.util.List;
+
+/**
+ * Calls a {@link TransactionAppender} with the level and filter of its reference, the same way an
+ * {@code AppenderControl} calls an appender with a single event.
+ */
+final class TransactionControl {
+
+    private final TransactionAppender appender;
+    private final Level level;
+    private final Filter filter;
+
+    TransactionControl(TransactionAppender appender, Level level, Filter filter) {
+        this.appender = appender;
+        this.level = level;
+        this.filter = filter;
+    }
+
+    void callAppender(LogEvent flushEvent, List<LogEvent> events) {
+        if (level != null && level.intLevel() < flushEvent.getLevel().intLevel()) {
+            return;
+        }
+        if (filter != null && filter.filter(flushEvent) == Filter.Result.DENY) {
+            return;
+        }
+        if (!appender.isStarted()) {
+            StatusLogger.getLogger().error("Attempted to append to non-started appender " + appender.getName());
+            return;
+        }
+        try {
+            appender.appendTransaction(flushEvent, events);
+        } catch (RuntimeException e) {
+            appender.getHandler().error("An exception occurred processing Appender " + appender.getName(),
+                    flushEvent, e);
+            if (!appender.ignoreExceptions()) {
+                throw e instanceof AppenderLoggingException ? e : new AppenderLoggingException(e);
+            }
+        }
+    }
+}
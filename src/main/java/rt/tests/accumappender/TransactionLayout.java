@@ -0,0 +1,19 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.util.List;
+
+/**
+ * A layout which encodes a whole transaction at once, for the {@link TransactionAppender}s using layouts. The other
+ * layouts are given its events one by one.
+ */
+public interface TransactionLayout {
+
+    /**
+     * @param flushEvent The event which flushed the transaction.
+     * @param events     The accumulated events, the flushing one last.
+     */
+    void encodeTransaction(LogEvent flushEvent, List<LogEvent> events, ByteBufferDestination destination);
+}
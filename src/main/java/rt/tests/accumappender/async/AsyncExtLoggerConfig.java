@@ -0,0 +1,154 @@
+package rt.tests.accumappender.async;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.*;
+import org.apache.logging.log4j.core.config.plugins.*;
+import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
+import org.apache.logging.log4j.core.impl.MutableLogEvent;
+import org.apache.logging.log4j.core.util.Integers;
+import org.apache.logging.log4j.util.Strings;
+import rt.tests.accumappender.ExtLoggerConfig;
+import rt.tests.logger.ExtLogEventFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ExtLoggerConfig} which hands its events over to a background thread through a {@link MpscRingBuffer}.
+ * <p>
+ * The logging thread copies the event into a pre-allocated ring slot, so the thread id and name, the context data
+ * and the location are those of the logging thread. Appenders keeping per-thread state, like the
+ * {@link rt.tests.accumappender.AccumulatingAppender}, use the thread id of the event to find it.
+ * Additivity to parent loggers stays synchronous.
+ * </p>
+ */
+@Plugin(name = "AsyncExtLogger", category = Node.CATEGORY, printObject = true)
+public class AsyncExtLoggerConfig extends ExtLoggerConfig {
+
+    public static final int DEFAULT_RING_SIZE = 8192;
+
+    private final MpscRingBuffer<MutableLogEvent> ringBuffer;
+    private final MpscRingBuffer.Handler<MutableLogEvent> handler = this::onEvent;
+    private volatile Thread consumer;
+    private volatile boolean running;
+
+    public AsyncExtLoggerConfig(String name, List<AppenderRef> appenderRefs, Filter filter, Level level, boolean additivity,
+                                Property[] properties, Configuration config, boolean includeLocation,
+                                int ringSize, WaitStrategy waitStrategy) {
+        super(name, appenderRefs, filter, level, additivity, properties, config, includeLocation);
+        if (isDefaultLogEventFactory()) {
+            // The location and the LogContext have to be found on the logging thread, before the event is handed over
+            setLogEventFactory(new ExtLogEventFactory(includeLocation, true));
+        }
+        this.ringBuffer = new MpscRingBuffer<>(ringSize, MutableLogEvent::new, waitStrategy);
+    }
+
+    /**
+     * Factory method to create an AsyncExtLoggerConfig.
+     *
+     * @param additivity True if additive, false otherwise.
+     * @param level The Level to be associated with the Logger.
+     * @param loggerName The name of the Logger.
+     * @param includeLocation "true" if location should be passed downstream
+     * @param ringSize The number of pre-allocated event slots, rounded up to a power of 2.
+     * @param waitStrategy What the background thread does while the ring is empty:
+     *                     {@code Block} (default), {@code Sleep}, {@code Yield} or {@code BusySpin}.
+     * @param refs An array of Appender names.
+     * @param properties Properties to pass to the Logger.
+     * @param config The Configuration.
+     * @param filter A Filter.
+     * @return A new AsyncExtLoggerConfig.
+     */
+    @PluginFactory
+    public static LoggerConfig createLogger(
+            @PluginAttribute(value = "additivity", defaultBoolean = true) final boolean additivity,
+            @PluginAttribute("level") final Level level,
+            @Required(message = "Loggers cannot be configured without a name") @PluginAttribute("name") final String loggerName,
+            @PluginAttribute("includeLocation") final String includeLocation,
+            @PluginAttribute(value = "ringSize", defaultInt = DEFAULT_RING_SIZE) final int ringSize,
+            @PluginAttribute("waitStrategy") final String waitStrategy,
+            @PluginElement("AppenderRef") final AppenderRef[] refs,
+            @PluginElement("Properties") final Property[] properties,
+            @PluginConfiguration final Configuration config,
+            @PluginElement("Filter") final Filter filter) {
+        final String name = loggerName.equals(ROOT) ? Strings.EMPTY : loggerName;
+        return new AsyncExtLoggerConfig(name, Arrays.asList(refs), filter, level, additivity, properties, config,
+                includeLocation(includeLocation, config), Integers.ceilingNextPowerOfTwo(Math.max(ringSize, 1)),
+                WaitStrategy.create(waitStrategy));
+    }
+
+    @Override
+    protected void callAppenders(LogEvent event) {
+        if (!running || Thread.currentThread() == consumer) {
+            // Events logged by the appenders themselves are not queued to prevent a deadlock on a full ring
+            super.callAppenders(event);
+            return;
+        }
+        final long sequence = ringBuffer.next();
+        try {
+            ringBuffer.get(sequence).initFrom(event);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    private void onEvent(MutableLogEvent event, boolean endOfBatch) {
+        try {
+            event.setEndOfBatch(endOfBatch);
+            super.callAppenders(event);
+        } finally {
+            event.clear();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        final Thread thread = new Thread(() -> ringBuffer.consume(handler, () -> running),
+                "AsyncExtLogger-" + getName());
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+        super.start();
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        running = false;
+        ringBuffer.getWaitStrategy().wakeUp();
+        final Thread thread = consumer;
+        if (thread != null) {
+            try {
+                thread.join(timeUnit.toMillis(timeout));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (thread == null || !thread.isAlive()) {
+            // The consumer is gone, this thread picks up whatever was published while it was finishing
+            ringBuffer.drain(handler);
+        } else {
+            // Draining alongside a consumer still running would hand the same slots over twice
+            LOGGER.warn("AsyncExtLogger {} did not stop within {} {}, {} queued events may be lost",
+                    getName(), timeout, timeUnit, ringBuffer.size());
+        }
+        super.stop(timeout, timeUnit, false);
+        setStopped();
+        return true;
+    }
+
+    public int getRingSize() {
+        return ringBuffer.getCapacity();
+    }
+
+    /**
+     * @return The number of events waiting to be passed to the appenders.
+     */
+    public long getQueuedEventCount() {
+        return ringBuffer.size();
+    }
+}
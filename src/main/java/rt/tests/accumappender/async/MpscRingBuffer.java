@@ -0,0 +1,136 @@
+package rt.tests.accumappender.async;
+
+import rt.tests.accumappender.LongCounter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A bounded multi-producer/single-consumer ring buffer of pre-allocated slots.
+ * <p>
+ * Producers claim a sequence, fill the slot returned by {@link #get(long)} and {@link #publish(long)} it.
+ * The single consumer drains published slots in sequence order with {@link #drain(Handler)}.
+ * A producer that finds the ring full spins until the consumer frees a slot.
+ * </p>
+ *
+ * @param <E> The slot type.
+ */
+public final class MpscRingBuffer<E> {
+
+    /**
+     * Receives the slots drained from the ring buffer. The slot must not be referenced after the call returns.
+     */
+    public interface Handler<E> {
+        void onEvent(E slot, boolean endOfBatch);
+    }
+
+    private final Object[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    private final LongCounter producerSequence = new LongCounter();
+    private final LongCounter consumerSequence = new LongCounter();
+
+    public MpscRingBuffer(final int size, final Supplier<E> slotFactory, final WaitStrategy waitStrategy) {
+        if (size < 1 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of 2: " + size);
+        }
+        this.slots = new Object[size];
+        this.published = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = slotFactory.get();
+            published.set(i, -1L);
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return The number of claimed slots not consumed yet.
+     */
+    public long size() {
+        return Math.max(0L, producerSequence.get() - consumerSequence.get());
+    }
+
+    /**
+     * Claims the next sequence, waiting for the consumer if the ring is full.
+     */
+    public long next() {
+        int spins = 0;
+        for (;;) {
+            final long sequence = producerSequence.get();
+            if (sequence - consumerSequence.get() >= slots.length) {
+                if (++spins > 100) {
+                    LockSupport.parkNanos(1L);
+                } else {
+                    Thread.yield();
+                }
+            } else if (producerSequence.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(final long sequence) {
+        return (E) slots[(int) sequence & mask];
+    }
+
+    public void publish(final long sequence) {
+        published.lazySet((int) sequence & mask, sequence);
+        waitStrategy.signal();
+    }
+
+    /**
+     * Hands all the published slots to the handler. Must only be called by the consumer thread.
+     *
+     * @return The number of slots drained.
+     */
+    public int drain(final Handler<E> handler) {
+        long sequence = consumerSequence.get();
+        int drained = 0;
+        while (published.get((int) sequence & mask) == sequence) {
+            final boolean endOfBatch = published.get((int) (sequence + 1) & mask) != sequence + 1;
+            try {
+                handler.onEvent(get(sequence), endOfBatch);
+            } finally {
+                sequence++;
+                drained++;
+                consumerSequence.setRelease(sequence);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Drains the ring buffer until it is stopped, idling on the wait strategy while it is empty.
+     */
+    void consume(final Handler<E> handler, final BooleanSupplier running) {
+        int idleCounter = 0;
+        while (running.getAsBoolean()) {
+            if (drain(handler) > 0) {
+                idleCounter = 0;
+            } else {
+                idleCounter = waitStrategy.idle(idleCounter, this);
+            }
+        }
+        drain(handler);
+    }
+
+    boolean hasPublished() {
+        final long sequence = consumerSequence.get();
+        return published.get((int) sequence & mask) == sequence;
+    }
+
+    WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+}
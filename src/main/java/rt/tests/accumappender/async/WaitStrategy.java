@@ -0,0 +1,121 @@
+package rt.tests.accumappender.async;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides what the consumer thread of a {@link MpscRingBuffer} does while the ring is empty.
+ * An instance belongs to exactly one ring buffer.
+ * <p>
+ * The names accepted by {@link #create(String)} follow the Log4j {@code AsyncLoggerConfig.WaitStrategy} values:
+ * {@code Block}, {@code Sleep}, {@code Yield} and {@code BusySpin}.
+ * </p>
+ */
+public abstract class WaitStrategy {
+
+    public static final String DEFAULT = "Block";
+
+    /**
+     * @param name The wait strategy name, case insensitive. Defaults to {@code Block} if {@code null}.
+     * @return A new wait strategy.
+     */
+    public static WaitStrategy create(final String name) {
+        final String strategy = name == null ? DEFAULT : name;
+        if ("Block".equalsIgnoreCase(strategy)) {
+            return new Blocking();
+        } else if ("Sleep".equalsIgnoreCase(strategy)) {
+            return new Sleeping();
+        } else if ("Yield".equalsIgnoreCase(strategy)) {
+            return new Yielding();
+        } else if ("BusySpin".equalsIgnoreCase(strategy)) {
+            return new BusySpin();
+        }
+        throw new IllegalArgumentException("Unknown wait strategy " + name);
+    }
+
+    /**
+     * Called by the consumer after finding the ring empty.
+     *
+     * @param counter The number of consecutive idle calls so far.
+     * @return The counter to pass to the next call.
+     */
+    abstract int idle(int counter, MpscRingBuffer<?> ring);
+
+    /**
+     * Called by producers after publishing a slot.
+     */
+    void signal() {
+    }
+
+    /**
+     * Wakes the consumer up without publishing anything, used on shutdown.
+     */
+    void wakeUp() {
+        signal();
+    }
+
+    static final class Blocking extends WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private volatile boolean waiting;
+
+        @Override
+        int idle(final int counter, final MpscRingBuffer<?> ring) {
+            lock.lock();
+            try {
+                waiting = true;
+                if (!ring.hasPublished()) {
+                    // The timeout bounds the latency if a producer missed the waiting flag
+                    published.await(1L, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiting = false;
+                lock.unlock();
+            }
+            return counter + 1;
+        }
+
+        @Override
+        void signal() {
+            if (waiting) {
+                lock.lock();
+                try {
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    static final class Sleeping extends WaitStrategy {
+        @Override
+        int idle(final int counter, final MpscRingBuffer<?> ring) {
+            if (counter < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(100_000L);
+            }
+            return counter + 1;
+        }
+    }
+
+    static final class Yielding extends WaitStrategy {
+        @Override
+        int idle(final int counter, final MpscRingBuffer<?> ring) {
+            Thread.yield();
+            return counter + 1;
+        }
+    }
+
+    static final class BusySpin extends WaitStrategy {
+        @Override
+        int idle(final int counter, final MpscRingBuffer<?> ring) {
+            return counter + 1;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package rt.tests.accumappender.config;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.ConsoleAppender;
+import org.apache.logging.log4j.core.appender.FileAppender;
+import org.apache.logging.log4j.core.appender.RandomAccessFileAppender;
+import org.apache.logging.log4j.core.config.AbstractConfiguration;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.config.status.StatusConfiguration;
+import org.apache.logging.log4j.core.filter.CompositeFilter;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.lookup.Interpolator;
+import org.apache.logging.log4j.core.lookup.MapLookup;
+import org.apache.logging.log4j.core.util.Booleans;
+import rt.tests.accumappender.AccumulatingAppender;
+import rt.tests.accumappender.ExtLoggerConfig;
+import rt.tests.accumappender.ExtLoggerFilter;
+import rt.tests.accumappender.MarkerPolicy;
+import rt.tests.accumappender.NoExtLoggerFilter;
+import rt.tests.accumappender.file.Spill;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A configuration read from the tree written by {@link ConfigurationCompiler}, whose components are created by
+ * calling their builders and factories directly: no XML is parsed, and no plugin is resolved, validated and injected
+ * by reflection.
+ * <p>
+ * It covers the elements of the {@code log4j2.xml} files of this project, listed in {@link #ELEMENTS}, with the
+ * attributes listed in {@link #ATTRIBUTES}. The attributes are substituted when the configuration is built, as the XML configuration does, so {@code ${ctxScg:key}} and the
+ * {@code Properties} of the configuration keep working.
+ * </p>
+ */
+public class CompiledConfiguration extends AbstractConfiguration {
+
+    /**
+     * The supported elements, by the lower case name of their parent.
+     */
+    static final Map<String, Set<String>> ELEMENTS;
+
+    static {
+        final Map<String, Set<String>> elements = new HashMap<>();
+        final String[] filters = {"filters", "extloggerfilter", "noextloggerfilter"};
+        elements.put("configuration", elements("properties", "appenders", "loggers"));
+        elements.put("properties", elements("property"));
+        elements.put("appenders", elements("console", "file", "randomaccessfile", "accumulating"));
+        elements.put("console", elements(filters, "patternlayout"));
+        elements.put("file", elements(filters, "patternlayout"));
+        elements.put("randomaccessfile", elements(filters, "patternlayout"));
+        elements.put("patternlayout", elements("pattern"));
+        elements.put("accumulating", elements(filters, "appenderref", "markerpolicy", "spill"));
+        elements.put("loggers", elements("logger", "extlogger", "root"));
+        elements.put("logger", elements(filters, "appenderref"));
+        elements.put("extlogger", elements(filters, "appenderref"));
+        elements.put("root", elements(filters, "appenderref"));
+        elements.put("appenderref", elements(filters));
+        elements.put("filters", elements(filters));
+        ELEMENTS = Collections.unmodifiableMap(elements);
+    }
+
+    /**
+     * The supported attributes, by the lower case name of their element, in lower case.
+     */
+    static final Map<String, Set<String>> ATTRIBUTES;
+
+    static {
+        final Map<String, Set<String>> attributes = new HashMap<>();
+        final String[] filter = {"onmatch", "onmismatch"};
+        final String[] appender = {"name", "ignoreexceptions"};
+        attributes.put("configuration", elements("name", "status"));
+        attributes.put("properties", elements());
+        attributes.put("property", elements("name", "value"));
+        attributes.put("appenders", elements());
+        attributes.put("console", elements(appender, "target"));
+        attributes.put("file", elements(appender, "filename", "append", "locking", "immediateflush", "bufferedio",
+                "buffersize"));
+        attributes.put("randomaccessfile", elements(appender, "filename", "append", "immediateflush", "buffersize"));
+        attributes.put("patternlayout", elements("pattern"));
+        attributes.put("pattern", elements());
+        attributes.put("accumulating", elements(appender, "passthroughlevel", "passexceptionthrough"));
+        attributes.put("markerpolicy", elements("marker", "action"));
+        attributes.put("spill", elements("directory", "size"));
+        attributes.put("loggers", elements());
+        attributes.put("logger", elements("name", "level", "additivity", "includelocation"));
+        attributes.put("extlogger", elements("name", "level", "additivity", "includelocation"));
+        attributes.put("root", elements("level"));
+        attributes.put("appenderref", elements("ref", "level"));
+        attributes.put("filters", elements());
+        attributes.put("extloggerfilter", elements(filter));
+        attributes.put("noextloggerfilter", elements(filter));
+        ATTRIBUTES = Collections.unmodifiableMap(attributes);
+    }
+
+    private static Set<String> elements(final String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<String> elements(final String[] filters, final String... names) {
+        final Set<String> elements = elements(names);
+        elements.addAll(Arrays.asList(filters));
+        return elements;
+    }
+
+    private final ConfigNode configuration;
+
+    public CompiledConfiguration(final LoggerContext loggerContext, final ConfigurationSource configSource) {
+        super(loggerContext, configSource);
+        ConfigNode root = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(configSource.getInputStream()))) {
+            root = ConfigNode.read(in);
+        } catch (IOException e) {
+            LOGGER.error("Could not read the compiled configuration {}", configSource, e);
+        }
+        this.configuration = root;
+        if (root != null) {
+            if (root.get("name") != null) {
+                setName(root.get("name"));
+            }
+            if (root.get("status") != null) {
+                new StatusConfiguration().withStatus(root.get("status")).initialize();
+            }
+        }
+    }
+
+    @Override
+    protected void doConfigure() {
+        if (configuration == null) {
+            setToDefault();
+            return;
+        }
+        final ConfigNode properties = configuration.child("Properties");
+        if (properties != null) {
+            configureProperties(properties);
+        }
+        final ConfigNode appenders = configuration.child("Appenders");
+        if (appenders != null) {
+            for (ConfigNode node : appenders.getChildren()) {
+                final Appender appender = createAppender(node);
+                if (appender != null) {
+                    addAppender(appender);
+                } else {
+                    LOGGER.error("Could not create the appender {}", node);
+                }
+            }
+        }
+        final ConfigNode loggers = configuration.child("Loggers");
+        if (loggers != null) {
+            for (ConfigNode node : loggers.getChildren()) {
+                configureLogger(node);
+            }
+        }
+    }
+
+    private void configureProperties(final ConfigNode properties) {
+        final Map<String, String> map = new LinkedHashMap<>();
+        for (ConfigNode property : properties.getChildren()) {
+            final String value = property.getValue() != null ? property.getValue() : property.get("value");
+            map.put(property.get("name"), value != null ? getStrSubstitutor().replace(value) : "");
+        }
+        getStrSubstitutor().setVariableResolver(new Interpolator(new MapLookup(map), getPluginPackages()));
+    }
+
+    private Appender createAppender(final ConfigNode node) {
+        final String name = attribute(node, "name");
+        final Filter filter = createFilters(node);
+        final boolean ignoreExceptions = Booleans.parseBoolean(attribute(node, "ignoreExceptions"), true);
+        switch (lowerCaseName(node)) {
+            case "console":
+                return ConsoleAppender.newBuilder()
+                        .setTarget(ConsoleAppender.Target.valueOf(attribute(node, "target", "SYSTEM_OUT")))
+                        .withName(name)
+                        .withLayout(createLayout(node))
+                        .withFilter(filter)
+                        .withIgnoreExceptions(ignoreExceptions)
+                        .setConfiguration(this)
+                        .build();
+            case "file":
+                return FileAppender.newBuilder()
+                        .withFileName(attribute(node, "fileName"))
+                        .withAppend(Booleans.parseBoolean(attribute(node, "append"), true))
+                        .withLocking(Booleans.parseBoolean(attribute(node, "locking"), false))
+                        .withImmediateFlush(Booleans.parseBoolean(attribute(node, "immediateFlush"), true))
+                        .withBufferedIo(Booleans.parseBoolean(attribute(node, "bufferedIo"), true))
+                        .withBufferSize(Integer.parseInt(attribute(node, "bufferSize", "8192")))
+                        .withName(name)
+                        .withLayout(createLayout(node))
+                        .withFilter(filter)
+                        .withIgnoreExceptions(ignoreExceptions)
+                        .setConfiguration(this)
+                        .build();
+            case "randomaccessfile":
+                return RandomAccessFileAppender.newBuilder()
+                        .setFileName(attribute(node, "fileName"))
+                        .setAppend(Booleans.parseBoolean(attribute(node, "append"), true))
+                        .withImmediateFlush(Booleans.parseBoolean(attribute(node, "immediateFlush"), true))
+                        .withBufferSize(Integer.parseInt(attribute(node, "bufferSize", "262144")))
+                        .withName(name)
+                        .withLayout(createLayout(node))
+                        .withFilter(filter)
+                        .withIgnoreExceptions(ignoreExceptions)
+                        .setConfiguration(this)
+                        .build();
+            case "accumulating":
+                final List<MarkerPolicy> markerPolicies = new ArrayList<>();
+                for (ConfigNode policy : children(node, "MarkerPolicy")) {
+                    markerPolicies.add(MarkerPolicy.createPolicy(attribute(policy, "marker"), attribute(policy, "action")));
+                }
+                final ConfigNode spill = node.child("Spill");
+                return AccumulatingAppender.createAppender(name, attribute(node, "passThroughLevel"),
+                        attribute(node, "ignoreExceptions"), attribute(node, "passExceptionThrough"),
+                        createAppenderRefs(node), this, null, filter,
+                        markerPolicies.isEmpty() ? null : markerPolicies.toArray(new MarkerPolicy[0]),
+                        spill == null ? null : Spill.createSpill(attribute(spill, "directory"), attribute(spill, "size")));
+            default:
+                LOGGER.error("Unsupported appender {} in compiled configuration", node.getName());
+                return null;
+        }
+    }
+
+    private Layout<? extends Serializable> createLayout(final ConfigNode appender) {
+        final ConfigNode layout = appender.child("PatternLayout");
+        if (layout == null) {
+            return PatternLayout.createDefaultLayout(this);
+        }
+        final ConfigNode pattern = layout.child("Pattern");
+        final String value = pattern != null ? substitute(pattern.getValue()) : attribute(layout, "pattern");
+        return PatternLayout.newBuilder()
+                .withPattern(value != null ? value : PatternLayout.DEFAULT_CONVERSION_PATTERN)
+                .withConfiguration(this)
+                .build();
+    }
+
+    private void configureLogger(final ConfigNode node) {
+        final AppenderRef[] refs = createAppenderRefs(node);
+        final Filter filter = createFilters(node);
+        final LoggerConfig loggerConfig;
+        if (lowerCaseName(node).equals("root")) {
+            loggerConfig = getRootLogger();
+            loggerConfig.setLevel(Level.toLevel(attribute(node, "level"), Level.ERROR));
+            if (filter != null) {
+                loggerConfig.addFilter(filter);
+            }
+        } else {
+            final String name = attribute(node, "name");
+            if (name == null) {
+                LOGGER.error("Loggers cannot be configured without a name");
+                return;
+            }
+            final boolean additivity = Booleans.parseBoolean(attribute(node, "additivity"), true);
+            final Level level = Level.toLevel(attribute(node, "level"), null);
+            final String includeLocation = attribute(node, "includeLocation");
+            loggerConfig = lowerCaseName(node).equals("extlogger")
+                    ? ExtLoggerConfig.createLogger(additivity, level, name, includeLocation, refs, null, this, filter)
+                    : LoggerConfig.createLogger(additivity, level, name, includeLocation, refs, null, this, filter);
+            addLogger(name, loggerConfig);
+        }
+        for (AppenderRef ref : refs) {
+            final Appender appender = getAppender(ref.getRef());
+            if (appender != null) {
+                loggerConfig.addAppender(appender, ref.getLevel(), ref.getFilter());
+            } else {
+                LOGGER.error("Unable to locate appender \"{}\" for logger config \"{}\"", ref.getRef(), loggerConfig);
+            }
+        }
+    }
+
+    private AppenderRef[] createAppenderRefs(final ConfigNode node) {
+        final List<AppenderRef> refs = new ArrayList<>();
+        for (ConfigNode ref : children(node, "AppenderRef")) {
+            refs.add(AppenderRef.createAppenderRef(attribute(ref, "ref"),
+                    Level.toLevel(attribute(ref, "level"), null), createFilters(ref)));
+        }
+        return refs.toArray(new AppenderRef[0]);
+    }
+
+    /**
+     * @return The filters of the element, combined if there are several, {@code null} if there are none.
+     */
+    private Filter createFilters(final ConfigNode node) {
+        final List<Filter> filters = new ArrayList<>();
+        for (ConfigNode child : node.getChildren()) {
+            final Filter filter;
+            switch (lowerCaseName(child)) {
+                case "filters":
+                    filter = createFilters(child);
+                    break;
+                case "extloggerfilter":
+                    filter = new ExtLoggerFilter(onMatch(child), onMismatch(child));
+                    break;
+                case "noextloggerfilter":
+                    filter = new NoExtLoggerFilter(onMatch(child), onMismatch(child));
+                    break;
+                default:
+                    filter = null;
+            }
+            if (filter != null) {
+                filters.add(filter);
+            }
+        }
+        if (filters.isEmpty()) {
+            return null;
+        }
+        return filters.size() == 1 ? filters.get(0) : CompositeFilter.createFilters(filters.toArray(new Filter[0]));
+    }
+
+    private Filter.Result onMatch(final ConfigNode filter) {
+        return Filter.Result.toResult(attribute(filter, "onMatch"), Filter.Result.NEUTRAL);
+    }
+
+    private Filter.Result onMismatch(final ConfigNode filter) {
+        return Filter.Result.toResult(attribute(filter, "onMismatch"), Filter.Result.DENY);
+    }
+
+    private static List<ConfigNode> children(final ConfigNode node, final String name) {
+        final List<ConfigNode> children = new ArrayList<>();
+        for (ConfigNode child : node.getChildren()) {
+            if (child.getName().equalsIgnoreCase(name)) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    private static String lowerCaseName(final ConfigNode node) {
+        return node.getName().toLowerCase(Locale.ROOT);
+    }
+
+    private String attribute(final ConfigNode node, final String name) {
+        return substitute(node.get(name));
+    }
+
+    private String attribute(final ConfigNode node, final String name, final String defaultValue) {
+        final String value = attribute(node, name);
+        return value != null ? value : defaultValue;
+    }
+
+    private String substitute(final String value) {
+        return value == null ? null : getStrSubstitutor().replace(value);
+    }
+}
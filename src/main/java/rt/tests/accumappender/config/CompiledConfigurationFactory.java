@@ -0,0 +1,30 @@
+package rt.tests.accumappender.config;
+
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.ConfigurationFactory;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.Order;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+
+/**
+ * Creates a {@link CompiledConfiguration} for the {@code .compiled} files written by {@link ConfigurationCompiler}.
+ * Its order is above the ones of the factories of Log4j, so a {@code log4j2.compiled} on the classpath is picked
+ * before the {@code log4j2.xml} it was compiled from. It can also be named with {@code -Dlog4j.configurationFile}.
+ */
+@Plugin(name = "CompiledConfigurationFactory", category = ConfigurationFactory.CATEGORY)
+@Order(10)
+public class CompiledConfigurationFactory extends ConfigurationFactory {
+
+    private static final String[] SUFFIXES = {".compiled"};
+
+    @Override
+    protected String[] getSupportedTypes() {
+        return SUFFIXES;
+    }
+
+    @Override
+    public Configuration getConfiguration(final LoggerContext loggerContext, final ConfigurationSource source) {
+        return new CompiledConfiguration(loggerContext, source);
+    }
+}
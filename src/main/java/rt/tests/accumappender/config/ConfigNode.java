@@ -0,0 +1,126 @@
+package rt.tests.accumappender.config;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An element of a compiled configuration: its name, its attributes with their names in lower case, its text and its
+ * child elements. A tree is written as the {@code RTCC} magic and a version, followed by the nodes depth first.
+ */
+final class ConfigNode {
+
+    private static final int MAGIC = 0x52544343;
+    private static final int VERSION = 1;
+
+    private final String name;
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private final List<ConfigNode> children = new ArrayList<>();
+    private String value;
+
+    ConfigNode(final String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return The value of the attribute, whatever the case of its name, {@code null} if it is missing.
+     */
+    String get(final String attribute) {
+        return attributes.get(attribute.toLowerCase(Locale.ROOT));
+    }
+
+    void put(final String attribute, final String value) {
+        attributes.put(attribute.toLowerCase(Locale.ROOT), value);
+    }
+
+    Map<String, String> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    void setValue(final String value) {
+        this.value = value;
+    }
+
+    List<ConfigNode> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return The first child of the name, whatever its case, {@code null} if there is none.
+     */
+    ConfigNode child(final String childName) {
+        for (ConfigNode child : children) {
+            if (child.name.equalsIgnoreCase(childName)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    void write(final DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeNode(out);
+    }
+
+    private void writeNode(final DataOutputStream out) throws IOException {
+        out.writeUTF(name);
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+        out.writeShort(attributes.size());
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            out.writeUTF(attribute.getKey());
+            out.writeUTF(attribute.getValue());
+        }
+        out.writeShort(children.size());
+        for (ConfigNode child : children) {
+            child.writeNode(out);
+        }
+    }
+
+    static ConfigNode read(final DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a compiled configuration");
+        }
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled configuration version " + version);
+        }
+        return readNode(in);
+    }
+
+    private static ConfigNode readNode(final DataInputStream in) throws IOException {
+        final ConfigNode node = new ConfigNode(in.readUTF());
+        if (in.readBoolean()) {
+            node.value = in.readUTF();
+        }
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            node.attributes.put(in.readUTF(), in.readUTF());
+        }
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            node.children.add(readNode(in));
+        }
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return name + attributes;
+    }
+}
@@ -0,0 +1,121 @@
+package rt.tests.accumappender.config;
+
+import org.apache.logging.log4j.core.config.ConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Compiles a {@code log4j2.xml} into the tree read by {@link CompiledConfiguration}, failing on the elements and
+ * attributes it does not support:
+ * <pre>
+ * java -cp accum-appender.jar rt.tests.accumappender.config.ConfigurationCompiler log4j2.xml log4j2.compiled
+ * </pre>
+ * The {@code compiled-config} profile runs it on the {@code log4j2.xml} files of the project at build time.
+ */
+public final class ConfigurationCompiler {
+
+    private ConfigurationCompiler() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ConfigurationCompiler <log4j2.xml> <output>");
+            System.exit(1);
+        }
+        final File output = new File(args[1]);
+        if (output.getParentFile() != null) {
+            output.getParentFile().mkdirs();
+        }
+        try (InputStream in = new FileInputStream(args[0]);
+             OutputStream out = new FileOutputStream(output)) {
+            compile(in, out);
+        }
+    }
+
+    /**
+     * @throws ConfigurationException If the configuration has an element or an attribute
+     *                                {@link CompiledConfiguration} does not support.
+     */
+    public static void compile(final InputStream xml, final OutputStream out) throws IOException {
+        final ConfigNode root = toNode(parse(xml).getDocumentElement(), null);
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        root.write(data);
+        data.flush();
+    }
+
+    private static Document parse(final InputStream xml) throws IOException {
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setExpandEntityReferences(false);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            final DocumentBuilder builder = factory.newDocumentBuilder();
+            return builder.parse(xml);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Could not parse the configuration", e);
+        }
+    }
+
+    private static ConfigNode toNode(final Element element, final String parent) {
+        final String name = element.getTagName();
+        if (parent == null ? !name.equalsIgnoreCase("Configuration") : !isSupported(parent, name)) {
+            throw new ConfigurationException("Element " + name + (parent == null ? "" : " in " + parent)
+                    + " is not supported by compiled configurations, keep the XML configuration");
+        }
+        final ConfigNode node = new ConfigNode(name);
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final String attribute = attributes.item(i).getNodeName();
+            if (attribute.startsWith("xmlns")) {
+                continue;
+            }
+            if (!isSupportedAttribute(name, attribute)) {
+                throw new ConfigurationException("Attribute " + attribute + " of " + name
+                        + " is not supported by compiled configurations, keep the XML configuration");
+            }
+            node.put(attribute, attributes.item(i).getNodeValue());
+        }
+        final StringBuilder text = new StringBuilder();
+        final NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node child = children.item(i);
+            if (child instanceof Element) {
+                node.getChildren().add(toNode((Element) child, name));
+            } else if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue());
+            }
+        }
+        final String value = text.toString().trim();
+        if (!value.isEmpty()) {
+            node.setValue(value);
+        }
+        return node;
+    }
+
+    private static boolean isSupportedAttribute(final String element, final String attribute) {
+        final Set<String> attributes = CompiledConfiguration.ATTRIBUTES.get(element.toLowerCase(Locale.ROOT));
+        return attributes != null && attributes.contains(attribute.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isSupported(final String parent, final String name) {
+        final Set<String> elements = CompiledConfiguration.ELEMENTS.get(parent.toLowerCase(Locale.ROOT));
+        return elements != null && elements.contains(name.toLowerCase(Locale.ROOT));
+    }
+}
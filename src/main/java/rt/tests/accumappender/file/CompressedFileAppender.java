@@ -0,0 +1,353 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.util.Log4jThreadFactory;
+import rt.tests.accumappender.LongCounter;
+import rt.tests.accumappender.TransactionAppender;
+import rt.tests.accumappender.TransactionLayout;
+import rt.tests.accumappender.memory.GrowableByteBufferDestination;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the transactions flushed by an {@link rt.tests.accumappender.AccumulatingAppender} to a gzip file,
+ * compressed on a background thread:
+ * <pre>
+ * &lt;CompressedFile name="FailArchive" fileName="logs/fail.log.gz" frameSize="256KB" flushInterval="1000"&gt;
+ *     &lt;PatternLayout pattern="%d %p %c{1.} [%t] %m%n"/&gt;
+ * &lt;/CompressedFile&gt;
+ * </pre>
+ * A request thread only encodes its transaction with the layout and queues the bytes. The background thread
+ * compresses the queued transactions into the current frame, a gzip member of its own, and ends it once it holds
+ * {@code frameSize} uncompressed bytes or when no transaction came for {@code flushInterval} milliseconds. A frame
+ * always holds whole transactions, so the file can be read up to any frame boundary, by {@code zcat} or a
+ * {@link java.util.zip.GZIPInputStream}, and a crash only loses the frame being written. A frame is compressed in
+ * memory and appended to the file as it ends, through a {@link CompressedFileManager} shared by the appenders of the
+ * file. When a frame cannot be written its transactions are lost, and the file is truncated back to the end of the
+ * previous frame.
+ * <p>
+ * When the queue is full the request threads wait, or with {@code blocking="false"} drop their transaction. A stop
+ * waits for the queue to take the stop request up to its timeout, or for as long as the background thread runs.
+ * </p>
+ */
+@Plugin(name = "CompressedFile", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE,
+        printObject = true)
+public class CompressedFileAppender extends AbstractAppender implements TransactionAppender {
+
+    private static final ThreadLocal<GrowableByteBufferDestination> DESTINATION =
+            ThreadLocal.withInitial(GrowableByteBufferDestination::new);
+    private static final byte[] STOP = new byte[0];
+
+    private final CompressedFileManager manager;
+    private final BlockingQueue<byte[]> queue;
+    private final boolean blocking;
+    private final long frameSize;
+    private final long flushInterval;
+    private final LongCounter frames = new LongCounter();
+    private final LongCounter dropped = new LongCounter();
+    private Thread compressor;
+
+    @PluginBuilderFactory
+    public static CompressedFileAppender.Builder newBuilder() {
+        return new CompressedFileAppender.Builder();
+    }
+
+    CompressedFileAppender(final String name, final Layout<? extends Serializable> layout, final Filter filter,
+                           final boolean ignoreExceptions, final CompressedFileManager manager,
+                           final int queueSize, final boolean blocking, final long frameSize,
+                           final long flushInterval) {
+        super(name, filter, layout, ignoreExceptions, null);
+        this.manager = manager;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.blocking = blocking;
+        this.frameSize = frameSize;
+        this.flushInterval = flushInterval;
+    }
+
+    @Override
+    public void start() {
+        compressor = Log4jThreadFactory.createDaemonThreadFactory("CompressedFile-" + getName())
+                .newThread(this::compress);
+        compressor.start();
+        super.start();
+    }
+
+    @Override
+    public boolean stop(final long timeout, final TimeUnit timeUnit) {
+        setStopping();
+        if (compressor != null) {
+            try {
+                if (!queueStop(timeout, timeUnit)) {
+                    LOGGER.warn("CompressedFileAppender {} stopped with {} transactions not written", getName(),
+                            queue.size());
+                    compressor.interrupt();
+                }
+                compressor.join(timeout > 0 ? timeUnit.toMillis(timeout) : 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            compressor = null;
+        }
+        manager.stop(timeout, timeUnit);
+        return super.stop(timeout, timeUnit);
+    }
+
+    /**
+     * @return {@code false} if the queue stayed full for the whole timeout or, without one, the background thread
+     *         ended before taking the stop request.
+     */
+    private boolean queueStop(final long timeout, final TimeUnit timeUnit) throws InterruptedException {
+        if (timeout > 0) {
+            return queue.offer(STOP, timeout, timeUnit);
+        }
+        while (compressor.isAlive()) {
+            if (queue.offer(STOP, flushInterval, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        appendTransaction(event, Collections.singletonList(event));
+    }
+
+    @Override
+    public void appendTransaction(final LogEvent flushEvent, final List<LogEvent> events) {
+        final GrowableByteBufferDestination destination = DESTINATION.get();
+        destination.clear();
+        if (getLayout() instanceof TransactionLayout) {
+            ((TransactionLayout) getLayout()).encodeTransaction(flushEvent, events, destination);
+        } else {
+            for (LogEvent event : events) {
+                getLayout().encode(event, destination);
+            }
+        }
+        final ByteBuffer encoded = destination.flip();
+        final byte[] transaction = new byte[encoded.remaining()];
+        encoded.get(transaction);
+
+        if (!blocking) {
+            if (!queue.offer(transaction)) {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            queue.put(transaction);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppenderLoggingException("Interrupted while queuing a transaction for " + getFileName(), e);
+        }
+    }
+
+    /**
+     * The loop of the background thread. A failure loses the transactions of the current frame only, the thread
+     * goes on with the next ones.
+     */
+    private void compress() {
+        final List<byte[]> batch = new ArrayList<>();
+        Frame frame = null;
+        long frameBytes = 0;
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                final byte[] first = frame == null ? queue.take() : queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // Idle, the frame is ended so its transactions can be read
+                    endFrame(frame);
+                    frame = null;
+                    frameBytes = 0;
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (byte[] transaction : batch) {
+                    if (transaction == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    if (frame == null) {
+                        frame = new Frame();
+                    }
+                    frame.write(transaction);
+                    frameBytes += transaction.length;
+                    if (frameBytes >= frameSize) {
+                        endFrame(frame);
+                        frame = null;
+                        frameBytes = 0;
+                    }
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                stopping = true;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Could not write to {}, the transactions of the current frame are lost", getFileName(),
+                        e);
+                abortFrame(frame);
+                batch.clear();
+                frame = null;
+                frameBytes = 0;
+            }
+        }
+        try {
+            endFrame(frame);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not write to {}, the transactions of the current frame are lost", getFileName(), e);
+            abortFrame(frame);
+        }
+    }
+
+    /**
+     * Releases the deflater of a frame which could not be written.
+     */
+    private static void abortFrame(final Frame frame) {
+        if (frame != null) {
+            frame.abort();
+        }
+    }
+
+    private void endFrame(final Frame frame) throws IOException {
+        if (frame != null) {
+            // Closing the member writes its trailer and releases its deflater
+            frame.close();
+            manager.writeFrame(frame.bytes());
+            frames.incrementAndGet();
+        }
+    }
+
+    public String getFileName() {
+        return manager.getFileName();
+    }
+
+    /**
+     * @return The number of frames written.
+     */
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    /**
+     * @return The number of transactions dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * A gzip member compressed in memory, which can be abandoned without writing its trailer.
+     */
+    private static final class Frame extends GZIPOutputStream {
+
+        Frame() throws IOException {
+            super(new ByteArrayOutputStream(64 * 1024), 64 * 1024);
+        }
+
+        ByteArrayOutputStream bytes() {
+            return (ByteArrayOutputStream) out;
+        }
+
+        void abort() {
+            def.end();
+        }
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<CompressedFileAppender> {
+
+        @PluginBuilderAttribute
+        private String fileName;
+
+        @PluginBuilderAttribute
+        private int queueSize = 1024;
+
+        @PluginBuilderAttribute
+        private boolean blocking = true;
+
+        @PluginBuilderAttribute
+        private String frameSize = "256KB";
+
+        @PluginBuilderAttribute
+        private long flushInterval = 1000;
+
+        public Builder setFileName(final String fileName) {
+            this.fileName = fileName;
+            return this;
+        }
+
+        /**
+         * @param queueSize The number of transactions waiting to be compressed.
+         */
+        public Builder setQueueSize(final int queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * @param blocking {@code false} to drop the transactions when the queue is full instead of waiting.
+         */
+        public Builder setBlocking(final boolean blocking) {
+            this.blocking = blocking;
+            return this;
+        }
+
+        /**
+         * @param frameSize The uncompressed size beyond which a frame is ended, such as {@code 256KB}.
+         */
+        public Builder setFrameSize(final String frameSize) {
+            this.frameSize = frameSize;
+            return this;
+        }
+
+        /**
+         * @param flushInterval The time without transactions after which a frame is ended, in milliseconds.
+         */
+        public Builder setFlushInterval(final long flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        @Override
+        public CompressedFileAppender build() {
+            if (fileName == null) {
+                LOGGER.error("No file name provided for CompressedFileAppender {}", getName());
+                return null;
+            }
+            if (queueSize < 1) {
+                LOGGER.error("Invalid queue size {} for CompressedFileAppender {}", queueSize, getName());
+                return null;
+            }
+            final CompressedFileManager manager = CompressedFileManager.getCompressedFileManager(fileName);
+            if (manager == null) {
+                LOGGER.error("Could not open {} for CompressedFileAppender {}", fileName, getName());
+                return null;
+            }
+            final Layout<? extends Serializable> layout = getLayout() != null ?
+                    getLayout() : PatternLayout.createDefaultLayout();
+            return new CompressedFileAppender(getName(), layout, getFilter(), isIgnoreExceptions(), manager,
+                    queueSize, blocking, FileSize.parse(frameSize, 256 * 1024), Math.max(1, flushInterval));
+        }
+    }
+}
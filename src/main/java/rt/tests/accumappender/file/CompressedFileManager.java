@@ -0,0 +1,94 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.appender.AbstractManager;
+import org.apache.logging.log4j.core.appender.ManagerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the frames of a compressed file, shared by the {@link CompressedFileAppender}s of the file so that the
+ * appenders of the old and new configurations write whole gzip members one after the other on reconfiguration.
+ * <p>
+ * A frame which cannot be written is cut off the file, truncated back to where the frame started: no other frame is
+ * written meanwhile, so the file always ends on a whole member.
+ * </p>
+ */
+final class CompressedFileManager extends AbstractManager {
+
+    private static final ManagerFactory<CompressedFileManager, Void> FACTORY = new CompressedFileManagerFactory();
+
+    private final FileOutputStream file;
+
+    CompressedFileManager(final String fileName, final FileOutputStream file) {
+        super(null, fileName);
+        this.file = file;
+    }
+
+    /**
+     * @param fileName The file, appended to if it exists.
+     * @return The manager of the file, or {@code null} if it could not be opened.
+     */
+    static CompressedFileManager getCompressedFileManager(final String fileName) {
+        try {
+            return narrow(CompressedFileManager.class, getManager(fileName, FACTORY, null));
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    String getFileName() {
+        return getName();
+    }
+
+    /**
+     * Appends a whole frame to the file.
+     *
+     * @throws IOException If the frame could not be written, the file being truncated back to its previous end.
+     */
+    synchronized void writeFrame(final ByteArrayOutputStream frame) throws IOException {
+        final long frameStart = file.getChannel().size();
+        try {
+            frame.writeTo(file);
+            file.flush();
+        } catch (IOException e) {
+            try {
+                file.getChannel().truncate(frameStart);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    protected synchronized boolean releaseSub(final long timeout, final TimeUnit timeUnit) {
+        try {
+            file.close();
+            return true;
+        } catch (IOException e) {
+            logError("Could not close " + getName(), e);
+            return false;
+        }
+    }
+
+    private static final class CompressedFileManagerFactory implements ManagerFactory<CompressedFileManager, Void> {
+
+        @Override
+        public CompressedFileManager createManager(final String fileName, final Void data) {
+            final File target = new File(fileName);
+            if (target.getParentFile() != null) {
+                target.getParentFile().mkdirs();
+            }
+            try {
+                return new CompressedFileManager(fileName, new FileOutputStream(target, true));
+            } catch (IOException e) {
+                LOGGER.error("Could not open {}", fileName, e);
+                return null;
+            }
+        }
+    }
+}
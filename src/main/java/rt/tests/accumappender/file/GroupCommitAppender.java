@@ -0,0 +1,313 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import rt.tests.accumappender.TransactionAppender;
+import rt.tests.accumappender.TransactionLayout;
+import rt.tests.accumappender.memory.GrowableByteBufferDestination;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the transactions flushed by an {@link rt.tests.accumappender.AccumulatingAppender} to a file, the flushes
+ * of concurrent threads being committed together:
+ * <pre>
+ * &lt;GroupCommitFile name="Transactions" fileName="logs/transactions.log" force="true"&gt;
+ *     &lt;PatternLayout pattern="%d %p %c{1.} [%t] %m%n"/&gt;
+ * &lt;/GroupCommitFile&gt;
+ * </pre>
+ * A thread encodes the events of its transaction with the layout, one after the other unless it is a
+ * {@link TransactionLayout}, and queues the bytes. The first thread to find no write in progress becomes the leader:
+ * it takes all the queued transactions, its own included, and writes them with a single gathering
+ * {@link FileChannel#write(ByteBuffer[])}, then forces them to disk with {@code force}. The other threads wait until
+ * their transaction is written, so an append returns once its bytes are in the file, as with a plain file appender,
+ * while a burst of flushes costs a few system calls instead of one each.
+ * <p>
+ * A thread interrupted while waiting withdraws its transaction if it is still queued, otherwise it waits for the
+ * write in progress before returning with its interrupt status set, the leader writing from its buffer. The threads
+ * of every batch which failed get the failure.
+ * </p>
+ */
+@Plugin(name = "GroupCommitFile", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE,
+        printObject = true)
+public class GroupCommitAppender extends AbstractAppender implements TransactionAppender {
+
+    private static final ThreadLocal<GrowableByteBufferDestination> DESTINATION =
+            ThreadLocal.withInitial(GrowableByteBufferDestination::new);
+    private static final ByteBuffer[] NO_BUFFERS = new ByteBuffer[0];
+
+    private final String fileName;
+    private final FileChannel channel;
+    private final boolean force;
+
+    private final Object lock = new Object();
+    private ByteBuffer[] queue = new ByteBuffer[64];
+    private int queued;
+    private long enqueuedCount;
+    private long writtenCount;
+    // The failed batches by the number of their first commit, until all their threads have seen the failure
+    private final TreeMap<Long, Failure> failures = new TreeMap<>();
+    private boolean writing;
+    private long batches;
+
+    @PluginBuilderFactory
+    public static GroupCommitAppender.Builder newBuilder() {
+        return new GroupCommitAppender.Builder();
+    }
+
+    GroupCommitAppender(final String name, final Layout<? extends Serializable> layout, final Filter filter,
+                                final boolean ignoreExceptions, final String fileName, final FileChannel channel,
+                                final boolean force) {
+        super(name, filter, layout, ignoreExceptions, null);
+        this.fileName = fileName;
+        this.channel = channel;
+        this.force = force;
+    }
+
+    @Override
+    public boolean stop(final long timeout, final TimeUnit timeUnit) {
+        synchronized (lock) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.error("Could not close {}", fileName, e);
+            }
+        }
+        return super.stop(timeout, timeUnit);
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        final GrowableByteBufferDestination destination = DESTINATION.get();
+        destination.clear();
+        getLayout().encode(event, destination);
+        commit(destination.flip());
+    }
+
+    @Override
+    public void appendTransaction(final LogEvent flushEvent, final List<LogEvent> events) {
+        final GrowableByteBufferDestination destination = DESTINATION.get();
+        destination.clear();
+        if (getLayout() instanceof TransactionLayout) {
+            ((TransactionLayout) getLayout()).encodeTransaction(flushEvent, events, destination);
+        } else {
+            for (LogEvent event : events) {
+                getLayout().encode(event, destination);
+            }
+        }
+        commit(destination.flip());
+    }
+
+    /**
+     * Queues the bytes and returns once they are written, by this thread or by the leader of the moment.
+     */
+    private void commit(final ByteBuffer bytes) {
+        final long number;
+        synchronized (lock) {
+            if (queued == queue.length) {
+                final ByteBuffer[] grown = new ByteBuffer[queued * 2];
+                System.arraycopy(queue, 0, grown, 0, queued);
+                queue = grown;
+            }
+            queue[queued++] = bytes;
+            number = ++enqueuedCount;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                final ByteBuffer[] batch;
+                final long batchStart;
+                final long batchEnd;
+                synchronized (lock) {
+                    if (writtenCount >= number) {
+                        checkFailure(number);
+                        return;
+                    }
+                    if (writing) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                            if (dequeue(bytes)) {
+                                throw new AppenderLoggingException("Interrupted while waiting to write to " + fileName,
+                                        e);
+                            }
+                            // The leader is writing the bytes, they are waited for
+                        }
+                        continue;
+                    }
+                    writing = true;
+                    batch = queued == 0 ? NO_BUFFERS : Arrays.copyOf(queue, queued);
+                    Arrays.fill(queue, 0, queued, null);
+                    queued = 0;
+                    batchStart = writtenCount + 1;
+                    batchEnd = enqueuedCount;
+                }
+                IOException error = null;
+                try {
+                    write(batch);
+                } catch (IOException e) {
+                    error = e;
+                }
+                synchronized (lock) {
+                    if (error != null && batch.length > 0) {
+                        failures.put(batchStart, new Failure(batchEnd, batch.length, error));
+                    }
+                    writtenCount = batchEnd;
+                    batches++;
+                    writing = false;
+                    lock.notifyAll();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Throws the failure of the batch of the commit, if it failed. Called under the lock.
+     */
+    private void checkFailure(final long number) {
+        final Map.Entry<Long, Failure> entry = failures.floorEntry(number);
+        if (entry == null || number > entry.getValue().to) {
+            return;
+        }
+        final Failure failure = entry.getValue();
+        if (--failure.pending == 0) {
+            failures.remove(entry.getKey());
+        }
+        throw new AppenderLoggingException("Could not write to " + fileName, failure.cause);
+    }
+
+    /**
+     * Withdraws the bytes from the queue. Called under the lock.
+     *
+     * @return {@code false} if they are not queued anymore, a leader having taken them.
+     */
+    private boolean dequeue(final ByteBuffer bytes) {
+        for (int i = 0; i < queued; i++) {
+            if (queue[i] == bytes) {
+                System.arraycopy(queue, i + 1, queue, i, queued - i - 1);
+                queue[--queued] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(final ByteBuffer[] batch) throws IOException {
+        int first = 0;
+        while (first < batch.length) {
+            channel.write(batch, first, batch.length - first);
+            while (first < batch.length && !batch[first].hasRemaining()) {
+                first++;
+            }
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    private static final class Failure {
+
+        private final long to;
+        private final IOException cause;
+        private int pending;
+
+        Failure(final long to, final int pending, final IOException cause) {
+            this.to = to;
+            this.pending = pending;
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * @return The number of gathering writes made, a write committing the transactions queued meanwhile.
+     */
+    public long getBatchCount() {
+        synchronized (lock) {
+            return batches;
+        }
+    }
+
+    /**
+     * @return The number of transactions and single events committed.
+     */
+    public long getCommitCount() {
+        synchronized (lock) {
+            return writtenCount;
+        }
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<GroupCommitAppender> {
+
+        @PluginBuilderAttribute
+        private String fileName;
+
+        @PluginBuilderAttribute
+        private boolean force;
+
+        public Builder setFileName(final String fileName) {
+            this.fileName = fileName;
+            return this;
+        }
+
+        /**
+         * @param force {@code true} to force every batch to disk before the threads waiting for it return.
+         */
+        public Builder setForce(final boolean force) {
+            this.force = force;
+            return this;
+        }
+
+        @Override
+        public GroupCommitAppender build() {
+            if (fileName == null) {
+                LOGGER.error("No file name provided for GroupCommitAppender {}", getName());
+                return null;
+            }
+            final File file = new File(fileName);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            final FileChannel channel;
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                LOGGER.error("Could not open {} for GroupCommitAppender {}", fileName, getName(), e);
+                return null;
+            }
+            final Layout<? extends Serializable> layout = getLayout() != null ?
+                    getLayout() : PatternLayout.createDefaultLayout();
+            return new GroupCommitAppender(getName(), layout, getFilter(), isIgnoreExceptions(), fileName, channel,
+                    force);
+        }
+    }
+}
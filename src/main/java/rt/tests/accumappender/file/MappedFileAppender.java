@@ -0,0 +1,170 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.util.Log4jThreadFactory;
+
+import java.io.Serializable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static rt.tests.accumappender.Markers.FAIL;
+import static rt.tests.accumappender.Markers.SUCCESS;
+import static rt.tests.accumappender.Markers.isInstanceOfAny;
+
+/**
+ * Writes the events to a memory-mapped file, for the transactions flushed by an
+ * {@link rt.tests.accumappender.AccumulatingAppender}:
+ * <pre>
+ * &lt;MappedFile name="MappedFile" fileName="logs/app-new.log" segmentSize="32MB" forceOnTransactionEnd="true"&gt;
+ *     &lt;PatternLayout pattern="%d %p %c{1.} [%t] %m%n"/&gt;
+ * &lt;/MappedFile&gt;
+ * </pre>
+ * The layout encodes the events directly into the mapped segment, so writing an event makes no system call. The
+ * written bytes are forced to disk every {@code forceInterval} milliseconds, after every {@code SUCCESS} or
+ * {@code FAIL} event with {@code forceOnTransactionEnd}, when a segment is full and when the appender stops.
+ * Otherwise the operating system writes them back when it sees fit. The appenders writing to the same file share it,
+ * as the file appenders of Log4j do.
+ */
+@Plugin(name = "MappedFile", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class MappedFileAppender extends AbstractAppender {
+
+    private static final long TRANSACTION_END = SUCCESS.bit() | FAIL.bit();
+
+    private final MappedFileManager manager;
+    private final long forceInterval;
+    private final boolean forceOnTransactionEnd;
+    private ScheduledExecutorService scheduler;
+
+    @PluginBuilderFactory
+    public static MappedFileAppender.Builder newBuilder() {
+        return new MappedFileAppender.Builder();
+    }
+
+    private MappedFileAppender(final String name, final Layout<? extends Serializable> layout, final Filter filter,
+                               final boolean ignoreExceptions, final MappedFileManager manager,
+                               final long forceInterval, final boolean forceOnTransactionEnd) {
+        super(name, filter, layout, ignoreExceptions, null);
+        this.manager = manager;
+        this.forceInterval = forceInterval;
+        this.forceOnTransactionEnd = forceOnTransactionEnd;
+    }
+
+    @Override
+    public void start() {
+        if (forceInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    Log4jThreadFactory.createDaemonThreadFactory("MappedFile-" + getName()));
+            scheduler.scheduleWithFixedDelay(manager::force, forceInterval, forceInterval, TimeUnit.MILLISECONDS);
+        }
+        super.start();
+    }
+
+    @Override
+    public boolean stop(final long timeout, final TimeUnit timeUnit) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        manager.stop(timeout, timeUnit);
+        return super.stop(timeout, timeUnit);
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        synchronized (manager) {
+            getLayout().encode(event, manager);
+        }
+        if (forceOnTransactionEnd && isInstanceOfAny(event.getMarker(), TRANSACTION_END)) {
+            manager.force();
+        }
+    }
+
+    /**
+     * @return The number of bytes written to the file.
+     */
+    public long getPosition() {
+        return manager.getPosition();
+    }
+
+    /**
+     * @return The number of times the file was forced to disk, besides the forces of full segments.
+     */
+    public long getForceCount() {
+        return manager.getForceCount();
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<MappedFileAppender> {
+
+        @PluginBuilderAttribute
+        private String fileName;
+
+        @PluginBuilderAttribute
+        private String segmentSize = "32MB";
+
+        @PluginBuilderAttribute
+        private long forceInterval;
+
+        @PluginBuilderAttribute
+        private boolean forceOnTransactionEnd;
+
+        public Builder setFileName(final String fileName) {
+            this.fileName = fileName;
+            return this;
+        }
+
+        /**
+         * @param segmentSize The size of the mapped segments, such as {@code 32MB}.
+         */
+        public Builder setSegmentSize(final String segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * @param forceInterval The time between two forces to disk, in milliseconds, {@code 0} for none.
+         */
+        public Builder setForceInterval(final long forceInterval) {
+            this.forceInterval = forceInterval;
+            return this;
+        }
+
+        public Builder setForceOnTransactionEnd(final boolean forceOnTransactionEnd) {
+            this.forceOnTransactionEnd = forceOnTransactionEnd;
+            return this;
+        }
+
+        @Override
+        public MappedFileAppender build() {
+            if (fileName == null) {
+                LOGGER.error("No file name provided for MappedFileAppender {}", getName());
+                return null;
+            }
+            final long size = FileSize.parse(segmentSize, 32 * 1024 * 1024);
+            if (size < 1 || size > Integer.MAX_VALUE) {
+                LOGGER.error("Invalid segment size {} for MappedFileAppender {}", segmentSize, getName());
+                return null;
+            }
+            final MappedFileManager manager = MappedFileManager.getMappedFileManager(fileName, (int) size);
+            if (manager == null) {
+                LOGGER.error("Could not map {} for MappedFileAppender {}", fileName, getName());
+                return null;
+            }
+            final Layout<? extends Serializable> layout = getLayout() != null ?
+                    getLayout() : PatternLayout.createDefaultLayout();
+            return new MappedFileAppender(getName(), layout, getFilter(), isIgnoreExceptions(), manager,
+                    forceInterval, forceOnTransactionEnd);
+        }
+    }
+}
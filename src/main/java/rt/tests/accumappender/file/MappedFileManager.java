@@ -0,0 +1,199 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.appender.AbstractManager;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.core.appender.ManagerFactory;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes to a file through a memory-mapped segment, the layouts encoding the events straight into it.
+ * <p>
+ * When a segment is full the file is extended by {@code segmentSize} bytes, the segment is forced to disk and the
+ * next one is mapped. The file is truncated to the bytes written when the last appender using it releases it, a
+ * file being shared by the appenders of the old and new configurations on reconfiguration. After a crash the zeros
+ * left at the end of the last segment are skipped, the layouts writing text which never ends with one. Writers must
+ * synchronize on the manager, {@link #force()} may be called without it.
+ * </p>
+ */
+final class MappedFileManager extends AbstractManager implements ByteBufferDestination {
+
+    private static final ManagerFactory<MappedFileManager, Integer> FACTORY = new MappedFileManagerFactory();
+    private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+
+    private final int segmentSize;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    private volatile MappedByteBuffer mapping;
+    private long mappingOffset;
+    private long forces;
+
+    private MappedFileManager(final String fileName, final int segmentSize, final RandomAccessFile file)
+            throws IOException {
+        super(null, fileName);
+        this.segmentSize = segmentSize;
+        this.file = file;
+        this.channel = file.getChannel();
+        remap(endOfData(channel));
+    }
+
+    /**
+     * @param fileName    The file, appended to if it exists.
+     * @param segmentSize The size of the mapped segments, ignored if the file is already used by another appender.
+     * @return The manager of the file, or {@code null} if it could not be mapped.
+     */
+    static MappedFileManager getMappedFileManager(final String fileName, final int segmentSize) {
+        try {
+            return narrow(MappedFileManager.class, getManager(fileName, FACTORY, segmentSize));
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    String getFileName() {
+        return getName();
+    }
+
+    /**
+     * @return The number of bytes in the file, the unused rest of the segment excluded.
+     */
+    synchronized long getPosition() {
+        return mappingOffset + mapping.position();
+    }
+
+    synchronized long getForceCount() {
+        return forces;
+    }
+
+    /**
+     * @return The size of the file without the zeros at its end.
+     */
+    private static long endOfData(final FileChannel channel) throws IOException {
+        final ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+        long end = channel.size();
+        while (end > 0) {
+            final long start = Math.max(0L, end - SCAN_BLOCK_SIZE);
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining() && channel.read(block, start + block.position()) >= 0) {
+                // Reads the whole block
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0L;
+    }
+
+    private void remap(final long offset) throws IOException {
+        final MappedByteBuffer previous = mapping;
+        if (previous != null) {
+            previous.force();
+        }
+        if (file.length() < offset + segmentSize) {
+            file.setLength(offset + segmentSize);
+        }
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, offset, segmentSize);
+        mappingOffset = offset;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return mapping;
+    }
+
+    /**
+     * Maps the next segment, starting right after the bytes written into the given one.
+     */
+    @Override
+    public ByteBuffer drain(final ByteBuffer buf) {
+        try {
+            remap(mappingOffset + buf.position());
+        } catch (IOException e) {
+            throw new AppenderLoggingException("Could not map the next segment of " + getName(), e);
+        }
+        return mapping;
+    }
+
+    @Override
+    public void writeBytes(final ByteBuffer data) {
+        while (data.hasRemaining()) {
+            ByteBuffer buffer = mapping;
+            if (!buffer.hasRemaining()) {
+                buffer = drain(buffer);
+            }
+            final int limit = data.limit();
+            data.limit(data.position() + Math.min(data.remaining(), buffer.remaining()));
+            buffer.put(data);
+            data.limit(limit);
+        }
+    }
+
+    @Override
+    public void writeBytes(final byte[] data, final int offset, final int length) {
+        writeBytes(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Forces the written bytes to disk.
+     */
+    void force() {
+        mapping.force();
+        synchronized (this) {
+            forces++;
+        }
+    }
+
+    @Override
+    protected synchronized boolean releaseSub(final long timeout, final TimeUnit timeUnit) {
+        final long position = getPosition();
+        mapping.force();
+        try {
+            try {
+                file.setLength(position);
+            } finally {
+                file.close();
+            }
+            return true;
+        } catch (IOException e) {
+            logError("Could not close " + getName(), e);
+            return false;
+        }
+    }
+
+    private static final class MappedFileManagerFactory implements ManagerFactory<MappedFileManager, Integer> {
+
+        @Override
+        public MappedFileManager createManager(final String fileName, final Integer segmentSize) {
+            final File target = new File(fileName);
+            if (target.getParentFile() != null) {
+                target.getParentFile().mkdirs();
+            }
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(target, "rw");
+                return new MappedFileManager(fileName, segmentSize, file);
+            } catch (IOException e) {
+                LOGGER.error("Could not map {}", fileName, e);
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                return null;
+            }
+        }
+    }
+}
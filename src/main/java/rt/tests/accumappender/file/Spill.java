@@ -0,0 +1,280 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the events accumulated by an {@link rt.tests.accumappender.AccumulatingAppender} into a memory-mapped
+ * {@link SpillFile} per thread as they arrive, so the unflushed ones survive the death of the process:
+ * <pre>
+ * &lt;Accumulating name="AccuAppender"&gt;
+ *     &lt;Spill directory="logs/spill" size="1MB"/&gt;
+ *     ...
+ * </pre>
+ * A spill file is reset when its transaction is flushed or discarded, and the events of a transaction longer than the
+ * file are dropped from it. When the appender starts, the spill files left by earlier processes are recovered into a
+ * {@code recovered-*.log} file of the directory, see {@link SpillRecovery}. They are deleted when it stops.
+ * <p>
+ * The spill files are named after an id drawn when the process starts, and the process locks the {@code <id>.lock}
+ * file of the directory until it exits. The files whose lock is held belong to a running process and are not
+ * recovered, whatever its process id, which is the same on every start in a container.
+ * </p>
+ * <p>
+ * A thread keeps its spill file while it lives, so the directory holds a file of {@code size} bytes per live thread
+ * which logged. The files of the threads which died are deleted when the next one is created.
+ * </p>
+ */
+@Plugin(name = "Spill", category = Core.CATEGORY_NAME, printObject = true)
+public final class Spill {
+
+    private static final StatusLogger LOGGER = StatusLogger.getLogger();
+    private static final String RUN_ID = UUID.randomUUID().toString().replace("-", "");
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final ConcurrentMap<Path, FileChannel> LOCKS = new ConcurrentHashMap<>();
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Path directory;
+    private final int fileSize;
+    private final String prefix;
+    private final ConcurrentMap<Long, SpillFile> files = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, SpillFile> handedOffFiles = new ConcurrentHashMap<>();
+    private volatile boolean failed;
+
+    public Spill(final String directory, final int fileSize) {
+        this.directory = Paths.get(directory);
+        this.fileSize = fileSize;
+        this.prefix = RUN_ID + "-" + INSTANCES.incrementAndGet() + "-";
+    }
+
+    /**
+     * Creates a Spill.
+     *
+     * @param directory The directory of the spill files.
+     * @param size      The size of the spill file of a thread, such as {@code 1MB}.
+     * @return The created Spill.
+     */
+    @PluginFactory
+    public static Spill createSpill(
+            @PluginAttribute("directory") final String directory,
+            @PluginAttribute("size") final String size) {
+        if (directory == null) {
+            LOGGER.error("No directory provided for Spill");
+            return null;
+        }
+        final long fileSize = FileSize.parse(size, 1024 * 1024);
+        if (fileSize <= SpillFile.DATA || fileSize > Integer.MAX_VALUE) {
+            LOGGER.error("Invalid size " + size + " of Spill in " + directory);
+            return null;
+        }
+        return new Spill(directory, (int) fileSize);
+    }
+
+    public String getDirectory() {
+        return directory.toString();
+    }
+
+    /**
+     * Recovers the spill files of the processes which died, the ones of the running processes being left alone, and
+     * deletes their lock files.
+     *
+     * @return The file they were recovered into, {@code null} if there were none.
+     */
+    public File recover() {
+        try {
+            Files.createDirectories(directory);
+            final Map<String, Boolean> running = new HashMap<>();
+            final File recovered = SpillRecovery.recover(directory,
+                    file -> running.computeIfAbsent(runId(file), this::isRunning));
+            if (recovered != null) {
+                LOGGER.warn("Unflushed transactions of an earlier process were recovered into " + recovered);
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + LOCK_SUFFIX)) {
+                for (Path lockFile : stream) {
+                    if (!running.computeIfAbsent(runId(lockFile), this::isRunning)) {
+                        Files.deleteIfExists(lockFile);
+                    }
+                }
+            }
+            return recovered;
+        } catch (IOException e) {
+            LOGGER.error("Could not recover the spill files of " + directory, e);
+            return null;
+        }
+    }
+
+    private static String runId(final Path file) {
+        final String name = file.getFileName().toString();
+        final int end = name.indexOf('-');
+        return end >= 0 ? name.substring(0, end) : name.substring(0, name.length() - LOCK_SUFFIX.length());
+    }
+
+    /**
+     * @return {@code true} if the lock file of the run is locked. It must not be one of this process, whose locks would
+     * be released by closing the channel.
+     */
+    private boolean isRunning(final String runId) {
+        if (RUN_ID.equals(runId)) {
+            return true;
+        }
+        final Path lockFile = directory.resolve(runId + LOCK_SUFFIX);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            final FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Could not check the lock " + lockFile + ", its spill files are left alone", e);
+            return true;
+        }
+    }
+
+    /**
+     * Locks the lock file of this process in the directory, until the process exits.
+     */
+    private void lockRun() throws IOException {
+        final Path lockFile = directory.resolve(RUN_ID + LOCK_SUFFIX).toAbsolutePath();
+        if (LOCKS.containsKey(lockFile)) {
+            return;
+        }
+        synchronized (LOCKS) {
+            if (!LOCKS.containsKey(lockFile)) {
+                final FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+                try {
+                    channel.lock();
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+                LOCKS.put(lockFile, channel);
+            }
+        }
+    }
+
+    /**
+     * @param event     An accumulated event.
+     * @param handedOff {@code true} if it is appended by another thread than the one which logged it.
+     */
+    public void append(final LogEvent event, final boolean handedOff) {
+        if (failed) {
+            return;
+        }
+        final SpillFile file = getFile(event.getThreadId(), handedOff);
+        if (file != null) {
+            file.append(event);
+        }
+    }
+
+    /**
+     * Forgets the events accumulated for the thread, once they are flushed or discarded.
+     */
+    public void reset(final long threadId, final boolean handedOff) {
+        final SpillFile file = (handedOff ? handedOffFiles : files).get(threadId);
+        if (file != null) {
+            file.reset();
+        }
+    }
+
+    private SpillFile getFile(final long threadId, final boolean handedOff) {
+        final ConcurrentMap<Long, SpillFile> map = handedOff ? handedOffFiles : files;
+        final SpillFile file = map.get(threadId);
+        if (file != null) {
+            return file;
+        }
+        final Path path = directory.resolve(prefix + threadId + (handedOff ? "-handed-off" : "")
+                + SpillRecovery.SUFFIX);
+        try {
+            Files.createDirectories(directory);
+            lockRun();
+            deleteFilesOfDeadThreads();
+            final SpillFile created = new SpillFile(path, threadId, fileSize);
+            map.put(threadId, created);
+            return created;
+        } catch (IOException e) {
+            failed = true;
+            LOGGER.error("Could not create the spill file " + path + ", spilling is disabled", e);
+            return null;
+        }
+    }
+
+    private void deleteFilesOfDeadThreads() {
+        final long[] live = THREADS.getAllThreadIds();
+        Arrays.sort(live);
+        deleteFilesOfDeadThreads(files, live);
+        deleteFilesOfDeadThreads(handedOffFiles, live);
+    }
+
+    private void deleteFilesOfDeadThreads(final ConcurrentMap<Long, SpillFile> map, final long[] live) {
+        for (Long threadId : map.keySet()) {
+            if (Arrays.binarySearch(live, threadId) < 0) {
+                final SpillFile file = map.remove(threadId);
+                if (file != null) {
+                    try {
+                        file.discard();
+                    } catch (IOException e) {
+                        LOGGER.error("Could not delete a spill file of " + directory, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the spill files, their events being lost with the appender.
+     */
+    public void close() {
+        close(files);
+        close(handedOffFiles);
+    }
+
+    private void close(final ConcurrentMap<Long, SpillFile> map) {
+        for (Long threadId : map.keySet()) {
+            final SpillFile file = map.remove(threadId);
+            if (file != null) {
+                try {
+                    file.delete();
+                } catch (IOException e) {
+                    LOGGER.error("Could not delete a spill file of " + directory, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Spill[" + directory + "]";
+    }
+}
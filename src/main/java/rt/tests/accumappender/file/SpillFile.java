@@ -0,0 +1,103 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.LogEvent;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * The memory-mapped spill file of the events accumulated by one thread.
+ * <p>
+ * The file starts with the {@code RTSP} magic, the version, the id of the thread and the number of events dropped
+ * because the file was full. The events follow from {@link #DATA}, each one as a {@link TransactionEncoder} record
+ * body preceded by its length as an int, the last one followed by a zero length. A record is written before its
+ * length, and the zero length after it before the length, so the file always ends on a complete record for whoever
+ * reads it, even if the process dies in the middle of a write. The bytes written to the mapping survive the death of
+ * the process, not the one of the operating system.
+ * </p>
+ * <p>
+ * Only one thread writes to a spill file at a time.
+ * </p>
+ */
+final class SpillFile {
+
+    static final byte[] MAGIC = {'R', 'T', 'S', 'P'};
+    static final int VERSION = 1;
+    static final int THREAD_ID = 8;
+    static final int DROPPED = 16;
+    static final int DATA = 32;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final TransactionEncoder encoder = new TransactionEncoder();
+    private int position = DATA;
+    private int dropped;
+
+    SpillFile(final Path path, final long threadId, final int size) throws IOException {
+        this.path = path;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(size);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.putInt(DATA, 0);
+        buffer.putInt(DROPPED, 0);
+        buffer.putLong(THREAD_ID, threadId);
+        buffer.putInt(MAGIC.length, VERSION);
+        for (int i = 0; i < MAGIC.length; i++) {
+            buffer.put(i, MAGIC[i]);
+        }
+    }
+
+    /**
+     * @return {@code false} if the event was dropped because the file is full.
+     */
+    boolean append(final LogEvent event) {
+        final ByteBuffer body = encoder.encodeBody(Collections.singletonList(event));
+        final int length = body.remaining();
+        if (position + length + 8 > buffer.capacity()) {
+            buffer.putInt(DROPPED, ++dropped);
+            return false;
+        }
+        final ByteBuffer target = buffer.duplicate();
+        target.position(position + 4);
+        target.put(body);
+        buffer.putInt(position + 4 + length, 0);
+        buffer.putInt(position, length);
+        position += 4 + length;
+        return true;
+    }
+
+    /**
+     * Forgets the events, once they are flushed or discarded.
+     */
+    void reset() {
+        if (position == DATA && dropped == 0) {
+            return;
+        }
+        buffer.putInt(DATA, 0);
+        position = DATA;
+        if (dropped != 0) {
+            dropped = 0;
+            buffer.putInt(DROPPED, 0);
+        }
+    }
+
+    void delete() throws IOException {
+        reset();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Deletes the file of a dead thread, leaving the mapping alone as the thread handing its events off may still
+     * write to it.
+     */
+    void discard() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
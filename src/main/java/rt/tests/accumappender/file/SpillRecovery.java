@@ -0,0 +1,132 @@
+package rt.tests.accumappender.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reconstructs the transactions left unflushed in the {@link SpillFile}s of a {@link Spill} directory, by a process
+ * which died before flushing them:
+ * <pre>
+ * java -cp accum-appender.jar rt.tests.accumappender.file.SpillRecovery logs/spill
+ * </pre>
+ * The tool prints them without touching the files. The {@code Accumulating} appender recovers them on its own when
+ * it starts, into a {@code recovered-*.log} file of the directory, and deletes the spill files.
+ */
+public final class SpillRecovery {
+
+    static final String SUFFIX = ".spill";
+
+    private SpillRecovery() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: SpillRecovery <spill directory>");
+            System.exit(1);
+        }
+        print(Paths.get(args[0]), null, System.out);
+    }
+
+    /**
+     * Prints the unflushed transactions of the spill files of the directory.
+     *
+     * @param skipped The spill files to skip, such as the ones of the running processes, {@code null} for none.
+     * @return The spill files read.
+     */
+    static List<Path> print(final Path directory, final Predicate<Path> skipped, final PrintStream out)
+            throws IOException {
+        final List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                if (skipped == null || !skipped.test(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        final TransactionDecoder decoder = new TransactionDecoder();
+        for (Path file : files) {
+            printFile(file, decoder, out);
+        }
+        return files;
+    }
+
+    private static void printFile(final Path file, final TransactionDecoder decoder, final PrintStream out) {
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            out.println("=== Could not read " + file + ": " + e);
+            return;
+        }
+        if (buffer.capacity() < SpillFile.DATA
+                || !Arrays.equals(Arrays.copyOf(buffer.array(), SpillFile.MAGIC.length), SpillFile.MAGIC)
+                || buffer.getInt(SpillFile.MAGIC.length) != SpillFile.VERSION) {
+            out.println("=== Not a spill file: " + file);
+            return;
+        }
+        final List<TransactionRecord.Event> events = new ArrayList<>();
+        String error = null;
+        int position = SpillFile.DATA;
+        while (position + 4 <= buffer.capacity()) {
+            final int length = buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > buffer.capacity()) {
+                break;
+            }
+            buffer.limit(position + 4 + length).position(position + 4);
+            try {
+                events.addAll(decoder.decode(buffer.slice(), position).getEvents());
+            } catch (IOException e) {
+                error = e.getMessage();
+                break;
+            }
+            buffer.limit(buffer.capacity());
+            position += 4 + length;
+        }
+        final int dropped = buffer.getInt(SpillFile.DROPPED);
+        if (events.isEmpty() && dropped == 0) {
+            return;
+        }
+        final String title = "Unflushed transaction of thread " + buffer.getLong(SpillFile.THREAD_ID)
+                + " in " + file.getFileName() + ": " + events.size() + " event(s)"
+                + (dropped > 0 ? ", " + dropped + " more dropped" : "")
+                + (error != null ? ", the rest unreadable (" + error + ")" : "");
+        TransactionLogTool.print(title, new TransactionRecord(0, events), out);
+    }
+
+    /**
+     * Prints the unflushed transactions of the spill files into a new {@code recovered-*.log} file of the directory,
+     * and deletes the spill files.
+     *
+     * @return The recovered file, {@code null} if there were no spill files.
+     */
+    static File recover(final Path directory, final Predicate<Path> skipped) throws IOException {
+        final File recovered = directory.resolve("recovered-" + System.currentTimeMillis() + ".log").toFile();
+        final List<Path> files;
+        try (PrintStream out = new PrintStream(new FileOutputStream(recovered), true, "UTF-8")) {
+            files = print(directory, skipped, out);
+        }
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+        if (files.isEmpty() || recovered.length() == 0) {
+            Files.deleteIfExists(recovered.toPath());
+            return null;
+        }
+        return recovered;
+    }
+}
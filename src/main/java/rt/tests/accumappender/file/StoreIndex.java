@@ -0,0 +1,139 @@
+package rt.tests.accumappender.file;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The in-memory index of a {@link TransactionStore}, as parallel primitive arrays in the order the transactions were
+ * stored: the time and marker of the flush, the hash of the request id, and the file and offset of the record.
+ * <p>
+ * The lookups by request id binary search a {@code long[]} of the hashes in the upper half and the entry numbers in
+ * the lower half, sorted. The entries added since the last lookup are sorted apart and merged into it.
+ * </p>
+ * <p>
+ * An entry is stored in the sidecar file as {@link #ENTRY_SIZE} bytes: the time, the offset, the file number, the
+ * hash and the marker id.
+ * </p>
+ */
+final class StoreIndex {
+
+    static final int ENTRY_SIZE = 32;
+
+    private long[] timestamps = new long[1024];
+    private long[] offsets = new long[1024];
+    private int[] files = new int[1024];
+    private int[] requestHashes = new int[1024];
+    private byte[] markers = new byte[1024];
+    private int size;
+
+    private long[] byRequest = new long[0];
+
+    static int hash(final String requestId) {
+        return requestId == null ? 0 : requestId.hashCode();
+    }
+
+    void add(final long timestamp, final long offset, final int file, final int requestHash, final int marker) {
+        if (size == timestamps.length) {
+            final int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            files = Arrays.copyOf(files, capacity);
+            requestHashes = Arrays.copyOf(requestHashes, capacity);
+            markers = Arrays.copyOf(markers, capacity);
+        }
+        timestamps[size] = timestamp;
+        offsets[size] = offset;
+        files[size] = file;
+        requestHashes[size] = requestHash;
+        markers[size] = (byte) marker;
+        size++;
+    }
+
+    void write(final int entry, final ByteBuffer target) {
+        target.putLong(timestamps[entry])
+                .putLong(offsets[entry])
+                .putInt(files[entry])
+                .putInt(requestHashes[entry])
+                .put(markers[entry])
+                .put(new byte[ENTRY_SIZE - 25]);
+    }
+
+    void read(final ByteBuffer source) {
+        final long timestamp = source.getLong();
+        final long offset = source.getLong();
+        final int file = source.getInt();
+        final int requestHash = source.getInt();
+        final int marker = source.get() & 0xFF;
+        source.position(source.position() + ENTRY_SIZE - 25);
+        add(timestamp, offset, file, requestHash, marker);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long timestamp(final int entry) {
+        return timestamps[entry];
+    }
+
+    long offset(final int entry) {
+        return offsets[entry];
+    }
+
+    int file(final int entry) {
+        return files[entry];
+    }
+
+    int marker(final int entry) {
+        return markers[entry] & 0xFF;
+    }
+
+    /**
+     * @return The entries of the request id hash, ascending.
+     */
+    int[] findByRequestHash(final int requestHash) {
+        sortByRequest();
+        final long key = (long) requestHash << 32;
+        int low = 0;
+        int high = byRequest.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (byRequest[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low;
+        while (end < byRequest.length && (int) (byRequest[end] >> 32) == requestHash) {
+            end++;
+        }
+        final int[] entries = new int[end - low];
+        for (int i = low; i < end; i++) {
+            entries[i - low] = (int) byRequest[i];
+        }
+        return entries;
+    }
+
+    private void sortByRequest() {
+        final int sorted = byRequest.length;
+        if (sorted == size) {
+            return;
+        }
+        final long[] added = new long[size - sorted];
+        for (int entry = sorted; entry < size; entry++) {
+            added[entry - sorted] = ((long) requestHashes[entry] << 32) | entry;
+        }
+        Arrays.sort(added);
+        final long[] merged = new long[size];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sorted && j < added.length) {
+            merged[k++] = byRequest[i] <= added[j] ? byRequest[i++] : added[j++];
+        }
+        System.arraycopy(byRequest, i, merged, k, sorted - i);
+        System.arraycopy(added, j, merged, k + sorted - i, added.length - j);
+        byRequest = merged;
+    }
+}
@@ -0,0 +1,230 @@
+package rt.tests.accumappender.file;
+
+import rt.tests.accumappender.Markers;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static rt.tests.accumappender.file.TransactionEncoder.*;
+
+/**
+ * Reads the records of a binary transaction log written with a {@link TransactionEncoder}:
+ * <pre>
+ * try (TransactionDecoder decoder = new TransactionDecoder(new FileInputStream("logs/transactions.bin"))) {
+ *     for (TransactionRecord record = decoder.next(); record != null; record = decoder.next()) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public final class TransactionDecoder implements Closeable {
+
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private byte[] body = new byte[4096];
+    private int position;
+    private int size;
+    private long offset;
+
+    /**
+     * A decoder of single records, for {@link #decode(ByteBuffer, long)}.
+     */
+    TransactionDecoder() {
+        this.in = null;
+    }
+
+    /**
+     * @throws IOException If the stream does not start with the header of a transaction log.
+     */
+    public TransactionDecoder(final InputStream in) throws IOException {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+        final byte[] magic = new byte[MAGIC.length + 1];
+        if (read(magic, magic.length) < magic.length
+                || !Arrays.equals(Arrays.copyOf(magic, MAGIC.length), MAGIC)) {
+            throw new IOException("Not a transaction log");
+        }
+        if (magic[MAGIC.length] != VERSION) {
+            throw new IOException("Unsupported transaction log version " + magic[MAGIC.length]);
+        }
+        offset = magic.length;
+    }
+
+    /**
+     * @return The next record, {@code null} at the end of the stream.
+     * @throws EOFException If the stream ends in the middle of a record.
+     */
+    public TransactionRecord next() throws IOException {
+        final long recordOffset = offset;
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return null;
+                }
+                throw new EOFException("Truncated record at " + recordOffset);
+            }
+            offset++;
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (body.length < length) {
+            body = new byte[Math.max(length, body.length * 2)];
+        }
+        if (read(body, length) < length) {
+            throw new EOFException("Truncated record at " + recordOffset);
+        }
+        offset += length;
+        return decodeBody(recordOffset, length);
+    }
+
+    /**
+     * Decodes the body of a record, without its length.
+     *
+     * @param recordOffset The position of the record, reported by {@link TransactionRecord#getOffset()}.
+     */
+    TransactionRecord decode(final ByteBuffer record, final long recordOffset) throws IOException {
+        final int length = record.remaining();
+        if (body.length < length) {
+            body = new byte[Math.max(length, body.length * 2)];
+        }
+        record.get(body, 0, length);
+        return decodeBody(recordOffset, length);
+    }
+
+    private TransactionRecord decodeBody(final long recordOffset, final int length) throws IOException {
+        position = 0;
+        size = length;
+        dictionary.clear();
+
+        final int count = (int) readVarLong();
+        final long first = readVarLong();
+        final List<TransactionRecord.Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(readEvent(first));
+        }
+        return new TransactionRecord(recordOffset, events);
+    }
+
+    private TransactionRecord.Event readEvent(final long first) throws IOException {
+        final long zigzag = readVarLong();
+        final long timeMillis = first + ((zigzag >>> 1) ^ -(zigzag & 1));
+        final String level = readLevel();
+        final String marker = readMarker();
+        final String loggerName = readName();
+        final String threadName = readName();
+        final String message = readString();
+        final int flags = readByte();
+        final String thrown = (flags & FLAG_THROWN) != 0 ? readString() : null;
+        final Map<String, String> contextData = new LinkedHashMap<>();
+        if ((flags & FLAG_CONTEXT_DATA) != 0) {
+            final int entries = (int) readVarLong();
+            for (int i = 0; i < entries; i++) {
+                contextData.put(readName(), readString());
+            }
+        }
+        return new TransactionRecord.Event(timeMillis, level, marker, loggerName, threadName, message, thrown,
+                contextData);
+    }
+
+    private String readLevel() throws IOException {
+        final int id = readByte();
+        if (id < LEVELS.length) {
+            return LEVELS[id].name();
+        }
+        if (id != OTHER) {
+            throw new IOException("Unknown level " + id);
+        }
+        final String name = readString();
+        readVarLong();
+        return name;
+    }
+
+    private String readMarker() throws IOException {
+        final int id = readByte();
+        if (id == 0) {
+            return null;
+        }
+        final Markers marker = Markers.forCode(id);
+        if (marker != null) {
+            return marker.getName();
+        }
+        if (id != OTHER) {
+            throw new IOException("Unknown marker " + id);
+        }
+        return readString();
+    }
+
+    private String readName() throws IOException {
+        final int id = (int) readVarLong();
+        if (id == 0) {
+            final String name = readString();
+            dictionary.add(name);
+            return name;
+        }
+        if (id > dictionary.size()) {
+            throw new IOException("Unknown name reference " + id);
+        }
+        return dictionary.get(id - 1);
+    }
+
+    private String readString() throws IOException {
+        final int length = (int) readVarLong();
+        if (length < 0 || position + length > size) {
+            throw new IOException("Corrupted record");
+        }
+        final String value = new String(body, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted record");
+    }
+
+    private int readByte() throws IOException {
+        if (position >= size) {
+            throw new IOException("Corrupted record");
+        }
+        return body[position++] & 0xFF;
+    }
+
+    private int read(final byte[] buffer, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int count = in.read(buffer, read, length - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+}
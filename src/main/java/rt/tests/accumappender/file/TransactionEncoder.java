@@ -0,0 +1,212 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.ThrowableProxy;
+import rt.tests.accumappender.Markers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes transactions into the binary transaction log format, read back by {@link TransactionDecoder}.
+ * <p>
+ * The file starts with the {@code RTTX} magic and a version byte. Every transaction is then a record of its length as
+ * a varint followed by:
+ * </p>
+ * <ul>
+ *     <li>the number of events and the time of the first one in milliseconds, as varints,</li>
+ *     <li>for every event: its time relative to the first one as a zigzag varint, its level and marker as a byte,
+ *     its logger and thread names as references into the dictionary of the record, its message, and a flags byte
+ *     telling whether a stack trace and context data follow.</li>
+ * </ul>
+ * A name reference is {@code 0} followed by the name the first time it appears in the record, and {@code n} for the
+ * {@code n}th name of the record afterwards, so every record can be decoded on its own. Strings are UTF-8, preceded by
+ * their length in bytes. Levels and markers outside {@link Level} and {@link Markers} are written as {@code 255}
+ * followed by their name.
+ * <p>
+ * An encoder reuses its buffer and dictionary, it must not be used by several threads at once.
+ * </p>
+ */
+public final class TransactionEncoder {
+
+    static final byte[] MAGIC = {'R', 'T', 'T', 'X'};
+    static final int VERSION = 1;
+
+    static final Level[] LEVELS = {Level.OFF, Level.FATAL, Level.ERROR, Level.WARN, Level.INFO, Level.DEBUG,
+            Level.TRACE, Level.ALL};
+    static final int OTHER = 255;
+
+    static final int FLAG_THROWN = 1;
+    static final int FLAG_CONTEXT_DATA = 2;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private byte[] body = new byte[4096];
+    private int size;
+    private final byte[] length = new byte[5];
+
+    /**
+     * Writes the header of a new transaction log.
+     */
+    public static void writeHeader(final OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    /**
+     * Writes the events as one record.
+     *
+     * @param events The events of the transaction, in the order they were logged.
+     */
+    public void encode(final List<LogEvent> events, final OutputStream out) throws IOException {
+        encodeBody(events);
+        out.write(length, 0, putVarInt(length, size));
+        out.write(body, 0, size);
+    }
+
+    /**
+     * Writes a positive int as a varint, such as the length of a record.
+     *
+     * @param target At least 5 bytes.
+     * @return The number of bytes written.
+     */
+    static int putVarInt(final byte[] target, int value) {
+        int position = 0;
+        while ((value & ~0x7F) != 0) {
+            target[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Encodes the body of a record, without its length.
+     *
+     * @return The body, valid until the next call.
+     */
+    ByteBuffer encodeBody(final List<LogEvent> events) {
+        size = 0;
+        dictionary.clear();
+        final long first = events.isEmpty() ? 0 : events.get(0).getTimeMillis();
+        writeVarLong(events.size());
+        writeVarLong(first);
+        for (LogEvent event : events) {
+            writeEvent(event, first);
+        }
+        return ByteBuffer.wrap(body, 0, size);
+    }
+
+    private void writeEvent(final LogEvent event, final long first) {
+        final long delta = event.getTimeMillis() - first;
+        writeVarLong((delta << 1) ^ (delta >> 63));
+        writeLevel(event.getLevel());
+        writeMarker(event.getMarker());
+        writeName(event.getLoggerName());
+        writeName(event.getThreadName());
+        writeString(event.getMessage() == null ? "" : event.getMessage().getFormattedMessage());
+
+        final String thrown = stackTrace(event);
+        final boolean withContextData = event.getContextData() != null && !event.getContextData().isEmpty();
+        writeByte((thrown != null ? FLAG_THROWN : 0) | (withContextData ? FLAG_CONTEXT_DATA : 0));
+        if (thrown != null) {
+            writeString(thrown);
+        }
+        if (withContextData) {
+            writeVarLong(event.getContextData().size());
+            event.getContextData().forEach((key, value) -> {
+                writeName(key);
+                writeString(String.valueOf(value));
+            });
+        }
+    }
+
+    private void writeLevel(final Level level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] == level) {
+                writeByte(i);
+                return;
+            }
+        }
+        writeByte(OTHER);
+        writeString(level.name());
+        writeVarLong(level.intLevel());
+    }
+
+    private void writeMarker(final Marker marker) {
+        final int id = markerId(marker);
+        writeByte(id);
+        if (id == OTHER) {
+            writeString(marker.getName());
+        }
+    }
+
+    /**
+     * @return {@code 0} for no marker, the code of one of {@link Markers}, {@link #OTHER} otherwise.
+     */
+    static int markerId(final Marker marker) {
+        if (marker == null) {
+            return 0;
+        }
+        return marker instanceof Markers ? ((Markers) marker).code() : OTHER;
+    }
+
+    private void writeName(final String name) {
+        final String value = name == null ? "" : name;
+        final Integer id = dictionary.get(value);
+        if (id != null) {
+            writeVarLong(id);
+        } else {
+            writeVarLong(0);
+            writeString(value);
+            dictionary.put(value, dictionary.size() + 1);
+        }
+    }
+
+    private static String stackTrace(final LogEvent event) {
+        if (event.getThrown() != null) {
+            final StringWriter writer = new StringWriter();
+            event.getThrown().printStackTrace(new PrintWriter(writer));
+            return writer.toString();
+        }
+        final ThrowableProxy proxy = event.getThrownProxy();
+        return proxy != null ? proxy.getExtendedStackTraceAsString() : null;
+    }
+
+    private void writeString(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, body, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            body[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        body[size++] = (byte) value;
+    }
+
+    private void writeByte(final int value) {
+        ensureCapacity(1);
+        body[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (size + extra > body.length) {
+            body = Arrays.copyOf(body, Math.max(body.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import rt.tests.accumappender.TransactionAppender;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the transactions flushed by an {@link rt.tests.accumappender.AccumulatingAppender} in the compact binary
+ * format of {@link TransactionEncoder}, one record per transaction:
+ * <pre>
+ * &lt;TransactionLog name="TransactionLog" fileName="logs/transactions.bin" immediateFlush="false"/&gt;
+ * </pre>
+ * The events passed through one by one are written as transactions of a single event. The file is read back with
+ * {@link TransactionLogTool}. The appenders of the same file share it through a {@link TransactionLogManager}.
+ */
+@Plugin(name = "TransactionLog", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class TransactionLogAppender extends AbstractAppender implements TransactionAppender {
+
+    private final TransactionLogManager manager;
+    private final boolean immediateFlush;
+
+    @PluginBuilderFactory
+    public static TransactionLogAppender.Builder newBuilder() {
+        return new TransactionLogAppender.Builder();
+    }
+
+    private TransactionLogAppender(final String name, final Filter filter, final boolean ignoreExceptions,
+                                   final TransactionLogManager manager, final boolean immediateFlush) {
+        super(name, filter, null, ignoreExceptions, null);
+        this.manager = manager;
+        this.immediateFlush = immediateFlush;
+    }
+
+    @Override
+    public boolean stop(final long timeout, final TimeUnit timeUnit) {
+        manager.stop(timeout, timeUnit);
+        return super.stop(timeout, timeUnit);
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        write(Collections.singletonList(event));
+    }
+
+    @Override
+    public void appendTransaction(final LogEvent flushEvent, final List<LogEvent> events) {
+        write(events);
+    }
+
+    private void write(final List<LogEvent> events) {
+        try {
+            manager.write(events, immediateFlush);
+        } catch (IOException e) {
+            throw new AppenderLoggingException("Could not write to " + manager.getFileName(), e);
+        }
+    }
+
+    public String getFileName() {
+        return manager.getFileName();
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<TransactionLogAppender> {
+
+        @PluginBuilderAttribute
+        private String fileName;
+
+        @PluginBuilderAttribute
+        private int bufferSize = 64 * 1024;
+
+        @PluginBuilderAttribute
+        private boolean immediateFlush = true;
+
+        public Builder setFileName(final String fileName) {
+            this.fileName = fileName;
+            return this;
+        }
+
+        public Builder setBufferSize(final int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @param immediateFlush {@code false} to leave the records in the buffer until it is full.
+         */
+        public Builder setImmediateFlush(final boolean immediateFlush) {
+            this.immediateFlush = immediateFlush;
+            return this;
+        }
+
+        @Override
+        public TransactionLogAppender build() {
+            if (fileName == null) {
+                LOGGER.error("No file name provided for TransactionLogAppender {}", getName());
+                return null;
+            }
+            final TransactionLogManager manager =
+                    TransactionLogManager.getTransactionLogManager(fileName, bufferSize);
+            if (manager == null) {
+                LOGGER.error("Could not open {} for TransactionLogAppender {}", fileName, getName());
+                return null;
+            }
+            return new TransactionLogAppender(getName(), getFilter(), isIgnoreExceptions(), manager, immediateFlush);
+        }
+    }
+}
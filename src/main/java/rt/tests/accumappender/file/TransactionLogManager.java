@@ -0,0 +1,101 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractManager;
+import org.apache.logging.log4j.core.appender.ManagerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the records of a transaction log, shared by the {@link TransactionLogAppender}s of the file so that the
+ * appenders of the old and new configurations do not tear each other's records on reconfiguration. The header is
+ * written when the file is empty as the first appender opens it.
+ */
+final class TransactionLogManager extends AbstractManager {
+
+    private static final ManagerFactory<TransactionLogManager, Integer> FACTORY = new TransactionLogManagerFactory();
+
+    private final OutputStream out;
+    private final TransactionEncoder encoder = new TransactionEncoder();
+
+    private TransactionLogManager(final String fileName, final OutputStream out) {
+        super(null, fileName);
+        this.out = out;
+    }
+
+    /**
+     * @param fileName   The file, appended to if it exists.
+     * @param bufferSize The size of the write buffer, ignored if the file is already used by another appender.
+     * @return The manager of the file, or {@code null} if it could not be opened.
+     */
+    static TransactionLogManager getTransactionLogManager(final String fileName, final int bufferSize) {
+        try {
+            return narrow(TransactionLogManager.class, getManager(fileName, FACTORY, bufferSize));
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    String getFileName() {
+        return getName();
+    }
+
+    /**
+     * Writes the events as one record.
+     *
+     * @param flush {@code true} to write the buffered records to the file.
+     */
+    synchronized void write(final List<LogEvent> events, final boolean flush) throws IOException {
+        encoder.encode(events, out);
+        if (flush) {
+            out.flush();
+        }
+    }
+
+    @Override
+    protected synchronized boolean releaseSub(final long timeout, final TimeUnit timeUnit) {
+        try {
+            out.close();
+            return true;
+        } catch (IOException e) {
+            logError("Could not close " + getName(), e);
+            return false;
+        }
+    }
+
+    private static final class TransactionLogManagerFactory implements ManagerFactory<TransactionLogManager, Integer> {
+
+        @Override
+        public TransactionLogManager createManager(final String fileName, final Integer bufferSize) {
+            final File file = new File(fileName);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            OutputStream out = null;
+            try {
+                final boolean empty = file.length() == 0;
+                out = new BufferedOutputStream(new FileOutputStream(file, true), bufferSize);
+                if (empty) {
+                    TransactionEncoder.writeHeader(out);
+                }
+                return new TransactionLogManager(fileName, out);
+            } catch (IOException e) {
+                LOGGER.error("Could not open {}", fileName, e);
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                return null;
+            }
+        }
+    }
+}
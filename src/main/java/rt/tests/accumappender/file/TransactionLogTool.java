@@ -0,0 +1,81 @@
+package rt.tests.accumappender.file;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Prints binary transaction logs as text, one transaction after another:
+ * <pre>
+ * java -cp accum-appender.jar rt.tests.accumappender.file.TransactionLogTool logs/transactions.bin
+ * </pre>
+ */
+public final class TransactionLogTool {
+
+    private TransactionLogTool() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TransactionLogTool <file>...");
+            System.exit(1);
+        }
+        for (String fileName : args) {
+            try (TransactionDecoder decoder = new TransactionDecoder(new FileInputStream(fileName))) {
+                print(decoder, System.out);
+            }
+        }
+    }
+
+    /**
+     * @return The number of transactions printed.
+     */
+    public static int print(final TransactionDecoder decoder, final PrintStream out) throws IOException {
+        int count = 0;
+        for (TransactionRecord record = decoder.next(); record != null; record = decoder.next()) {
+            count++;
+            final TransactionRecord.Event flush = record.getFlushEvent();
+            print("Transaction " + count + " at offset " + record.getOffset() + ": "
+                    + record.getEvents().size() + " event(s), " + flush.getLevel()
+                    + (flush.getMarker() != null ? " " + flush.getMarker() : ""), record, out);
+        }
+        return count;
+    }
+
+    /**
+     * Prints the events of the record after a title line.
+     */
+    static void print(final String title, final TransactionRecord record, final PrintStream out) {
+        out.println("=== " + title);
+        for (TransactionRecord.Event event : record.getEvents()) {
+            print(event, out);
+        }
+    }
+
+    private static void print(final TransactionRecord.Event event, final PrintStream out) {
+        final StringBuilder line = new StringBuilder()
+                .append(Instant.ofEpochMilli(event.getTimeMillis())).append(' ')
+                .append(event.getLevel()).append(' ');
+        if (event.getMarker() != null) {
+            line.append(event.getMarker()).append(' ');
+        }
+        line.append('[').append(event.getThreadName()).append("] ")
+                .append(event.getLoggerName()).append(" - ")
+                .append(event.getMessage());
+        if (!event.getContextData().isEmpty()) {
+            line.append(' ').append('{');
+            String separator = "";
+            for (Map.Entry<String, String> entry : event.getContextData().entrySet()) {
+                line.append(separator).append(entry.getKey()).append('=').append(entry.getValue());
+                separator = ", ";
+            }
+            line.append('}');
+        }
+        out.println(line);
+        if (event.getThrown() != null) {
+            out.print(event.getThrown());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package rt.tests.accumappender.file;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A transaction read by a {@link TransactionDecoder}.
+ */
+public final class TransactionRecord {
+
+    private final long offset;
+    private final List<Event> events;
+
+    TransactionRecord(final long offset, final List<Event> events) {
+        this.offset = offset;
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * @return The position of the record in the file.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return The event which flushed the transaction, the last one.
+     */
+    public Event getFlushEvent() {
+        return events.get(events.size() - 1);
+    }
+
+    /**
+     * An event of a transaction, with its message formatted and its stack trace as text.
+     */
+    public static final class Event {
+
+        private final long timeMillis;
+        private final String level;
+        private final String marker;
+        private final String loggerName;
+        private final String threadName;
+        private final String message;
+        private final String thrown;
+        private final Map<String, String> contextData;
+
+        Event(final long timeMillis, final String level, final String marker, final String loggerName,
+              final String threadName, final String message, final String thrown,
+              final Map<String, String> contextData) {
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.marker = marker;
+            this.loggerName = loggerName;
+            this.threadName = threadName;
+            this.message = message;
+            this.thrown = thrown;
+            this.contextData = Collections.unmodifiableMap(contextData);
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getLevel() {
+            return level;
+        }
+
+        /**
+         * @return The name of the marker, {@code null} for none.
+         */
+        public String getMarker() {
+            return marker;
+        }
+
+        public String getLoggerName() {
+            return loggerName;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return The stack trace, {@code null} for none.
+         */
+        public String getThrown() {
+            return thrown;
+        }
+
+        public Map<String, String> getContextData() {
+            return contextData;
+        }
+    }
+}
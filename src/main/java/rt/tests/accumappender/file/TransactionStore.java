@@ -0,0 +1,350 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import rt.tests.accumappender.Markers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores transactions as records of append-only segment files, in the format of {@link TransactionEncoder}, with a
+ * sidecar index of the request id, time and marker of every transaction:
+ * <pre>
+ * logs/fail/segment-000001.rttx
+ * logs/fail/segment-000002.rttx
+ * logs/fail/transactions.idx
+ * </pre>
+ * The index is loaded in memory when the store is opened, see {@link StoreIndex}, so finding the transactions of a
+ * request id takes a binary search and a read at the offset of each. The segment files are read back by
+ * {@link TransactionLogTool} as well.
+ * <p>
+ * A record is written before its index entry, so the index never points past the data after a crash. A record
+ * partly written when the process died is cut off the last segment when the store is opened again, the next records
+ * following the last complete one.
+ * </p>
+ * <p>
+ * A store has its directory to itself, the offsets of the records and index entries being kept in memory: opening a
+ * directory which is already open in this process, or locked by another one, fails. The appenders writing to the same
+ * directory share its store, see {@link TransactionStoreManager}.
+ * </p>
+ */
+public final class TransactionStore implements Closeable {
+
+    private static final String INDEX = "transactions.idx";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".rttx";
+    private static final int HEADER_LENGTH = TransactionEncoder.MAGIC.length + 1;
+    private static final Set<Path> OPEN = ConcurrentHashMap.newKeySet();
+
+    private final Path directory;
+    private final long maxFileSize;
+    private final String requestIdKey;
+    private final StoreIndex index = new StoreIndex();
+    private final TransactionEncoder encoder = new TransactionEncoder();
+    private final TransactionDecoder decoder = new TransactionDecoder();
+    private final Map<Integer, FileChannel> readers = new HashMap<>();
+    private final byte[] length = new byte[5];
+    private final ByteBuffer entry = ByteBuffer.allocate(StoreIndex.ENTRY_SIZE);
+
+    private final FileChannel indexChannel;
+    private FileChannel segment;
+    private int segmentNumber;
+
+    /**
+     * Opens the store, creating the directory if needed.
+     *
+     * @param maxFileSize  The size beyond which the next segment file is started.
+     * @param requestIdKey The context data key of the request id.
+     * @throws IOException If the directory is already open by another store.
+     */
+    public TransactionStore(final String directory, final long maxFileSize, final String requestIdKey)
+            throws IOException {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.maxFileSize = maxFileSize;
+        this.requestIdKey = requestIdKey;
+        if (!OPEN.add(this.directory)) {
+            throw new IOException("The transaction store " + directory + " is already open");
+        }
+        try {
+            Files.createDirectories(this.directory);
+            indexChannel = FileChannel.open(this.directory.resolve(INDEX), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            OPEN.remove(this.directory);
+            throw e;
+        }
+        try {
+            load();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void load() throws IOException {
+        // Released when the channel is closed
+        final FileLock lock = indexChannel.tryLock();
+        if (lock == null) {
+            throw new IOException("The transaction store " + directory + " is locked by another process");
+        }
+        final long entries = indexChannel.size() / StoreIndex.ENTRY_SIZE;
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * StoreIndex.ENTRY_SIZE);
+        long position = 0;
+        for (long remaining = entries; remaining > 0; ) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining * StoreIndex.ENTRY_SIZE));
+            while (buffer.hasRemaining()) {
+                indexChannel.read(buffer, position + buffer.position());
+            }
+            buffer.flip();
+            position += buffer.limit();
+            while (buffer.hasRemaining()) {
+                index.read(buffer);
+                remaining--;
+            }
+        }
+        // A partial entry written when the process died is dropped
+        indexChannel.truncate(position);
+        indexChannel.position(position);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                final String name = file.getFileName().toString();
+                try {
+                    segmentNumber = Math.max(segmentNumber, Integer.parseInt(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        openSegment(Math.max(segmentNumber, 1));
+        dropTornRecord();
+    }
+
+    /**
+     * Truncates the last segment after its last complete record, walking the records from the last indexed one.
+     */
+    private void dropTornRecord() throws IOException {
+        final int last = index.size() - 1;
+        long position = last >= 0 && index.file(last) == segmentNumber ? index.offset(last) : HEADER_LENGTH;
+        final long size = segment.size();
+        final ByteBuffer prefix = ByteBuffer.wrap(length);
+        while (position < size) {
+            prefix.clear();
+            while (prefix.hasRemaining() && segment.read(prefix, position + prefix.position()) > 0) {
+                // Reads the length, shorter at the end of the file
+            }
+            int recordLength = 0;
+            int prefixLength = 0;
+            boolean complete = false;
+            for (int shift = 0; prefixLength < prefix.position() && !complete; shift += 7) {
+                final int b = length[prefixLength++];
+                recordLength |= (b & 0x7F) << shift;
+                complete = (b & 0x80) == 0;
+            }
+            if (!complete || position + prefixLength + recordLength > size) {
+                break;
+            }
+            position += prefixLength + recordLength;
+        }
+        if (position < size) {
+            segment.truncate(position);
+        }
+        segment.position(position);
+    }
+
+    private void openSegment(final int number) throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+        segmentNumber = number;
+        segment = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (segment.size() < HEADER_LENGTH) {
+            // Empty, or a header cut short by a crash
+            segment.truncate(0);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                    .put(TransactionEncoder.MAGIC).put((byte) TransactionEncoder.VERSION);
+            header.flip();
+            while (header.hasRemaining()) {
+                segment.write(header);
+            }
+        }
+        segment.position(segment.size());
+    }
+
+    private Path segmentPath(final int number) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Stores a transaction.
+     *
+     * @param events The events of the transaction, the flushing one last.
+     * @return The number of the transaction in the index.
+     */
+    public synchronized int append(final List<LogEvent> events) throws IOException {
+        final LogEvent flushEvent = events.get(events.size() - 1);
+        final ByteBuffer body = encoder.encodeBody(events);
+        final ByteBuffer prefix = ByteBuffer.wrap(length, 0, TransactionEncoder.putVarInt(length, body.remaining()));
+        if (segment.size() + prefix.remaining() + body.remaining() > maxFileSize
+                && segment.size() > HEADER_LENGTH) {
+            openSegment(segmentNumber + 1);
+        }
+        final long offset = segment.size();
+        final ByteBuffer[] record = {prefix, body};
+        while (body.hasRemaining()) {
+            segment.write(record);
+        }
+
+        index.add(flushEvent.getTimeMillis(), offset, segmentNumber,
+                StoreIndex.hash(requestId(events)), TransactionEncoder.markerId(flushEvent.getMarker()));
+        entry.clear();
+        index.write(index.size() - 1, entry);
+        entry.flip();
+        while (entry.hasRemaining()) {
+            indexChannel.write(entry);
+        }
+        return index.size() - 1;
+    }
+
+    /**
+     * @return The request id of the transaction, the last value of the key in the context data of its events.
+     */
+    private String requestId(final List<LogEvent> events) {
+        for (int i = events.size() - 1; i >= 0; i--) {
+            final Object value = events.get(i).getContextData().getValue(requestIdKey);
+            if (value != null) {
+                return value.toString();
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Reads the transaction of the given number in the index.
+     */
+    public synchronized TransactionRecord read(final int number) throws IOException {
+        final FileChannel channel = reader(index.file(number));
+        final long offset = index.offset(number);
+        final ByteBuffer prefix = ByteBuffer.wrap(length);
+        channel.read(prefix, offset);
+        int recordLength = 0;
+        int prefixLength = 0;
+        for (int shift = 0; prefixLength < prefix.position(); shift += 7) {
+            final int b = length[prefixLength++];
+            recordLength |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        final ByteBuffer body = ByteBuffer.allocate(recordLength);
+        while (body.hasRemaining()) {
+            if (channel.read(body, offset + prefixLength + body.position()) < 0) {
+                throw new IOException("Truncated record at " + offset + " of " + segmentPath(index.file(number)));
+            }
+        }
+        body.flip();
+        return decoder.decode(body, offset);
+    }
+
+    private FileChannel reader(final int file) throws IOException {
+        FileChannel channel = readers.get(file);
+        if (channel == null) {
+            channel = FileChannel.open(segmentPath(file), StandardOpenOption.READ);
+            readers.put(file, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * @return The transactions of the request id, in the order they were stored.
+     */
+    public synchronized List<TransactionRecord> findByRequestId(final String requestId) throws IOException {
+        final List<TransactionRecord> found = new ArrayList<>();
+        for (int number : index.findByRequestHash(StoreIndex.hash(requestId))) {
+            final TransactionRecord record = read(number);
+            if (hasRequestId(record, requestId)) {
+                found.add(record);
+            }
+        }
+        return found;
+    }
+
+    private boolean hasRequestId(final TransactionRecord record, final String requestId) {
+        final List<TransactionRecord.Event> events = record.getEvents();
+        for (int i = events.size() - 1; i >= 0; i--) {
+            final String value = events.get(i).getContextData().get(requestIdKey);
+            if (value != null) {
+                return value.equals(requestId);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param marker The marker the flushing event must be an instance of, {@code null} for any.
+     * @return The transactions flushed from {@code fromMillis} included to {@code toMillis} excluded.
+     */
+    public synchronized List<TransactionRecord> find(final long fromMillis, final long toMillis,
+                                                     final Markers marker) throws IOException {
+        final List<TransactionRecord> found = new ArrayList<>();
+        for (int number = 0; number < index.size(); number++) {
+            final long timestamp = index.timestamp(number);
+            if (timestamp >= fromMillis && timestamp < toMillis && matches(index.marker(number), marker)) {
+                found.add(read(number));
+            }
+        }
+        return found;
+    }
+
+    private static boolean matches(final int markerId, final Marker marker) {
+        if (marker == null) {
+            return true;
+        }
+        final Markers stored = Markers.forCode(markerId);
+        return stored != null && stored.isInstanceOf(marker);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!indexChannel.isOpen()) {
+            return;
+        }
+        for (FileChannel reader : readers.values()) {
+            reader.close();
+        }
+        readers.clear();
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+        } finally {
+            try {
+                indexChannel.close();
+            } finally {
+                OPEN.remove(directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import rt.tests.accumappender.Markers;
+import rt.tests.accumappender.TransactionAppender;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the transactions flushed by an {@link rt.tests.accumappender.AccumulatingAppender} with one of the markers in
+ * a {@link TransactionStore}, to find them by request id later on:
+ * <pre>
+ * &lt;TransactionStore name="FailStore" directory="logs/fail" markers="FAIL" requestIdKey="requestId"/&gt;
+ * ...
+ * List&lt;TransactionRecord&gt; failures = ((TransactionStoreAppender) config.getAppender("FailStore"))
+ *         .getStore().findByRequestId("8f3a2c");
+ * </pre>
+ * An event passed through one by one is stored as a transaction of its own if it has one of the markers. The appenders
+ * of the same directory share its store, with the request id key and file size of the first one.
+ */
+@Plugin(name = "TransactionStore", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE,
+        printObject = true)
+public class TransactionStoreAppender extends AbstractAppender implements TransactionAppender {
+
+    private final TransactionStoreManager manager;
+    private final TransactionStore store;
+    private final long markers;
+
+    @PluginBuilderFactory
+    public static TransactionStoreAppender.Builder newBuilder() {
+        return new TransactionStoreAppender.Builder();
+    }
+
+    private TransactionStoreAppender(final String name, final Filter filter, final boolean ignoreExceptions,
+                                     final TransactionStoreManager manager, final long markers) {
+        super(name, filter, null, ignoreExceptions, null);
+        this.manager = manager;
+        this.store = manager.getStore();
+        this.markers = markers;
+    }
+
+    @Override
+    public boolean stop(final long timeout, final TimeUnit timeUnit) {
+        manager.stop(timeout, timeUnit);
+        return super.stop(timeout, timeUnit);
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        appendTransaction(event, Collections.singletonList(event));
+    }
+
+    @Override
+    public void appendTransaction(final LogEvent flushEvent, final List<LogEvent> events) {
+        if (markers != 0 && !Markers.isInstanceOfAny(flushEvent.getMarker(), markers)) {
+            return;
+        }
+        try {
+            store.append(events);
+        } catch (IOException e) {
+            throw new AppenderLoggingException("Could not store a transaction of " + getName(), e);
+        }
+    }
+
+    public TransactionStore getStore() {
+        return store;
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<TransactionStoreAppender> {
+
+        @PluginBuilderAttribute
+        private String directory;
+
+        @PluginBuilderAttribute
+        private String markers = "FAIL";
+
+        @PluginBuilderAttribute
+        private String requestIdKey = "requestId";
+
+        @PluginBuilderAttribute
+        private String maxFileSize = "256MB";
+
+        public Builder setDirectory(final String directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * @param markers The comma-separated {@link Markers} of the transactions to store, empty for all.
+         */
+        public Builder setMarkers(final String markers) {
+            this.markers = markers;
+            return this;
+        }
+
+        /**
+         * @param requestIdKey The context data key of the request id.
+         */
+        public Builder setRequestIdKey(final String requestIdKey) {
+            this.requestIdKey = requestIdKey;
+            return this;
+        }
+
+        /**
+         * @param maxFileSize The size beyond which the next segment file is started, such as {@code 256MB}.
+         */
+        public Builder setMaxFileSize(final String maxFileSize) {
+            this.maxFileSize = maxFileSize;
+            return this;
+        }
+
+        @Override
+        public TransactionStoreAppender build() {
+            if (directory == null) {
+                LOGGER.error("No directory provided for TransactionStoreAppender {}", getName());
+                return null;
+            }
+            long mask = 0;
+            if (markers != null) {
+                for (String marker : markers.split(",")) {
+                    if (marker.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        mask |= Markers.valueOf(marker.trim().toUpperCase(Locale.ROOT)).bit();
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.error("Unknown marker {} for TransactionStoreAppender {}", marker, getName());
+                        return null;
+                    }
+                }
+            }
+            final TransactionStoreManager manager = TransactionStoreManager.getTransactionStoreManager(directory,
+                    FileSize.parse(maxFileSize, 256 * 1024 * 1024), requestIdKey);
+            if (manager == null) {
+                LOGGER.error("Could not open {} for TransactionStoreAppender {}", directory, getName());
+                return null;
+            }
+            return new TransactionStoreAppender(getName(), getFilter(), isIgnoreExceptions(), manager, mask);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.core.appender.AbstractManager;
+import org.apache.logging.log4j.core.appender.ManagerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the {@link TransactionStore} of a directory between the appenders writing to it, so on reconfiguration the
+ * appenders of the old and new configurations append to the same index and segments. The store is closed when the
+ * last appender releases it.
+ */
+final class TransactionStoreManager extends AbstractManager {
+
+    private static final ManagerFactory<TransactionStoreManager, FactoryData> FACTORY =
+            new TransactionStoreManagerFactory();
+
+    private final TransactionStore store;
+
+    private TransactionStoreManager(final String directory, final TransactionStore store) {
+        super(null, directory);
+        this.store = store;
+    }
+
+    /**
+     * @param maxFileSize  The size beyond which the next segment file is started, ignored if the store is already
+     *                     open.
+     * @param requestIdKey The context data key of the request id, ignored if the store is already open.
+     * @return The manager of the store, or {@code null} if it could not be opened.
+     */
+    static TransactionStoreManager getTransactionStoreManager(final String directory, final long maxFileSize,
+                                                              final String requestIdKey) {
+        try {
+            return narrow(TransactionStoreManager.class,
+                    getManager(directory, FACTORY, new FactoryData(maxFileSize, requestIdKey)));
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    TransactionStore getStore() {
+        return store;
+    }
+
+    @Override
+    protected boolean releaseSub(final long timeout, final TimeUnit timeUnit) {
+        try {
+            store.close();
+            return true;
+        } catch (IOException e) {
+            logError("Could not close the transaction store " + getName(), e);
+            return false;
+        }
+    }
+
+    private static final class FactoryData {
+
+        private final long maxFileSize;
+        private final String requestIdKey;
+
+        FactoryData(final long maxFileSize, final String requestIdKey) {
+            this.maxFileSize = maxFileSize;
+            this.requestIdKey = requestIdKey;
+        }
+    }
+
+    private static final class TransactionStoreManagerFactory
+            implements ManagerFactory<TransactionStoreManager, FactoryData> {
+
+        @Override
+        public TransactionStoreManager createManager(final String directory, final FactoryData data) {
+            try {
+                return new TransactionStoreManager(directory,
+                        new TransactionStore(directory, data.maxFileSize, data.requestIdKey));
+            } catch (IOException e) {
+                LOGGER.error("Could not open the transaction store {}", directory, e);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package rt.tests.accumappender.layout;
+
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
+import org.apache.logging.log4j.core.layout.AbstractLayout;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import org.apache.logging.log4j.util.TriConsumer;
+import rt.tests.accumappender.TransactionLayout;
+import rt.tests.accumappender.memory.GrowableByteBufferDestination;
+import rt.tests.logger.FieldsMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes a transaction as one line of JSON, its metadata followed by the array of its events:
+ * <pre>
+ * {"timeMillis":1560000000123,"startMillis":1560000000100,"level":"ERROR","marker":"FAIL","thread":"main",
+ *  "logger":"rt.tests.Service","eventCount":2,"events":[
+ *  {"timeMillis":1560000000100,"level":"DEBUG","logger":"rt.tests.Service","message":"Started"},
+ *  {"timeMillis":1560000000123,"level":"ERROR","marker":"FAIL","logger":"rt.tests.Service","message":"Failed",
+ *   "contextData":{"requestId":"8f3a2c"},"thrown":{"class":"java.io.IOException","message":"Reset","stack":[...]}}]}
+ * </pre>
+ * The JSON is written straight into the {@link ByteBufferDestination} by a {@link JsonWriter}: the messages are
+ * formatted into a reused {@code StringBuilder} when they can, and neither the joined message of the transaction nor
+ * a {@code String} per event is made. A {@link rt.tests.accumappender.TransactionAppender} such as
+ * {@code GroupCommitFile} gives the layout the events of the transaction, other appenders a single event which is
+ * encoded as a transaction of its own.
+ */
+@Plugin(name = "JsonTransactionLayout", category = Node.CATEGORY, elementType = Layout.ELEMENT_TYPE,
+        printObject = true)
+public final class JsonTransactionLayout extends AbstractLayout<byte[]> implements TransactionLayout {
+
+    private static final int MAX_CAUSES = 8;
+    private static final ThreadLocal<JsonWriter> WRITER = ThreadLocal.withInitial(JsonWriter::new);
+    private static final ThreadLocal<StringBuilder> MESSAGE = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final ThreadLocal<GrowableByteBufferDestination> BYTES =
+            ThreadLocal.withInitial(GrowableByteBufferDestination::new);
+
+    private static final TriConsumer<String, Object, JsonWriter> CONTEXT_DATA_WRITER = (key, value, writer) -> {
+        writer.field(key);
+        writer.value(value);
+    };
+
+    private final boolean includeStacktrace;
+    private final boolean includeContextData;
+
+    @PluginBuilderFactory
+    public static JsonTransactionLayout.Builder newBuilder() {
+        return new JsonTransactionLayout.Builder();
+    }
+
+    private JsonTransactionLayout(final Configuration configuration, final boolean includeStacktrace,
+                                  final boolean includeContextData) {
+        super(configuration, null, null);
+        this.includeStacktrace = includeStacktrace;
+        this.includeContextData = includeContextData;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json; charset=UTF-8";
+    }
+
+    @Override
+    public byte[] toSerializable(final LogEvent event) {
+        return toByteArray(event);
+    }
+
+    @Override
+    public byte[] toByteArray(final LogEvent event) {
+        final GrowableByteBufferDestination destination = BYTES.get();
+        destination.clear();
+        encode(event, destination);
+        final ByteBuffer bytes = destination.flip();
+        final byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return array;
+    }
+
+    @Override
+    public void encode(final LogEvent event, final ByteBufferDestination destination) {
+        encodeTransaction(event, Collections.singletonList(event), destination);
+    }
+
+    @Override
+    public void encodeTransaction(final LogEvent flushEvent, final List<LogEvent> events,
+                                  final ByteBufferDestination destination) {
+        final JsonWriter writer = WRITER.get();
+        synchronized (destination) {
+            writer.start(destination);
+            try {
+                writeTransaction(writer, flushEvent, events);
+            } finally {
+                writer.end();
+            }
+        }
+    }
+
+    private void writeTransaction(final JsonWriter writer, final LogEvent flushEvent, final List<LogEvent> events) {
+        writer.beginObject();
+        writer.field("timeMillis");
+        writer.number(flushEvent.getTimeMillis());
+        writer.field("startMillis");
+        writer.number(events.isEmpty() ? flushEvent.getTimeMillis() : events.get(0).getTimeMillis());
+        writer.field("level");
+        writer.string(flushEvent.getLevel().name());
+        writeMarker(writer, flushEvent.getMarker());
+        writer.field("thread");
+        writer.string(flushEvent.getThreadName());
+        writer.field("logger");
+        writer.string(flushEvent.getLoggerName());
+        writer.field("eventCount");
+        writer.number(events.size());
+        writer.field("events");
+        writer.put('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                writer.put(',');
+            }
+            writeEvent(writer, events.get(i), flushEvent.getThreadName());
+        }
+        writer.put(']');
+        writer.endObject();
+        writer.put('\n');
+    }
+
+    private void writeEvent(final JsonWriter writer, final LogEvent event, final String transactionThread) {
+        writer.beginObject();
+        writer.field("timeMillis");
+        writer.number(event.getTimeMillis());
+        writer.field("level");
+        writer.string(event.getLevel().name());
+        writeMarker(writer, event.getMarker());
+        if (event.getThreadName() != null && !event.getThreadName().equals(transactionThread)) {
+            writer.field("thread");
+            writer.string(event.getThreadName());
+        }
+        writer.field("logger");
+        writer.string(event.getLoggerName());
+
+        Message message = event.getMessage();
+        final FieldsMessage fields = message instanceof FieldsMessage ? (FieldsMessage) message : null;
+        if (fields != null) {
+            message = fields.getMessage();
+        }
+        writer.field("message");
+        writeMessage(writer, message);
+        if (fields != null && fields.getFieldCount() > 0) {
+            writer.field("fields");
+            writer.beginObject();
+            for (int i = 0; i < fields.getFieldCount(); i++) {
+                writer.field(fields.getFieldName(i));
+                writer.value(fields.getFieldValue(i));
+            }
+            writer.endObject();
+        }
+        if (includeContextData && event.getContextData() != null && !event.getContextData().isEmpty()) {
+            writer.field("contextData");
+            writer.beginObject();
+            event.getContextData().forEach(CONTEXT_DATA_WRITER, writer);
+            writer.endObject();
+        }
+        if (includeStacktrace && event.getThrown() != null) {
+            writer.field("thrown");
+            writeThrown(writer, event.getThrown(), MAX_CAUSES);
+        }
+        writer.endObject();
+    }
+
+    private static void writeMarker(final JsonWriter writer, final Marker marker) {
+        if (marker != null) {
+            writer.field("marker");
+            writer.string(marker.getName());
+        }
+    }
+
+    private static void writeMessage(final JsonWriter writer, final Message message) {
+        if (message == null) {
+            writer.value(null);
+        } else if (message instanceof StringBuilderFormattable) {
+            final StringBuilder text = MESSAGE.get();
+            text.setLength(0);
+            ((StringBuilderFormattable) message).formatTo(text);
+            writer.string(text);
+            if (text.length() > 64 * 1024) {
+                MESSAGE.remove();
+            }
+        } else {
+            writer.string(message.getFormattedMessage());
+        }
+    }
+
+    private static void writeThrown(final JsonWriter writer, final Throwable thrown, final int causes) {
+        writer.beginObject();
+        writer.field("class");
+        writer.string(thrown.getClass().getName());
+        if (thrown.getMessage() != null) {
+            writer.field("message");
+            writer.string(thrown.getMessage());
+        }
+        writer.field("stack");
+        writer.put('[');
+        final StackTraceElement[] frames = thrown.getStackTrace();
+        for (int i = 0; i < frames.length; i++) {
+            if (i > 0) {
+                writer.put(',');
+            }
+            final StackTraceElement frame = frames[i];
+            writer.put('"');
+            writer.chars(frame.getClassName());
+            writer.put('.');
+            writer.chars(frame.getMethodName());
+            writer.put('(');
+            if (frame.isNativeMethod()) {
+                writer.chars("Native Method");
+            } else if (frame.getFileName() == null) {
+                writer.chars("Unknown Source");
+            } else {
+                writer.chars(frame.getFileName());
+                if (frame.getLineNumber() >= 0) {
+                    writer.put(':');
+                    writer.number(frame.getLineNumber());
+                }
+            }
+            writer.put(')');
+            writer.put('"');
+        }
+        writer.put(']');
+        if (thrown.getCause() != null && thrown.getCause() != thrown && causes > 0) {
+            writer.field("cause");
+            writeThrown(writer, thrown.getCause(), causes - 1);
+        }
+        writer.endObject();
+    }
+
+    public static class Builder implements org.apache.logging.log4j.core.util.Builder<JsonTransactionLayout> {
+
+        @PluginConfiguration
+        private Configuration configuration;
+
+        @PluginBuilderAttribute
+        private boolean includeStacktrace = true;
+
+        @PluginBuilderAttribute
+        private boolean includeContextData = true;
+
+        public Builder setConfiguration(final Configuration configuration) {
+            this.configuration = configuration;
+            return this;
+        }
+
+        public Builder setIncludeStacktrace(final boolean includeStacktrace) {
+            this.includeStacktrace = includeStacktrace;
+            return this;
+        }
+
+        public Builder setIncludeContextData(final boolean includeContextData) {
+            this.includeContextData = includeContextData;
+            return this;
+        }
+
+        @Override
+        public JsonTransactionLayout build() {
+            return new JsonTransactionLayout(configuration, includeStacktrace, includeContextData);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package rt.tests.accumappender.layout;
+
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes JSON tokens as UTF-8 straight into the buffer of a {@link ByteBufferDestination}, draining it when full.
+ * <p>
+ * Strings are copied a run of plain ASCII characters at a time, as many as the buffer has room for, without checking
+ * the room for every byte. Only the quote, the backslash, control characters and non-ASCII characters leave the
+ * fast path, to be escaped or encoded.
+ * </p>
+ */
+final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] MIN_LONG = "-9223372036854775808".getBytes();
+
+    private final byte[] digits = new byte[20];
+    private ByteBufferDestination destination;
+    private ByteBuffer buffer;
+    private boolean first;
+
+    void start(final ByteBufferDestination destination) {
+        this.destination = destination;
+        this.buffer = destination.getByteBuffer();
+    }
+
+    void end() {
+        destination = null;
+        buffer = null;
+    }
+
+    void put(final char c) {
+        if (!buffer.hasRemaining()) {
+            buffer = destination.drain(buffer);
+        }
+        buffer.put((byte) c);
+    }
+
+    void beginObject() {
+        put('{');
+        first = true;
+    }
+
+    /**
+     * Writes a field name with its colon, after a comma unless it is the first field of the object.
+     */
+    void field(final String name) {
+        if (!first) {
+            put(',');
+        }
+        first = false;
+        string(name);
+        put(':');
+    }
+
+    void endObject() {
+        put('}');
+        first = false;
+    }
+
+    void number(long value) {
+        if (value == Long.MIN_VALUE) {
+            for (byte b : MIN_LONG) {
+                put((char) b);
+            }
+            return;
+        }
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (position < digits.length) {
+            put((char) digits[position++]);
+        }
+    }
+
+    /**
+     * Writes a value as a JSON number, boolean, null or string.
+     */
+    void value(final Object value) {
+        if (value == null) {
+            literal("null");
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            number(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            literal(value.toString());
+        } else if (value instanceof Number && !isNonFinite((Number) value)) {
+            literal(value.toString());
+        } else if (value instanceof CharSequence) {
+            string((CharSequence) value);
+        } else {
+            string(String.valueOf(value));
+        }
+    }
+
+    private static boolean isNonFinite(final Number value) {
+        final double d = value.doubleValue();
+        return Double.isNaN(d) || Double.isInfinite(d);
+    }
+
+    private void literal(final String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            put(literal.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped string, {@code null} as is.
+     */
+    void string(final CharSequence value) {
+        if (value == null) {
+            literal("null");
+            return;
+        }
+        put('"');
+        chars(value);
+        put('"');
+    }
+
+    /**
+     * Writes the escaped characters of a string, to be put between quotes.
+     */
+    void chars(final CharSequence value) {
+        final int length = value.length();
+        int i = 0;
+        while (i < length) {
+            if (!buffer.hasRemaining()) {
+                buffer = destination.drain(buffer);
+            }
+            // Fast path: plain ASCII, as much as there is room for
+            final int end = Math.min(length, i + buffer.remaining());
+            char c = 0;
+            while (i < end) {
+                c = value.charAt(i);
+                if (c < 0x20 || c >= 0x80 || c == '"' || c == '\\') {
+                    break;
+                }
+                buffer.put((byte) c);
+                i++;
+            }
+            if (i == end) {
+                continue;
+            }
+            i = escape(value, i, c);
+        }
+    }
+
+    /**
+     * @return The index of the next character.
+     */
+    private int escape(final CharSequence value, final int index, final char c) {
+        if (c == '"' || c == '\\') {
+            put('\\');
+            put(c);
+        } else if (c < 0x20) {
+            put('\\');
+            switch (c) {
+                case '\n':
+                    put('n');
+                    break;
+                case '\r':
+                    put('r');
+                    break;
+                case '\t':
+                    put('t');
+                    break;
+                case '\b':
+                    put('b');
+                    break;
+                case '\f':
+                    put('f');
+                    break;
+                default:
+                    put('u');
+                    put('0');
+                    put('0');
+                    put((char) HEX[c >> 4]);
+                    put((char) HEX[c & 0xF]);
+            }
+        } else if (c < 0x800) {
+            put((char) (0xC0 | (c >> 6)));
+            put((char) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            final int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+            put((char) (0xF0 | (codePoint >> 18)));
+            put((char) (0x80 | ((codePoint >> 12) & 0x3F)));
+            put((char) (0x80 | ((codePoint >> 6) & 0x3F)));
+            put((char) (0x80 | (codePoint & 0x3F)));
+            return index + 2;
+        } else if (Character.isSurrogate(c)) {
+            put('?');
+        } else {
+            put((char) (0xE0 | (c >> 12)));
+            put((char) (0x80 | ((c >> 6) & 0x3F)));
+            put((char) (0x80 | (c & 0x3F)));
+        }
+        return index + 1;
+    }
+}
@@ -0,0 +1,201 @@
+package rt.tests.accumappender.memory;
+
+import rt.tests.accumappender.LongCounter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An append-only store of bytes kept in fixed-size heap chunks.
+ * <p>
+ * Writers claim a range of positions by CAS, copy their bytes into the chunks without locking and commit the range.
+ * A writer finishing before the writers of the preceding ranges does not wait for them: it leaves its range pending,
+ * and the writer which commits the preceding bytes commits it too. The size only covers the bytes up to the first
+ * range not written yet. Committed bytes are never moved nor overwritten, so readers get read-only
+ * {@link ByteBuffer} views of the chunks instead of copies. Only allocating a new chunk takes a lock.
+ * </p>
+ * <p>
+ * A bounded store drops the writes which do not fit in whole.
+ * </p>
+ */
+public final class ChunkedByteStore {
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private final long maxSize;
+
+    private final LongCounter claimed = new LongCounter();
+    private final LongCounter committed = new LongCounter();
+    private final LongCounter dropped = new LongCounter();
+    // The end of the ranges written before the preceding ones, by start
+    private final ConcurrentMap<Long, Long> pending = new ConcurrentSkipListMap<>();
+    private volatile AtomicReferenceArray<byte[]> chunks = new AtomicReferenceArray<>(16);
+
+    /**
+     * @param chunkSize The size of a chunk, rounded up to a power of 2.
+     * @param maxSize   The maximum number of bytes stored, or {@code 0} for no limit.
+     */
+    public ChunkedByteStore(final int chunkSize, final long maxSize) {
+        if (chunkSize < 1 || chunkSize > 1 << 30) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.chunkShift = 32 - Integer.numberOfLeadingZeros(chunkSize - 1);
+        this.chunkMask = (1 << chunkShift) - 1;
+        this.maxSize = Math.max(0L, maxSize);
+    }
+
+    public int getChunkSize() {
+        return chunkMask + 1;
+    }
+
+    /**
+     * @return The maximum number of bytes stored, {@code 0} if there is no limit.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of bytes committed, which is also the position of the next byte.
+     */
+    public long size() {
+        return committed.get();
+    }
+
+    /**
+     * @return The number of writes dropped because the store was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Appends the remaining bytes of the buffer. The bytes are part of the {@link #size()} once the writers which
+     * claimed the preceding bytes have committed them too.
+     *
+     * @return {@code false} if the bytes were dropped because the store is full.
+     */
+    public boolean append(final ByteBuffer data) {
+        final int length = data.remaining();
+        final long start = claim(length);
+        if (start < 0) {
+            return false;
+        }
+        try {
+            write(start, data);
+        } finally {
+            commit(start, start + length);
+        }
+        return true;
+    }
+
+    /**
+     * @return The start of the claimed range, or {@code -1} if the store is full.
+     */
+    long claim(final int length) {
+        long start;
+        do {
+            start = claimed.get();
+            if (maxSize > 0 && start + length > maxSize) {
+                dropped.incrementAndGet();
+                return -1L;
+            }
+        } while (!claimed.compareAndSet(start, start + length));
+        return start;
+    }
+
+    void commit(final long start, final long end) {
+        if (!committed.compareAndSet(start, end)) {
+            // A preceding range is not committed yet, its writer commits this one too
+            pending.put(start, end);
+        }
+        // Either the pending range is seen here, or its writer sees the size this thread committed
+        while (!pending.isEmpty()) {
+            final long position = committed.get();
+            final Long next = pending.get(position);
+            if (next == null) {
+                return;
+            }
+            if (committed.compareAndSet(position, next)) {
+                pending.remove(position);
+            }
+        }
+    }
+
+    void write(long position, final ByteBuffer data) {
+        while (data.hasRemaining()) {
+            final int offset = (int) position & chunkMask;
+            final int length = Math.min(data.remaining(), chunkMask + 1 - offset);
+            data.get(chunk(position), offset, length);
+            position += length;
+        }
+    }
+
+    /**
+     * @return Read-only views of the committed bytes from {@code from} to {@code to}, one per chunk they span.
+     */
+    public ByteBuffer[] views(final long from, final long to) {
+        if (from < 0 || from > to || to > size()) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + "-" + to + ", size " + size());
+        }
+        if (from == to) {
+            return new ByteBuffer[0];
+        }
+        final ByteBuffer[] views = new ByteBuffer[(int) (((to - 1) >>> chunkShift) - (from >>> chunkShift)) + 1];
+        long position = from;
+        for (int i = 0; i < views.length; i++) {
+            final int offset = (int) position & chunkMask;
+            final int length = (int) Math.min(to - position, chunkMask + 1 - offset);
+            views[i] = ByteBuffer.wrap(chunk(position), offset, length).slice().asReadOnlyBuffer();
+            position += length;
+        }
+        return views;
+    }
+
+    /**
+     * Copies the committed bytes from the position into the buffer, as many as it can take.
+     *
+     * @return The number of bytes copied.
+     */
+    public int read(final long position, final ByteBuffer dst) {
+        final long to = Math.min(size(), position + dst.remaining());
+        int read = 0;
+        for (ByteBuffer view : views(position, Math.max(position, to))) {
+            read += view.remaining();
+            dst.put(view);
+        }
+        return read;
+    }
+
+    private byte[] chunk(final long position) {
+        final int index = (int) (position >>> chunkShift);
+        final AtomicReferenceArray<byte[]> current = chunks;
+        if (index < current.length()) {
+            final byte[] chunk = current.get(index);
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return allocate(index);
+    }
+
+    private synchronized byte[] allocate(final int index) {
+        AtomicReferenceArray<byte[]> current = chunks;
+        if (index >= current.length()) {
+            final AtomicReferenceArray<byte[]> grown =
+                    new AtomicReferenceArray<>(Math.max(index + 1, current.length() * 2));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            chunks = current = grown;
+        }
+        byte[] chunk = current.get(index);
+        if (chunk == null) {
+            chunk = new byte[chunkMask + 1];
+            current.set(index, chunk);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,213 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import rt.tests.accumappender.Markers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps captured events in memory and indexes them by level, marker, logger name and thread name.
+ * <p>
+ * Every event gets the next integer id, and every indexed value an {@link IntPostings} list of the ids of its events,
+ * ascending. A {@link EventQuery} intersects the lists of its criteria starting with the shortest one, and checks the
+ * time range against a {@code long[]} of timestamps. An event marked with a {@link Markers} descendant is indexed under
+ * all the {@code Markers} it is an instance of, so querying {@code FAIL} also finds its children.
+ * </p>
+ * <p>
+ * Adding takes a lock. A query only takes it to copy the references and sizes of the arrays it reads.
+ * </p>
+ */
+public final class EventIndex {
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final Markers[] MARKERS = Markers.values();
+
+    private final int maxEvents;
+
+    private LogEvent[][] events = new LogEvent[16][];
+    private long[] timestamps = new long[1024];
+    private int size;
+    private long dropped;
+
+    private final Map<Level, IntPostings> levels = new HashMap<>();
+    private final Map<String, IntPostings> markers = new HashMap<>();
+    private final Map<String, IntPostings> loggers = new HashMap<>();
+    private final Map<String, IntPostings> threads = new HashMap<>();
+
+    /**
+     * @param maxEvents The maximum number of events kept, the later ones are dropped. {@code 0} for no limit.
+     */
+    public EventIndex(final int maxEvents) {
+        this.maxEvents = maxEvents <= 0 ? Integer.MAX_VALUE : maxEvents;
+    }
+
+    /**
+     * @param event An immutable event.
+     * @return {@code false} if the event was dropped because the index is full.
+     */
+    public synchronized boolean add(final LogEvent event) {
+        if (size >= maxEvents) {
+            dropped++;
+            return false;
+        }
+        final int id = size;
+        final int chunk = id >>> CHUNK_SHIFT;
+        if (chunk == events.length) {
+            events = Arrays.copyOf(events, chunk * 2);
+        }
+        if (events[chunk] == null) {
+            events[chunk] = new LogEvent[CHUNK_MASK + 1];
+        }
+        events[chunk][id & CHUNK_MASK] = event;
+        if (id == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, id * 2);
+        }
+        timestamps[id] = event.getTimeMillis();
+
+        postings(levels, event.getLevel()).add(id);
+        postings(loggers, event.getLoggerName()).add(id);
+        postings(threads, event.getThreadName()).add(id);
+        final Marker marker = event.getMarker();
+        if (marker != null) {
+            postings(markers, marker.getName()).add(id);
+            for (Markers candidate : MARKERS) {
+                if (candidate != marker && Markers.isInstanceOfAny(marker, candidate.bit())) {
+                    postings(markers, candidate.getName()).add(id);
+                }
+            }
+        }
+        size = id + 1;
+        return true;
+    }
+
+    private static <K> IntPostings postings(final Map<K, IntPostings> index, final K key) {
+        return index.computeIfAbsent(key, k -> new IntPostings());
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The maximum number of events kept, {@link Integer#MAX_VALUE} for no limit.
+     */
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    /**
+     * @return The number of events dropped because {@code maxEvents} was reached.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return A query matching all the events, to be narrowed down.
+     */
+    public EventQuery query() {
+        return new EventQuery(this);
+    }
+
+    /**
+     * The arrays read by a query, copied under the lock.
+     */
+    static final class Snapshot {
+        final LogEvent[][] events;
+        final long[] timestamps;
+        final int size;
+        final List<int[]> postings = new ArrayList<>();
+        final List<Integer> postingSizes = new ArrayList<>();
+        final List<int[]> union = new ArrayList<>();
+        final List<Integer> unionSizes = new ArrayList<>();
+        boolean withUnion;
+        boolean empty;
+
+        Snapshot(final LogEvent[][] events, final long[] timestamps, final int size) {
+            this.events = events;
+            this.timestamps = timestamps;
+            this.size = size;
+        }
+
+        void add(final IntPostings list) {
+            if (list == null || list.size() == 0) {
+                empty = true;
+            } else {
+                postings.add(list.array());
+                postingSizes.add(list.size());
+            }
+        }
+
+        /**
+         * Adds a list to the union merged by {@link #mergeUnion()}.
+         */
+        void addToUnion(final IntPostings list) {
+            withUnion = true;
+            union.add(list.array());
+            unionSizes.add(list.size());
+        }
+
+        /**
+         * Merges the lists of the union into a single one, out of the lock.
+         */
+        void mergeUnion() {
+            if (!withUnion) {
+                return;
+            }
+            int total = 0;
+            for (int size : unionSizes) {
+                total += size;
+            }
+            if (total == 0) {
+                empty = true;
+                return;
+            }
+            final int[] merged = new int[total];
+            int position = 0;
+            for (int i = 0; i < union.size(); i++) {
+                System.arraycopy(union.get(i), 0, merged, position, unionSizes.get(i));
+                position += unionSizes.get(i);
+            }
+            Arrays.sort(merged);
+            postings.add(merged);
+            postingSizes.add(total);
+        }
+
+        LogEvent event(final int id) {
+            return events[id >>> CHUNK_SHIFT][id & CHUNK_MASK];
+        }
+    }
+
+    synchronized Snapshot snapshot(final Level level, final Level minLevel, final String marker, final String logger,
+                                   final String thread) {
+        final Snapshot snapshot = new Snapshot(events, timestamps, size);
+        if (level != null) {
+            snapshot.add(levels.get(level));
+        }
+        if (minLevel != null) {
+            snapshot.withUnion = true;
+            for (Map.Entry<Level, IntPostings> entry : levels.entrySet()) {
+                if (entry.getKey().isMoreSpecificThan(minLevel)) {
+                    snapshot.addToUnion(entry.getValue());
+                }
+            }
+        }
+        if (marker != null) {
+            snapshot.add(markers.get(marker));
+        }
+        if (logger != null) {
+            snapshot.add(loggers.get(logger));
+        }
+        if (thread != null) {
+            snapshot.add(threads.get(thread));
+        }
+        return snapshot;
+    }
+}
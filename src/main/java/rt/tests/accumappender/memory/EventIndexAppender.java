@@ -0,0 +1,152 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.StringLayout;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures events into an {@link EventIndex}, to be searched by level, marker, logger, thread and time:
+ * <pre>
+ * &lt;EventIndex name="Captured" maxEvents="5000000"/&gt;
+ * ...
+ * List&lt;LogEvent&gt; failures = ((EventIndexAppender) config.getAppender("Captured")).query()
+ *         .marker(FAIL).thread("worker-1").last(1, TimeUnit.MINUTES).list();
+ * </pre>
+ * The same searches are available as the {@code find} operation of the
+ * {@code rt.tests.accumappender:type=EventIndex,name=<name>} MBean, which formats the events found with the layout.
+ */
+@Plugin(name = "EventIndex", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class EventIndexAppender extends AbstractAppender implements EventIndexAppenderMBean {
+
+    private final EventIndex index;
+    private ObjectName objectName;
+
+    @PluginBuilderFactory
+    public static EventIndexAppender.Builder newBuilder() {
+        return new EventIndexAppender.Builder();
+    }
+
+    protected EventIndexAppender(final String name, final Layout<? extends Serializable> layout, final Filter filter,
+                                 final boolean ignoreExceptions, final int maxEvents) {
+        super(name, filter, layout, ignoreExceptions, null);
+        this.index = new EventIndex(maxEvents);
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        objectName = MBeans.register(this, "EventIndex", getName());
+    }
+
+    @Override
+    public boolean stop(final long timeout, final TimeUnit timeUnit) {
+        MBeans.unregister(objectName, this);
+        objectName = null;
+        return super.stop(timeout, timeUnit);
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        index.add(event.toImmutable());
+    }
+
+    public EventIndex getIndex() {
+        return index;
+    }
+
+    public EventQuery query() {
+        return index.query();
+    }
+
+    @Override
+    public int getEventCount() {
+        return index.size();
+    }
+
+    @Override
+    public int getMaxEvents() {
+        return index.getMaxEvents();
+    }
+
+    @Override
+    public long getDroppedEventCount() {
+        return index.getDroppedCount();
+    }
+
+    @Override
+    public String[] find(final String minLevel, final String marker, final String logger, final String thread,
+                         final long lastMillis, final int limit) {
+        final EventQuery query = index.query();
+        if (!isEmpty(minLevel)) {
+            query.minLevel(Level.toLevel(minLevel));
+        }
+        if (!isEmpty(marker)) {
+            query.marker(marker);
+        }
+        if (!isEmpty(logger)) {
+            query.logger(logger);
+        }
+        if (!isEmpty(thread)) {
+            query.thread(thread);
+        }
+        if (lastMillis > 0) {
+            query.lastMillis(lastMillis);
+        }
+        final List<LogEvent> events = query.list();
+        final int from = limit > 0 ? Math.max(0, events.size() - limit) : 0;
+        final String[] found = new String[events.size() - from];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = format(events.get(from + i));
+        }
+        return found;
+    }
+
+    private String format(final LogEvent event) {
+        if (getLayout() instanceof StringLayout) {
+            return ((StringLayout) getLayout()).toSerializable(event);
+        }
+        return new String(getLayout().toByteArray(event), StandardCharsets.UTF_8);
+    }
+
+    private static boolean isEmpty(final String value) {
+        return value == null || value.isEmpty();
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<EventIndexAppender> {
+
+        @PluginBuilderAttribute
+        private int maxEvents = 100_000;
+
+        /**
+         * @param maxEvents The maximum number of events captured, 100000 by default. {@code 0} for no limit, the
+         *                  events being kept until the appender is stopped.
+         */
+        public Builder setMaxEvents(final int maxEvents) {
+            this.maxEvents = maxEvents;
+            return this;
+        }
+
+        @Override
+        public EventIndexAppender build() {
+            final Layout<? extends Serializable> layout = getLayout() != null ?
+                    getLayout() : PatternLayout.createDefaultLayout();
+            return new EventIndexAppender(getName(), layout, getFilter(), isIgnoreExceptions(), maxEvents);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package rt.tests.accumappender.memory;
+
+/**
+ * The JMX view of an {@link EventIndexAppender}, for diagnostics.
+ */
+public interface EventIndexAppenderMBean {
+
+    int getEventCount();
+
+    int getMaxEvents();
+
+    long getDroppedEventCount();
+
+    /**
+     * Finds the events matching all the given criteria, the {@code null} or empty ones being ignored.
+     *
+     * @param minLevel   The least specific level, such as {@code WARN}.
+     * @param marker     The marker name.
+     * @param logger     The logger name.
+     * @param thread     The thread name.
+     * @param lastMillis The age of the oldest events, in milliseconds, or {@code 0} for all.
+     * @param limit      The maximum number of events returned, the latest ones are kept.
+     * @return The events formatted by the layout of the appender.
+     */
+    String[] find(String minLevel, String marker, String logger, String thread, long lastMillis, int limit);
+}
@@ -0,0 +1,161 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * The criteria of a search in an {@link EventIndex}, all of which must match:
+ * <pre>
+ * index.query().marker(FAIL).thread("http-nio-8080-exec-1").lastMillis(TimeUnit.MINUTES.toMillis(1)).list();
+ * </pre>
+ */
+public final class EventQuery {
+
+    private final EventIndex index;
+
+    private Level level;
+    private Level minLevel;
+    private String marker;
+    private String logger;
+    private String thread;
+    private long fromMillis = Long.MIN_VALUE;
+    private long toMillis = Long.MAX_VALUE;
+
+    EventQuery(final EventIndex index) {
+        this.index = index;
+    }
+
+    public EventQuery level(final Level level) {
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * Matches the events of the level and the more specific ones, such as {@code WARN} and {@code ERROR} for
+     * {@code WARN}.
+     */
+    public EventQuery minLevel(final Level minLevel) {
+        this.minLevel = minLevel;
+        return this;
+    }
+
+    /**
+     * Matches the events of the marker, and of its descendants if it is one of {@link rt.tests.accumappender.Markers}.
+     */
+    public EventQuery marker(final Marker marker) {
+        return marker(marker.getName());
+    }
+
+    public EventQuery marker(final String marker) {
+        this.marker = marker;
+        return this;
+    }
+
+    public EventQuery logger(final String logger) {
+        this.logger = logger;
+        return this;
+    }
+
+    public EventQuery thread(final String thread) {
+        this.thread = thread;
+        return this;
+    }
+
+    /**
+     * Matches the events logged from {@code fromMillis} included to {@code toMillis} excluded.
+     */
+    public EventQuery between(final long fromMillis, final long toMillis) {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        return this;
+    }
+
+    /**
+     * Matches the events logged during the last milliseconds.
+     */
+    public EventQuery lastMillis(final long millis) {
+        return between(System.currentTimeMillis() - millis, Long.MAX_VALUE);
+    }
+
+    public EventQuery last(final long duration, final TimeUnit unit) {
+        return lastMillis(unit.toMillis(duration));
+    }
+
+    /**
+     * @return The matching events, in the order they were captured.
+     */
+    public List<LogEvent> list() {
+        final EventIndex.Snapshot snapshot = snapshot();
+        final List<LogEvent> events = new ArrayList<>();
+        forEach(snapshot, id -> events.add(snapshot.event(id)));
+        return events;
+    }
+
+    public int count() {
+        final int[] count = new int[1];
+        forEach(snapshot(), id -> count[0]++);
+        return count[0];
+    }
+
+    private EventIndex.Snapshot snapshot() {
+        final EventIndex.Snapshot snapshot = index.snapshot(level, minLevel, marker, logger, thread);
+        snapshot.mergeUnion();
+        return snapshot;
+    }
+
+    private void forEach(final EventIndex.Snapshot snapshot, final IntConsumer action) {
+        if (snapshot.empty) {
+            return;
+        }
+        final int lists = snapshot.postings.size();
+        if (lists == 0) {
+            for (int id = 0; id < snapshot.size; id++) {
+                if (inRange(snapshot.timestamps[id])) {
+                    action.accept(id);
+                }
+            }
+            return;
+        }
+        // The shortest list drives, the others are searched forward from where the previous id was found
+        int shortest = 0;
+        for (int i = 1; i < lists; i++) {
+            if (snapshot.postingSizes.get(i) < snapshot.postingSizes.get(shortest)) {
+                shortest = i;
+            }
+        }
+        final int[] driver = snapshot.postings.get(shortest);
+        final int driverSize = snapshot.postingSizes.get(shortest);
+        final int[] cursors = new int[lists];
+        candidates:
+        for (int i = 0; i < driverSize; i++) {
+            final int id = driver[i];
+            for (int list = 0; list < lists; list++) {
+                if (list == shortest) {
+                    continue;
+                }
+                final int[] ids = snapshot.postings.get(list);
+                final int size = snapshot.postingSizes.get(list);
+                cursors[list] = IntPostings.seek(ids, size, cursors[list], id);
+                if (cursors[list] == size) {
+                    return;
+                }
+                if (ids[cursors[list]] != id) {
+                    continue candidates;
+                }
+            }
+            if (inRange(snapshot.timestamps[id])) {
+                action.accept(id);
+            }
+        }
+    }
+
+    private boolean inRange(final long timeMillis) {
+        return timeMillis >= fromMillis && timeMillis < toMillis;
+    }
+}
@@ -0,0 +1,48 @@
+package rt.tests.accumappender.memory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for the readers of the slots of this package. This is the Java 8 version based on
+ * {@code sun.misc.Unsafe}, looked up reflectively, the Java 9+ version in {@code src/main/java9} uses the
+ * {@code VarHandle} fences.
+ */
+final class Fences {
+
+    private static final MethodHandle LOAD_FENCE = findLoadFence();
+    private static volatile int fallback;
+
+    private Fences() {
+    }
+
+    /**
+     * Keeps the loads before the fence from being reordered with the volatile loads after it.
+     */
+    static void loadFence() {
+        if (LOAD_FENCE != null) {
+            try {
+                LOAD_FENCE.invokeExact();
+                return;
+            } catch (Throwable e) {
+                // Not thrown by Unsafe.loadFence
+            }
+        }
+        // The loads before a volatile write stay before it, and the volatile loads after it stay after it
+        fallback = 0;
+    }
+
+    private static MethodHandle findLoadFence() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", MethodType.methodType(void.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.util.Log4jThreadFactory;
+import rt.tests.accumappender.LongCounter;
+import rt.tests.accumappender.Markers;
+
+import javax.management.ObjectName;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static rt.tests.accumappender.Markers.FAIL;
+
+/**
+ * Records the last events of all the threads, at all levels, in an {@link OffHeapRing}, and writes them to the dump
+ * file on demand:
+ * <pre>
+ * &lt;FlightRecorder name="FlightRecorder" size="16MB" slotSize="512" dumpFile="logs/flight-recorder.log"&gt;
+ *     &lt;PatternLayout pattern="%d %p %c{1.} [%t] %m%n"/&gt;
+ * &lt;/FlightRecorder&gt;
+ * ...
+ * &lt;Accumulating name="AccuAppender"&gt;
+ *     &lt;AppenderRef ref="FileAppenderNew"/&gt;
+ *     &lt;AppenderRef ref="FlightRecorder"/&gt;
+ * &lt;/Accumulating&gt;
+ * </pre>
+ * Loggers reference it directly to record every event. Referenced by an {@link rt.tests.accumappender.AccumulatingAppender}
+ * it also receives the flushed transactions: a {@code FAIL} one is recorded and, with {@code dumpOnFail}, dumps the ring
+ * along with what the other threads were doing meanwhile, at most once per {@code minDumpInterval} milliseconds. The
+ * dump is written by a background thread, so the failing thread does not wait for the file.
+ * <p>
+ * The dump is also available as the {@code dump} operation of the
+ * {@code rt.tests.accumappender:type=FlightRecorder,name=<name>} MBean.
+ * </p>
+ */
+@Plugin(name = "FlightRecorder", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class FlightRecorderAppender extends AbstractAppender implements FlightRecorderAppenderMBean {
+
+    private static final ThreadLocal<GrowableByteBufferDestination> DESTINATION =
+            ThreadLocal.withInitial(GrowableByteBufferDestination::new);
+
+    private final OffHeapRing ring;
+    private final String dumpFile;
+    private final boolean dumpOnFail;
+    private final long minDumpIntervalNanos;
+
+    private final LongCounter lastFailDump = new LongCounter(Long.MIN_VALUE);
+    private final LongCounter dumps = new LongCounter();
+    // The dumps of FAIL events and of the MBean would interleave their lines in the file
+    private final Object dumpLock = new Object();
+    private volatile ExecutorService failDumps;
+    private ObjectName objectName;
+
+    @PluginBuilderFactory
+    public static FlightRecorderAppender.Builder newBuilder() {
+        return new FlightRecorderAppender.Builder();
+    }
+
+    protected FlightRecorderAppender(final String name, final Layout<? extends Serializable> layout,
+                                     final Filter filter, final boolean ignoreExceptions, final long size,
+                                     final int slotSize, final String dumpFile, final boolean dumpOnFail,
+                                     final long minDumpInterval) {
+        super(name, filter, layout, ignoreExceptions, null);
+        this.ring = new OffHeapRing(size, slotSize);
+        this.dumpFile = dumpFile;
+        this.dumpOnFail = dumpOnFail;
+        this.minDumpIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minDumpInterval);
+    }
+
+    @Override
+    public void start() {
+        if (dumpOnFail) {
+            failDumps = Executors.newSingleThreadExecutor(
+                    Log4jThreadFactory.createDaemonThreadFactory("FlightRecorder-" + getName()));
+        }
+        super.start();
+        objectName = MBeans.register(this, "FlightRecorder", getName());
+    }
+
+    @Override
+    public boolean stop(final long timeout, final TimeUnit timeUnit) {
+        MBeans.unregister(objectName, this);
+        objectName = null;
+        final ExecutorService executor = failDumps;
+        if (executor != null) {
+            failDumps = null;
+            executor.shutdown();
+            try {
+                executor.awaitTermination(timeout > 0 ? timeUnit.toMillis(timeout) : Long.MAX_VALUE,
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return super.stop(timeout, timeUnit);
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        final GrowableByteBufferDestination destination = DESTINATION.get();
+        destination.clear();
+        getLayout().encode(event, destination);
+        ring.write(destination.flip());
+
+        if (dumpOnFail && Markers.isInstanceOfAny(event.getMarker(), FAIL.bit()) && claimFailDump()) {
+            dumpInBackground("FAIL in " + event.getThreadName());
+        }
+    }
+
+    private void dumpInBackground(final String reason) {
+        final ExecutorService executor = failDumps;
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> dump(reason));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("The {} flight recorder is stopping, no dump for the {}", getName(), reason);
+        }
+    }
+
+    private boolean claimFailDump() {
+        final long now = System.nanoTime();
+        final long last = lastFailDump.get();
+        return (last == Long.MIN_VALUE || now - last >= minDumpIntervalNanos) && lastFailDump.compareAndSet(last, now);
+    }
+
+    @Override
+    public String getDumpFile() {
+        return dumpFile;
+    }
+
+    @Override
+    public long getRecordedEventCount() {
+        return ring.getWrittenCount();
+    }
+
+    @Override
+    public int getCapacityInEvents() {
+        return ring.getSlotCount();
+    }
+
+    @Override
+    public long getDumpCount() {
+        return dumps.get();
+    }
+
+    @Override
+    public int dump() {
+        return dump("on demand");
+    }
+
+    private int dump(final String reason) {
+        if (dumpFile == null) {
+            LOGGER.warn("No dump file defined for the {} flight recorder", getName());
+            return 0;
+        }
+        final File file = new File(dumpFile);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        synchronized (dumpLock) {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
+                return dump(out, reason);
+            } catch (IOException e) {
+                LOGGER.error("Could not dump the {} flight recorder to {}", getName(), dumpFile, e);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the recorded events to the stream, preceded by a header line.
+     *
+     * @return The number of events written.
+     */
+    public int dump(final OutputStream out, final String reason) throws IOException {
+        final String header = "----- " + getName() + " flight recorder dump at " + Instant.now() + " (" + reason + ")\n";
+        out.write(header.getBytes(StandardCharsets.UTF_8));
+        final IOException[] failure = new IOException[1];
+        final int dumped = ring.read((sequence, buffer, length) -> {
+            if (failure[0] == null) {
+                try {
+                    out.write(buffer, 0, length);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        dumps.incrementAndGet();
+        return dumped;
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<FlightRecorderAppender> {
+
+        @PluginBuilderAttribute
+        private String size = "16MB";
+
+        @PluginBuilderAttribute
+        private int slotSize = 512;
+
+        @PluginBuilderAttribute
+        private String dumpFile;
+
+        @PluginBuilderAttribute
+        private boolean dumpOnFail = true;
+
+        @PluginBuilderAttribute
+        private long minDumpInterval = 1000;
+
+        /**
+         * @param size The size of the ring, such as {@code 16MB}.
+         */
+        public Builder setSize(final String size) {
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * @param slotSize The space taken by one event, longer events are truncated.
+         */
+        public Builder setSlotSize(final int slotSize) {
+            this.slotSize = slotSize;
+            return this;
+        }
+
+        public Builder setDumpFile(final String dumpFile) {
+            this.dumpFile = dumpFile;
+            return this;
+        }
+
+        public Builder setDumpOnFail(final boolean dumpOnFail) {
+            this.dumpOnFail = dumpOnFail;
+            return this;
+        }
+
+        /**
+         * @param minDumpInterval The minimum time between two dumps triggered by {@code FAIL} events, in milliseconds.
+         */
+        public Builder setMinDumpInterval(final long minDumpInterval) {
+            this.minDumpInterval = minDumpInterval;
+            return this;
+        }
+
+        @Override
+        public FlightRecorderAppender build() {
+            final Layout<? extends Serializable> layout = getLayout() != null ?
+                    getLayout() : PatternLayout.createDefaultLayout();
+            return new FlightRecorderAppender(getName(), layout, getFilter(), isIgnoreExceptions(),
+                    FileSize.parse(size, 16 * 1024 * 1024), slotSize, dumpFile, dumpOnFail, minDumpInterval);
+        }
+    }
+}
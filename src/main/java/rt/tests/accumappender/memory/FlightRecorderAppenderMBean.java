@@ -0,0 +1,22 @@
+package rt.tests.accumappender.memory;
+
+/**
+ * The JMX view of a {@link FlightRecorderAppender}.
+ */
+public interface FlightRecorderAppenderMBean {
+
+    String getDumpFile();
+
+    long getRecordedEventCount();
+
+    int getCapacityInEvents();
+
+    long getDumpCount();
+
+    /**
+     * Writes the recorded events to the dump file.
+     *
+     * @return The number of events dumped.
+     */
+    int dump();
+}
@@ -0,0 +1,68 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A heap {@link ByteBufferDestination} which grows instead of draining, so a layout encodes a whole event into it.
+ * An instance is reused by one thread for all its events.
+ */
+public final class GrowableByteBufferDestination implements ByteBufferDestination {
+
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    /**
+     * Empties the buffer before encoding the next event, giving back the memory taken by an unusually large one.
+     */
+    public void clear() {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        } else {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * @return The encoded bytes, ready to be read.
+     */
+    public ByteBuffer flip() {
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer drain(final ByteBuffer buf) {
+        ensureRemaining(buf.capacity());
+        return buffer;
+    }
+
+    @Override
+    public void writeBytes(final ByteBuffer data) {
+        ensureRemaining(data.remaining());
+        buffer.put(data);
+    }
+
+    @Override
+    public void writeBytes(final byte[] data, final int offset, final int length) {
+        ensureRemaining(length);
+        buffer.put(data, offset, length);
+    }
+
+    private void ensureRemaining(final int length) {
+        if (buffer.remaining() < length) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package rt.tests.accumappender.memory;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ascending event ids. The array is only appended to, so a copy of its reference and size taken
+ * under the lock of the {@link EventIndex} can be read without it.
+ */
+final class IntPostings {
+
+    private int[] ids = new int[16];
+    private int size;
+
+    void add(final int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size++] = id;
+    }
+
+    int[] array() {
+        return ids;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The index of the first id from {@code from} on which is not less than {@code id}, found by galloping
+     *         then binary search, or {@code size} if there is none.
+     */
+    static int seek(final int[] ids, final int size, final int from, final int id) {
+        int low = from;
+        int step = 1;
+        int high = from;
+        while (high < size && ids[high] < id) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, size);
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (ids[middle] < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,63 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.status.StatusLogger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registers the appenders of this package as MBeans of the platform MBean server.
+ * <p>
+ * On reconfiguration the new appender starts before the old one with the same name stops: the new one takes the
+ * name over, and stopping the old one leaves it registered.
+ * </p>
+ */
+final class MBeans {
+
+    // The appender currently registered under each name
+    private static final Map<ObjectName, Object> OWNERS = new HashMap<>();
+
+    private MBeans() {
+    }
+
+    /**
+     * Registers the MBean, replacing the one registered under the same name, if any.
+     *
+     * @return The name the MBean was registered under, or {@code null} if it could not be registered.
+     */
+    static synchronized ObjectName register(final Object mbean, final String type, final String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(
+                    "rt.tests.accumappender:type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+            OWNERS.put(objectName, mbean);
+            return objectName;
+        } catch (JMException | SecurityException e) {
+            StatusLogger.getLogger().warn("Could not register the {} {} MBean", name, type, e);
+        }
+        return null;
+    }
+
+    /**
+     * Unregisters the MBean, unless another one has taken its name over since it was registered.
+     */
+    static synchronized void unregister(final ObjectName objectName, final Object mbean) {
+        if (objectName == null || OWNERS.get(objectName) != mbean) {
+            return;
+        }
+        OWNERS.remove(objectName);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException | SecurityException e) {
+            StatusLogger.getLogger().warn("Could not unregister the {} MBean", objectName, e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.StringLayout;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps the encoded events in memory, for tests and in-process diagnostics:
+ * <pre>
+ * &lt;Memory name="Captured" chunkSize="65536" maxSize="64MB"&gt;
+ *     &lt;PatternLayout pattern="%p %m%n"/&gt;
+ * &lt;/Memory&gt;
+ * </pre>
+ * Every thread encodes its events into a buffer of its own and appends them to a {@link ChunkedByteStore}, so
+ * appending takes no lock. The output can be read as a whole with {@link #getOutput()}, as read-only views of the
+ * stored bytes with {@link #getByteBuffers()}, or incrementally with a {@link Cursor}.
+ * With a {@code maxSize} the events which do not fit any more are dropped and counted.
+ */
+@Plugin(name = "Memory", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
+public class MemoryAppender extends AbstractAppender {
+
+    private static final ThreadLocal<GrowableByteBufferDestination> DESTINATION =
+            ThreadLocal.withInitial(GrowableByteBufferDestination::new);
+
+    private final ChunkedByteStore store;
+    private final Charset charset;
+
+    @PluginBuilderFactory
+    public static MemoryAppender.Builder newBuilder() {
+        return new MemoryAppender.Builder();
+    }
+
+    protected MemoryAppender(final String name, final Layout<? extends Serializable> layout,
+                             final Filter filter, final boolean ignoreExceptions,
+                             final int chunkSize, final long maxSize) {
+        super(name, filter, layout, ignoreExceptions, null);
+        this.store = new ChunkedByteStore(chunkSize, maxSize);
+        this.charset = layout instanceof StringLayout ? ((StringLayout) layout).getCharset() : StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public void append(final LogEvent event) {
+        final GrowableByteBufferDestination destination = DESTINATION.get();
+        destination.clear();
+        getLayout().encode(event, destination);
+        store.append(destination.flip());
+    }
+
+    /**
+     * @return The number of bytes stored.
+     */
+    public long getPosition() {
+        return store.size();
+    }
+
+    /**
+     * @return The number of events dropped because {@code maxSize} was reached.
+     */
+    public long getDroppedEventCount() {
+        return store.getDroppedCount();
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return Read-only views of all the stored bytes, one per chunk.
+     */
+    public ByteBuffer[] getByteBuffers() {
+        return store.views(0, store.size());
+    }
+
+    /**
+     * @return All the stored events as text.
+     */
+    public String getOutput() {
+        return decode(getByteBuffers());
+    }
+
+    /**
+     * @return A cursor reading the events appended from now on.
+     */
+    public Cursor newCursor() {
+        return new Cursor(store.size());
+    }
+
+    /**
+     * @return A cursor reading the stored bytes from the position, which should be the start of an event.
+     */
+    public Cursor newCursor(final long position) {
+        return new Cursor(position);
+    }
+
+    private String decode(final ByteBuffer[] views) {
+        if (views.length == 1) {
+            return charset.decode(views[0]).toString();
+        }
+        int length = 0;
+        for (ByteBuffer view : views) {
+            length += view.remaining();
+        }
+        final ByteBuffer joined = ByteBuffer.allocate(length);
+        for (ByteBuffer view : views) {
+            joined.put(view);
+        }
+        joined.flip();
+        return charset.decode(joined).toString();
+    }
+
+    public void addToLogger(final String loggerName, final Level level) {
+        final LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        final Configuration configuration = context.getConfiguration();
+        configuration.getLoggerConfig(loggerName).addAppender(this, level, null);
+        context.updateLoggers();
+    }
+
+    public void removeFromLogger(final String loggerName) {
+        final LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        final Configuration configuration = context.getConfiguration();
+        configuration.getLoggerConfig(loggerName).removeAppender(getName());
+        context.updateLoggers();
+    }
+
+    /**
+     * Reads the bytes appended since its previous read. A cursor is meant to be used by one thread, several cursors
+     * can read the same appender.
+     */
+    public final class Cursor {
+        private long position;
+
+        private Cursor(final long position) {
+            this.position = position;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return Read-only views of the bytes appended since the previous read.
+         */
+        public ByteBuffer[] next() {
+            final long to = store.size();
+            final ByteBuffer[] views = store.views(position, to);
+            position = to;
+            return views;
+        }
+
+        /**
+         * @return The events appended since the previous read, as text.
+         */
+        public String nextString() {
+            return decode(next());
+        }
+
+        /**
+         * Copies the bytes appended since the previous read into the buffer, as many as it can take.
+         *
+         * @return The number of bytes copied.
+         */
+        public int read(final ByteBuffer dst) {
+            final int read = store.read(position, dst);
+            position += read;
+            return read;
+        }
+    }
+
+    public static class Builder extends AbstractAppender.Builder<Builder>
+            implements org.apache.logging.log4j.core.util.Builder<MemoryAppender> {
+
+        @PluginBuilderAttribute
+        private int chunkSize = 64 * 1024;
+
+        @PluginBuilderAttribute
+        private String maxSize;
+
+        public Builder setChunkSize(final int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param maxSize The maximum size of the output, such as {@code 64MB}. No limit if {@code null}.
+         */
+        public Builder setMaxSize(final String maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        @Override
+        public MemoryAppender build() {
+            final Layout<? extends Serializable> layout = getLayout() != null ?
+                    getLayout() : PatternLayout.createDefaultLayout();
+            return new MemoryAppender(getName(), layout, getFilter(), isIgnoreExceptions(), chunkSize,
+                    maxSize == null ? 0L : FileSize.parse(maxSize, 0L));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package rt.tests.accumappender.memory;
+
+import rt.tests.accumappender.LongCounter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A ring of fixed-size slots in a direct buffer, keeping the last records written to it.
+ * <p>
+ * A writer claims the next sequence with a single atomic increment and copies its record into the slot of that
+ * sequence, overwriting the oldest record. A record longer than a slot is truncated. Every slot has a stamp holding
+ * the sequence of the record it contains once it is complete, so a reader skips the slots being written or
+ * overwritten while it copies them. Writers never wait for each other nor for readers.
+ * </p>
+ * <p>
+ * A writer marks the slot as being written by CAS before copying its record. When a writer stalled for a whole turn
+ * of the ring meets another one on the same slot, the writer which finds the slot being written, or holding a newer
+ * record, drops its record instead of writing over the other one, and the drop is counted.
+ * </p>
+ */
+public final class OffHeapRing {
+
+    /**
+     * Receives the records read from the ring, in the order they were written. The buffer is only valid during the
+     * call.
+     */
+    public interface RecordHandler {
+        void onRecord(long sequence, byte[] buffer, int length);
+    }
+
+    private static final int HEADER_SIZE = 4;
+    private static final long EMPTY = -1L;
+    // The stamps below EMPTY mark the slots being written, see writing(long)
+
+    private final ByteBuffer ring;
+    private final AtomicLongArray stamps;
+    private final int slotSize;
+    private final int mask;
+    private final LongCounter sequence = new LongCounter();
+    private final LongCounter dropped = new LongCounter();
+    private final ThreadLocal<ByteBuffer> writers;
+
+    /**
+     * @param capacity The size of the ring in bytes, the number of slots is rounded down to a power of 2.
+     * @param slotSize The size of a slot, the records are truncated to this size minus 4 bytes.
+     */
+    public OffHeapRing(final long capacity, final int slotSize) {
+        if (slotSize <= HEADER_SIZE || capacity < slotSize || capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid ring of " + capacity + " bytes with slots of " + slotSize);
+        }
+        final int slots = Integer.highestOneBit((int) (capacity / slotSize));
+        this.ring = ByteBuffer.allocateDirect(slots * slotSize);
+        this.stamps = new AtomicLongArray(slots);
+        this.slotSize = slotSize;
+        this.mask = slots - 1;
+        this.writers = ThreadLocal.withInitial(ring::duplicate);
+        for (int i = 0; i < slots; i++) {
+            stamps.set(i, EMPTY);
+        }
+    }
+
+    public int getSlotCount() {
+        return mask + 1;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * @return The number of records written since the ring was created, overwritten ones included.
+     */
+    public long getWrittenCount() {
+        return sequence.get();
+    }
+
+    /**
+     * @return The number of records dropped because their slot was taken by another writer, see the class comment.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer as the newest record.
+     */
+    public void write(final ByteBuffer data) {
+        write(claim(), data);
+    }
+
+    long claim() {
+        return sequence.incrementAndGet() - 1;
+    }
+
+    void write(final long claimed, final ByteBuffer data) {
+        final int length = Math.min(data.remaining(), slotSize - HEADER_SIZE);
+        final int slot = (int) claimed & mask;
+        if (!acquire(slot, claimed)) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        final ByteBuffer writer = writers.get();
+        final int offset = slot * slotSize;
+        writer.putInt(offset, length);
+        writer.clear().position(offset + HEADER_SIZE);
+        final int limit = data.limit();
+        data.limit(data.position() + length);
+        writer.put(data);
+        data.limit(limit);
+
+        stamps.lazySet(slot, claimed);
+    }
+
+    /**
+     * Marks the slot as being written, unless another writer is writing it or it holds a newer record. The CAS is a
+     * full barrier which keeps the copy of the record after it.
+     */
+    private boolean acquire(final int slot, final long claimed) {
+        long current;
+        do {
+            current = stamps.get(slot);
+            if (current < EMPTY || current > claimed) {
+                return false;
+            }
+        } while (!stamps.compareAndSet(slot, current, writing(claimed)));
+        return true;
+    }
+
+    private static long writing(final long sequence) {
+        return -sequence - 2;
+    }
+
+    /**
+     * Reads the records currently in the ring, from the oldest to the newest.
+     *
+     * @return The number of records read.
+     */
+    public int read(final RecordHandler handler) {
+        final ByteBuffer reader = ring.duplicate();
+        final byte[] buffer = new byte[slotSize - HEADER_SIZE];
+        final long head = sequence.get();
+        int read = 0;
+        for (long current = Math.max(0L, head - getSlotCount()); current < head; current++) {
+            final int slot = (int) current & mask;
+            if (stamps.get(slot) != current) {
+                continue;
+            }
+            final int offset = slot * slotSize;
+            final int length = Math.max(0, Math.min(reader.getInt(offset), buffer.length));
+            reader.clear().position(offset + HEADER_SIZE);
+            reader.get(buffer, 0, length);
+            // The slot may have been overwritten while being copied, the fence keeps the copy before the check
+            Fences.loadFence();
+            if (stamps.get(slot) != current) {
+                continue;
+            }
+            handler.onRecord(current, buffer, length);
+            read++;
+        }
+        return read;
+    }
+}
@@ -0,0 +1,61 @@
+package rt.tests.aspect;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.SourceLocation;
+import rt.tests.logger.ExtLogEventFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Passes the location of every {@code ExtLogger}, {@code ExtLogBuilder} and {@code CustomLogger} call to the
+ * {@link ExtLogEventFactory}.
+ * <p>
+ * The location comes from the static join point part the weaver creates once per call site, so logging with
+ * {@code includeLocation="true"} does not walk the stack. Woven at build time with the {@code weave-location}
+ * profile.
+ * </p>
+ */
+@Aspect
+public class CallSiteLocationAspect {
+
+    private static final ConcurrentMap<JoinPoint.StaticPart, StackTraceElement> LOCATIONS = new ConcurrentHashMap<>();
+
+    @Pointcut("(call(public void rt.tests.logger.ExtLogger.*(..)) || call(public void rt.tests.logger.CustomLogger.*(..))"
+            + " || call(public void rt.tests.logger.ExtLogBuilder.log(..)))"
+            + " && !within(rt.tests.logger..*) && !within(rt.tests.aspect..*)")
+    public void loggerCall() {
+    }
+
+    @Before("loggerCall()")
+    public void before(JoinPoint.StaticPart callSite, JoinPoint.EnclosingStaticPart enclosing) {
+        StackTraceElement location = LOCATIONS.get(callSite);
+        if (location == null) {
+            location = LOCATIONS.computeIfAbsent(callSite, key -> toLocation(key, enclosing));
+        }
+        ExtLogEventFactory.setCallSite(location);
+    }
+
+    @After("loggerCall()")
+    public void after() {
+        ExtLogEventFactory.clearCallSite();
+    }
+
+    private static StackTraceElement toLocation(JoinPoint.StaticPart callSite, JoinPoint.EnclosingStaticPart enclosing) {
+        final SourceLocation source = callSite.getSourceLocation();
+        final String methodName;
+        if (JoinPoint.CONSTRUCTOR_EXECUTION.equals(enclosing.getKind())) {
+            methodName = "<init>";
+        } else if (JoinPoint.STATICINITIALIZATION.equals(enclosing.getKind())) {
+            methodName = "<clinit>";
+        } else {
+            methodName = enclosing.getSignature().getName();
+        }
+        return new StackTraceElement(source.getWithinType().getName(), methodName, source.getFileName(),
+                source.getLine());
+    }
+}
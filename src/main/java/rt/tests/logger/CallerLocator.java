@@ -0,0 +1,27 @@
+package rt.tests.logger;
+
+/**
+ * Finds the caller of a logger class. This is the Java 8 version walking a {@link Throwable} stack trace,
+ * the Java 9+ version in {@code src/main/java9} uses a {@code StackWalker}.
+ */
+final class CallerLocator {
+
+    private CallerLocator() {
+    }
+
+    /**
+     * @param fqcn The fully qualified class name of the logger.
+     * @return The stack frame calling the logger, or {@code null} if the logger is not on the stack.
+     */
+    static StackTraceElement locate(final String fqcn) {
+        boolean inLogger = false;
+        for (final StackTraceElement element : new Throwable().getStackTrace()) {
+            if (fqcn.equals(element.getClassName())) {
+                inLogger = true;
+            } else if (inLogger) {
+                return element;
+            }
+        }
+        return null;
+    }
+}
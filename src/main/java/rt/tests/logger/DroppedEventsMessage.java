@@ -0,0 +1,65 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+/**
+ * The message of an event logged through a {@link LogLimiter}, reporting the number of events the limiter dropped
+ * since the previous one.
+ */
+public class DroppedEventsMessage implements Message, StringBuilderFormattable {
+    private static final long serialVersionUID = 4851229087715893201L;
+
+    private final Message message;
+    private final long droppedCount;
+
+    public DroppedEventsMessage(final Message message, final long droppedCount) {
+        this.message = message;
+        this.droppedCount = droppedCount;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        final StringBuilder sb = new StringBuilder();
+        formatTo(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void formatTo(final StringBuilder buffer) {
+        if (message instanceof StringBuilderFormattable) {
+            ((StringBuilderFormattable) message).formatTo(buffer);
+        } else {
+            buffer.append(message.getFormattedMessage());
+        }
+        buffer.append(" [").append(droppedCount).append(" similar events dropped]");
+    }
+
+    @Override
+    public String getFormat() {
+        return message.getFormat();
+    }
+
+    @Override
+    public Object[] getParameters() {
+        return message.getParameters();
+    }
+
+    @Override
+    public Throwable getThrowable() {
+        return message.getThrowable();
+    }
+
+    @Override
+    public String toString() {
+        return getFormattedMessage();
+    }
+}
@@ -0,0 +1,145 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.spi.ExtendedLogger;
+
+import java.util.Arrays;
+
+/**
+ * Fluent builder of an {@link ExtLogger} event with structured fields:
+ * <pre>
+ * LOGGER.atInfo().with("orderId", id).with("latencyMs", ms).log("Order {} done", id);
+ * </pre>
+ * There is one builder per thread, reused by every chain ending with one of the {@code log} methods. A chain which
+ * never ends keeps its builder, and the next chain of the thread replaces the pooled builder with a new one.
+ * When the level is disabled the chain runs on a shared builder which ignores everything.
+ * The fields end up in the context data of the event, see {@link FieldsMessage}.
+ */
+public class ExtLogBuilder {
+
+    public static final String FQCN = ExtLogBuilder.class.getName();
+
+    static final ExtLogBuilder NOOP = new ExtLogBuilder();
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final ThreadLocal<ExtLogBuilder> POOL = ThreadLocal.withInitial(ExtLogBuilder::new);
+
+    private ExtendedLogger logger;
+    private Level level;
+    private Marker marker;
+    private Throwable thrown;
+    private boolean inUse;
+
+    // The name then the object value, or the type of the primitive value, of each field
+    private Object[] fields = new Object[2 * INITIAL_CAPACITY];
+    private long[] primitives = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private ExtLogBuilder() {
+    }
+
+    /**
+     * @return The builder of the current thread, or a new one if the builder of the thread is in the middle of a
+     *         chain, e.g. when a field value is computed by code which logs too. The new builder becomes the one of
+     *         the thread, so a chain which was never ended does not make every later chain allocate a builder.
+     */
+    static ExtLogBuilder acquire(final ExtendedLogger logger, final Level level) {
+        ExtLogBuilder builder = POOL.get();
+        if (builder.inUse) {
+            builder = new ExtLogBuilder();
+            POOL.set(builder);
+        }
+        builder.inUse = true;
+        builder.logger = logger;
+        builder.level = level;
+        return builder;
+    }
+
+    public ExtLogBuilder withMarker(final Marker marker) {
+        if (logger != null) {
+            this.marker = marker;
+        }
+        return this;
+    }
+
+    public ExtLogBuilder withThrowable(final Throwable thrown) {
+        if (logger != null) {
+            this.thrown = thrown;
+        }
+        return this;
+    }
+
+    public ExtLogBuilder with(final String key, final long value) {
+        return add(key, FieldsMessage.LONG, value);
+    }
+
+    public ExtLogBuilder with(final String key, final double value) {
+        return add(key, FieldsMessage.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    public ExtLogBuilder with(final String key, final boolean value) {
+        return add(key, FieldsMessage.BOOLEAN, value ? 1L : 0L);
+    }
+
+    public ExtLogBuilder with(final String key, final Object value) {
+        return add(key, value, 0L);
+    }
+
+    private ExtLogBuilder add(final String key, final Object objectOrType, final long primitive) {
+        if (logger == null) {
+            return this;
+        }
+        if (size == primitives.length) {
+            grow();
+        }
+        fields[2 * size] = key;
+        fields[2 * size + 1] = objectOrType;
+        primitives[size] = primitive;
+        size++;
+        return this;
+    }
+
+    private void grow() {
+        fields = Arrays.copyOf(fields, fields.length * 2);
+        primitives = Arrays.copyOf(primitives, primitives.length * 2);
+    }
+
+    public void log(final String message) {
+        if (logger != null) {
+            log(logger.getMessageFactory().newMessage(message));
+        }
+    }
+
+    public void log(final String message, final Object... params) {
+        if (logger != null) {
+            log(logger.getMessageFactory().newMessage(message, params));
+        }
+    }
+
+    public void log(final Message message) {
+        final ExtendedLogger logger = this.logger;
+        if (logger == null) {
+            return;
+        }
+        try {
+            if (marker == null || logger.isEnabled(level, marker)) {
+                final FieldsMessage msg = new FieldsMessage(message, fields, primitives, size);
+                logger.logMessage(FQCN, level, marker, msg, thrown != null ? thrown : message.getThrowable());
+            }
+        } finally {
+            reset();
+        }
+    }
+
+    private void reset() {
+        Arrays.fill(fields, 0, 2 * size, null);
+        size = 0;
+        logger = null;
+        level = null;
+        marker = null;
+        thrown = null;
+        inUse = false;
+    }
+}
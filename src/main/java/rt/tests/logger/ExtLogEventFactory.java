@@ -0,0 +1,118 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.ContextDataInjector;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.impl.ContextDataInjectorFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.impl.LogEventFactory;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringMap;
+import rt.tests.accumappender.LogContext;
+
+import java.util.List;
+
+/**
+ * Creates {@link Log4jLogEvent}s carrying the caller location precomputed for the current {@link ExtLogger} or
+ * {@link CustomLogger} call, so that Log4j does not need to walk the stack when {@code includeLocation} is on.
+ * <p>
+ * The location is set by the call sites woven with {@link rt.tests.aspect.CallSiteLocationAspect}
+ * (see the {@code weave-location} build profile), or by hand with {@link #setCallSite(StackTraceElement)}.
+ * Without a precomputed location the events are the same as those of the default Log4j factory.
+ * </p>
+ * <p>
+ * The fields of a {@link FieldsMessage} are added to the context data of the event. The context stack of the
+ * event is the {@link LogContext} one when frames were pushed on it, and the {@code ThreadContext} one otherwise.
+ * </p>
+ * <p>
+ * The {@code ExtLogger} logger configurations use this factory unless the {@code Log4jLogEventFactory} system
+ * property names another one. For other logger configurations set that property to this class name.
+ * </p>
+ */
+public class ExtLogEventFactory implements LogEventFactory {
+
+    private static final ThreadLocal<StackTraceElement> CALL_SITE = new ThreadLocal<>();
+    private static final ContextDataInjector INJECTOR = ContextDataInjectorFactory.createInjector();
+
+    private final boolean eagerLocation;
+    private final boolean copyLogContext;
+
+    public ExtLogEventFactory() {
+        this(false);
+    }
+
+    /**
+     * @param eagerLocation If {@code true}, the location of calls without a precomputed one is looked up when the
+     *                      event is created. Used when the event leaves the logging thread, so the location must be
+     *                      found before anyway.
+     */
+    public ExtLogEventFactory(final boolean eagerLocation) {
+        this(eagerLocation, false);
+    }
+
+    /**
+     * @param eagerLocation See {@link #ExtLogEventFactory(boolean)}.
+     * @param copyLogContext If {@code true}, the {@link LogContext} values of the logging thread are added to the
+     *                       context data of the event, for events leaving the logging thread.
+     */
+    public ExtLogEventFactory(final boolean eagerLocation, final boolean copyLogContext) {
+        this.eagerLocation = eagerLocation;
+        this.copyLogContext = copyLogContext;
+    }
+
+    /**
+     * Sets the location of the logging call about to be made on the current thread.
+     */
+    public static void setCallSite(final StackTraceElement location) {
+        CALL_SITE.set(location);
+    }
+
+    /**
+     * Clears the location set by {@link #setCallSite(StackTraceElement)}, whether or not an event was created.
+     */
+    public static void clearCallSite() {
+        CALL_SITE.remove();
+    }
+
+    @Override
+    public LogEvent createEvent(final String loggerName, final Marker marker, final String fqcn, final Level level,
+                                final Message data, final List<Property> properties, final Throwable t) {
+        StackTraceElement callSite = CALL_SITE.get();
+        if (callSite == null && eagerLocation && fqcn != null) {
+            callSite = CallerLocator.locate(fqcn);
+        }
+        final boolean withFields = data instanceof FieldsMessage;
+        final boolean withLogContext = copyLogContext && !LogContext.isEmpty();
+        final ThreadContext.ContextStack logContextStack = LogContext.getStack();
+        if (callSite == null && !withFields && !withLogContext && logContextStack == null) {
+            return new Log4jLogEvent(loggerName, marker, fqcn, level, data, properties, t);
+        }
+        StringMap contextData = INJECTOR.injectContextData(properties, ContextDataFactory.createContextData());
+        if ((withFields || withLogContext) && contextData.isFrozen()) {
+            contextData = ContextDataFactory.createContextData(contextData);
+        }
+        if (withLogContext) {
+            LogContext.forEach(contextData::putValue);
+        }
+        if (withFields) {
+            ((FieldsMessage) data).putFields(contextData);
+        }
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName(loggerName)
+                .setMarker(marker)
+                .setLoggerFqcn(fqcn)
+                .setLevel(level)
+                .setMessage(data)
+                .setThrown(t)
+                .setContextData(contextData)
+                .setContextStack(logContextStack != null ? logContextStack
+                        : ThreadContext.getDepth() == 0 ? null : ThreadContext.cloneStack())
+                .setNanoTime(Log4jLogEvent.getNanoClock().nanoTime())
+                .setSource(callSite)
+                .build();
+    }
+}
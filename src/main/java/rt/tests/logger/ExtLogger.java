@@ -1,5 +1,6 @@
 package rt.tests.logger;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Marker;
@@ -23,6 +24,15 @@ public final class ExtLogger extends ExtendedLoggerWrapper {
 
     public static final String FQCN = ExtLogger.class.getName();
 
+    /**
+     * @return {@code true} if the FQCN is the one of the events logged by an {@code ExtLogger} or its
+     *         {@link ExtLogBuilder}.
+     */
+    public static boolean isExtLoggerFqcn(final String fqcn) {
+        // Identity first: the FQCN of an event is nearly always the constant of the logging class
+        return fqcn == FQCN || fqcn == ExtLogBuilder.FQCN || FQCN.equals(fqcn) || ExtLogBuilder.FQCN.equals(fqcn);
+    }
+
     private ExtLogger(final Logger logger) {
         super((AbstractLogger) logger, logger.getName(), logger.getMessageFactory());
         this.logger = this;
@@ -125,6 +135,136 @@ public final class ExtLogger extends ExtendedLoggerWrapper {
         return new ExtLogger(wrapped);
     }
 
+    /**
+     * Logs a message with parameters at the given level, if the {@link LogLimiter} of the call site lets it through.
+     * The number of calls the limiter dropped before is reported by the message of the logged event.
+     *
+     * @param limiter the limiter of this call site
+     * @param level the logging level
+     * @param marker the marker data specific to this log statement
+     * @param message the message to log; the format depends on the message factory.
+     * @param params parameters to the message.
+     */
+    public void log(final LogLimiter limiter, final Level level, final Marker marker, final String message,
+                    final Object... params) {
+        if (!logger.isEnabled(level, marker, message, params) || !limiter.tryAcquire()) {
+            return;
+        }
+        Message msg = getMessageFactory().newMessage(message, params);
+        final long dropped = limiter.drainDroppedCount();
+        if (dropped > 0) {
+            msg = new DroppedEventsMessage(msg, dropped);
+        }
+        logger.logMessage(FQCN, level, marker, msg, msg.getThrowable());
+    }
+
+    /**
+     * Logs a message with parameters at the {@code TRACE} level through the {@link LogLimiter} of the call site.
+     *
+     * @param limiter the limiter of this call site
+     * @param message the message to log; the format depends on the message factory.
+     * @param params parameters to the message.
+     */
+    public void trace(final LogLimiter limiter, final String message, final Object... params) {
+        log(limiter, TRACE, null, message, params);
+    }
+
+    /**
+     * Logs a message with parameters at the {@code DEBUG} level through the {@link LogLimiter} of the call site.
+     *
+     * @param limiter the limiter of this call site
+     * @param message the message to log; the format depends on the message factory.
+     * @param params parameters to the message.
+     */
+    public void debug(final LogLimiter limiter, final String message, final Object... params) {
+        log(limiter, DEBUG, null, message, params);
+    }
+
+    /**
+     * Logs a message with parameters at the {@code INFO} level through the {@link LogLimiter} of the call site.
+     *
+     * @param limiter the limiter of this call site
+     * @param message the message to log; the format depends on the message factory.
+     * @param params parameters to the message.
+     */
+    public void info(final LogLimiter limiter, final String message, final Object... params) {
+        log(limiter, INFO, null, message, params);
+    }
+
+    /**
+     * Logs a message with parameters at the {@code WARN} level through the {@link LogLimiter} of the call site.
+     *
+     * @param limiter the limiter of this call site
+     * @param message the message to log; the format depends on the message factory.
+     * @param params parameters to the message.
+     */
+    public void warn(final LogLimiter limiter, final String message, final Object... params) {
+        log(limiter, WARN, null, message, params);
+    }
+
+    /**
+     * Logs a message with parameters at the {@code ERROR} level through the {@link LogLimiter} of the call site.
+     *
+     * @param limiter the limiter of this call site
+     * @param message the message to log; the format depends on the message factory.
+     * @param params parameters to the message.
+     */
+    public void error(final LogLimiter limiter, final String message, final Object... params) {
+        log(limiter, ERROR, null, message, params);
+    }
+
+    /**
+     * Starts building an event with structured fields at the given level.
+     *
+     * @param level the logging level
+     * @return The builder of the current thread, or one ignoring everything if the level is disabled.
+     */
+    public ExtLogBuilder atLevel(final Level level) {
+        return logger.isEnabled(level) ? ExtLogBuilder.acquire(logger, level) : ExtLogBuilder.NOOP;
+    }
+
+    /**
+     * Starts building an event with structured fields at the {@code TRACE} level.
+     */
+    public ExtLogBuilder atTrace() {
+        return atLevel(TRACE);
+    }
+
+    /**
+     * Starts building an event with structured fields at the {@code DEBUG} level.
+     */
+    public ExtLogBuilder atDebug() {
+        return atLevel(DEBUG);
+    }
+
+    /**
+     * Starts building an event with structured fields at the {@code INFO} level.
+     */
+    public ExtLogBuilder atInfo() {
+        return atLevel(INFO);
+    }
+
+    /**
+     * Starts building an event with structured fields at the {@code WARN} level.
+     */
+    public ExtLogBuilder atWarn() {
+        return atLevel(WARN);
+    }
+
+    /**
+     * Starts building an event with structured fields at the {@code ERROR} level.
+     */
+    public ExtLogBuilder atError() {
+        return atLevel(ERROR);
+    }
+
+    /**
+     * Starts building an event with structured fields at the {@code FATAL} level.
+     */
+    public ExtLogBuilder atFatal() {
+        return atLevel(FATAL);
+    }
+
     /**
      * Logs a message with the specific Marker at the {@code OFF} level.
      * 
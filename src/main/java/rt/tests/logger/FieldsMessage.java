@@ -0,0 +1,125 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ReusableMessage;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import org.apache.logging.log4j.util.StringMap;
+
+import java.util.Arrays;
+
+/**
+ * The message of an event logged with an {@link ExtLogBuilder}: the formatted message plus the key/value fields of the
+ * call. The fields are not part of the formatted message, they are put into the context data of the event instead
+ * (see {@link ExtLogEventFactory} and {@link rt.tests.accumappender.AccumulatingAppender}).
+ * <p>
+ * Primitive values are kept unboxed and are only boxed when put into a context map.
+ * </p>
+ * <p>
+ * The message may outlive the logging call, in accumulated or queued events, so it takes a copy of the fields of the
+ * builder: one array of the names and object values, and one of the primitive values. A call without fields shares
+ * empty arrays. A {@link ReusableMessage} of the logger is replaced by its memento for the same reason.
+ * </p>
+ */
+public class FieldsMessage implements Message, StringBuilderFormattable {
+    private static final long serialVersionUID = -3405129488431726180L;
+
+    // The types of the primitive values, in place of the object value of their field
+    static final Type LONG = Type.LONG;
+    static final Type DOUBLE = Type.DOUBLE;
+    static final Type BOOLEAN = Type.BOOLEAN;
+
+    private static final Object[] NO_FIELDS = {};
+    private static final long[] NO_PRIMITIVES = {};
+
+    private final Message message;
+    private final Object[] fields;
+    private final long[] primitives;
+
+    /**
+     * @param fields The name then the object value, or the type of the primitive value, of each field.
+     * @param primitives The primitive value of each field, unused for the object ones.
+     * @param size The number of fields.
+     */
+    FieldsMessage(final Message message, final Object[] fields, final long[] primitives, final int size) {
+        this.message = message instanceof ReusableMessage ? ((ReusableMessage) message).memento() : message;
+        this.fields = size == 0 ? NO_FIELDS : Arrays.copyOf(fields, 2 * size);
+        this.primitives = size == 0 ? NO_PRIMITIVES : Arrays.copyOf(primitives, size);
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public int getFieldCount() {
+        return primitives.length;
+    }
+
+    public String getFieldName(final int index) {
+        return (String) fields[2 * index];
+    }
+
+    /**
+     * @return The value of the field, boxed if primitive.
+     */
+    public Object getFieldValue(final int index) {
+        final Object value = fields[2 * index + 1];
+        if (value == LONG) {
+            return primitives[index];
+        } else if (value == DOUBLE) {
+            return Double.longBitsToDouble(primitives[index]);
+        } else if (value == BOOLEAN) {
+            return primitives[index] != 0;
+        }
+        return value;
+    }
+
+    /**
+     * Puts all the fields into the given map, later fields with the same name overwriting former ones.
+     */
+    public void putFields(final StringMap contextData) {
+        for (int i = 0; i < primitives.length; i++) {
+            contextData.putValue((String) fields[2 * i], getFieldValue(i));
+        }
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        return message.getFormattedMessage();
+    }
+
+    @Override
+    public void formatTo(final StringBuilder buffer) {
+        if (message instanceof StringBuilderFormattable) {
+            ((StringBuilderFormattable) message).formatTo(buffer);
+        } else {
+            buffer.append(message.getFormattedMessage());
+        }
+    }
+
+    @Override
+    public String getFormat() {
+        return message.getFormat();
+    }
+
+    @Override
+    public Object[] getParameters() {
+        return message.getParameters();
+    }
+
+    @Override
+    public Throwable getThrowable() {
+        return message.getThrowable();
+    }
+
+    @Override
+    public String toString() {
+        return getFormattedMessage();
+    }
+
+    /**
+     * The type of a primitive field value, which no code outside of the package can pass as an object value.
+     */
+    enum Type {
+        LONG, DOUBLE, BOOLEAN
+    }
+}
@@ -0,0 +1,115 @@
+package rt.tests.logger;
+
+import rt.tests.accumappender.LongCounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per call site state deciding which calls of a hot {@link ExtLogger} call site get logged. Keep one instance per call
+ * site, typically in a {@code static final} field next to the logger:
+ * <pre>
+ * private static final LogLimiter RETRIES = LogLimiter.perSecond(10, 20);
+ * ...
+ * LOGGER.warn(RETRIES, "Retrying {}", request);
+ * </pre>
+ * The calls left out are counted, and the count is added to the next logged event of the call site
+ * (see {@link DroppedEventsMessage}). Both the decision and the count are lock-free.
+ */
+public abstract class LogLimiter {
+
+    private final LongCounter dropped = new LongCounter();
+
+    /**
+     * @param n Logs the first call and then every n-th one.
+     * @return A sampling limiter.
+     */
+    public static LogLimiter oneIn(final int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Sampling rate must be positive: " + n);
+        }
+        return new Sampler(n);
+    }
+
+    /**
+     * @param permitsPerSecond The sustained number of calls logged per second.
+     * @param burst The number of calls which may be logged at once after a quiet period.
+     * @return A token bucket limiter.
+     */
+    public static LogLimiter perSecond(final double permitsPerSecond, final int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive: " + permitsPerSecond + ", " + burst);
+        }
+        return new TokenBucket((long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond), burst);
+    }
+
+    /**
+     * Decides whether the current call is logged, counting it as dropped if not.
+     */
+    public boolean tryAcquire() {
+        if (tryAcquire(System.nanoTime())) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    abstract boolean tryAcquire(long nanoTime);
+
+    /**
+     * @return The number of calls dropped since the last call of this method.
+     */
+    public long drainDroppedCount() {
+        return dropped.get() == 0 ? 0 : dropped.getAndSet(0);
+    }
+
+    /**
+     * @return The number of calls dropped and not reported yet.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    static final class Sampler extends LogLimiter {
+        private final LongCounter calls = new LongCounter();
+        private final int n;
+
+        Sampler(final int n) {
+            this.n = n;
+        }
+
+        @Override
+        boolean tryAcquire(final long nanoTime) {
+            return (calls.incrementAndGet() - 1) % n == 0;
+        }
+    }
+
+    /**
+     * A token bucket implemented as a generic cell rate algorithm: a single theoretical arrival time, advanced by CAS,
+     * replaces the token count and the refill timestamp.
+     */
+    static final class TokenBucket extends LogLimiter {
+        private final LongCounter theoreticalArrival;
+        private final long interval;
+        private final long tolerance;
+
+        TokenBucket(final long interval, final int burst) {
+            this.interval = Math.max(1L, interval);
+            this.tolerance = this.interval * (burst - 1);
+            this.theoreticalArrival = new LongCounter(Long.MIN_VALUE);
+        }
+
+        @Override
+        boolean tryAcquire(final long nanoTime) {
+            for (;;) {
+                final long arrival = theoreticalArrival.get();
+                final long next = arrival == Long.MIN_VALUE || arrival - nanoTime < 0 ? nanoTime : arrival;
+                if (next - nanoTime > tolerance) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(arrival, next + interval)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package rt.tests.accumappender;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A padded {@code long} counter kept on its own cache line. This is the Java 9+ version, which reads and
+ * publishes the value with acquire/release {@link VarHandle} access instead of full volatile semantics.
+ */
+public final class LongCounter {
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(LongCounter.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    public LongCounter() {
+    }
+
+    public LongCounter(final long initialValue) {
+        this.value = initialValue;
+    }
+
+    /**
+     * Reads the value with acquire semantics.
+     */
+    public long get() {
+        return (long) VALUE.getAcquire(this);
+    }
+
+    /**
+     * Sets the value with release semantics.
+     */
+    public void setRelease(final long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+
+    public boolean compareAndSet(final long expected, final long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+
+    public long addAndGet(final long delta) {
+        return (long) VALUE.getAndAdd(this, delta) + delta;
+    }
+
+    public long incrementAndGet() {
+        return addAndGet(1L);
+    }
+
+    public long getAndSet(final long newValue) {
+        return (long) VALUE.getAndSet(this, newValue);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,20 @@
+package rt.tests.accumappender.memory;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Memory fences for the readers of the slots of this package. This is the Java 9+ version, based on the
+ * {@link VarHandle} fences.
+ */
+final class Fences {
+
+    private Fences() {
+    }
+
+    /**
+     * Keeps the loads before the fence from being reordered with the loads after it.
+     */
+    static void loadFence() {
+        VarHandle.acquireFence();
+    }
+}
@@ -0,0 +1,34 @@
+package rt.tests.logger;
+
+import java.util.Iterator;
+
+/**
+ * Finds the caller of a logger class. This is the Java 9+ version, which walks the stack lazily and only
+ * materializes the {@link StackTraceElement} of the caller frame.
+ */
+final class CallerLocator {
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private CallerLocator() {
+    }
+
+    /**
+     * @param fqcn The fully qualified class name of the logger.
+     * @return The stack frame calling the logger, or {@code null} if the logger is not on the stack.
+     */
+    static StackTraceElement locate(final String fqcn) {
+        return WALKER.walk(frames -> {
+            boolean inLogger = false;
+            for (final Iterator<StackWalker.StackFrame> it = frames.iterator(); it.hasNext(); ) {
+                final StackWalker.StackFrame frame = it.next();
+                if (fqcn.equals(frame.getClassName())) {
+                    inLogger = true;
+                } else if (inLogger) {
+                    return frame.toStackTraceElement();
+                }
+            }
+            return null;
+        });
+    }
+}
@@ -1,19 +1,28 @@
 package rt.tests.accumappender;
 
 import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.ThreadContext;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.config.AppenderRef;
 import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
 import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.spi.MutableThreadContextStack;
+import org.apache.logging.log4j.util.StringMap;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static org.apache.logging.log4j.Level.*;
@@ -21,8 +30,7 @@ import static org.apache.logging.log4j.core.LifeCycle.State.STARTED;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.*;
-import static rt.tests.accumappender.Markers.FAIL;
-import static rt.tests.accumappender.Markers.SUCCESS;
+import static rt.tests.accumappender.Markers.*;
 
 public class AccumulatingAppenderTest {
 
@@ -104,6 +112,184 @@ public class AccumulatingAppenderTest {
         verifyExactLogEvents(INFO, "Trace message : Debug message : Info message : Warn message : Fail message", FAIL);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTransactionAppenderReceivesTheAccumulatedEvents() {
+        TransactionAppender transactionAppender = createMockAppender(TransactionAppender.class);
+        mockAppender = transactionAppender;
+        mockConfiguration = createMockConfiguration(mockAppender);
+        AccumulatingAppender unit = getUnit();
+
+        unit.append(createLogDebugEvent("Debug message"));
+        unit.append(createLogWarnEvent("Warn message"));
+        Log4jLogEvent flushEvent = createLogInfoEvent("Info message", SUCCESS);
+        unit.append(flushEvent);
+
+        ArgumentCaptor<List<LogEvent>> events = ArgumentCaptor.forClass((Class) List.class);
+        verify(transactionAppender).appendTransaction(eq(flushEvent), events.capture());
+        verify(transactionAppender, never()).append(Mockito.any(LogEvent.class));
+        assertThat(events.getValue().size(), equalTo(3));
+        verifyLogEvent(events.getValue().get(0), DEBUG, "Debug message");
+        verifyLogEvent(events.getValue().get(1), WARN, "Warn message");
+        verifyLogEvent(events.getValue().get(2), INFO, "Info message", SUCCESS);
+    }
+
+    @Test
+    public void testDescendantMarkersFlushTheLogEvents() {
+        AccumulatingAppender unit = getUnit();
+
+        unit.append(createLogDebugEvent("Debug message"));
+        unit.append(createLogInfoEvent("Partly done", PARTIAL_SUCCESS));
+        unit.append(createLogDebugEvent("Another debug message"));
+        unit.append(createLogInfoEvent("Retrying", RETRY));
+
+        verifyExactLogEvents(A(
+                A(INFO, "Debug message : Partly done", PARTIAL_SUCCESS),
+                A(INFO, "Another debug message : Retrying", RETRY)));
+    }
+
+    @Test
+    public void testSummaryPolicyLogsTheMarkedEventWithTheCount() {
+        AccumulatingAppender unit = getUnit(MarkerPolicy.createPolicy("SUCCESS", "flush_summary"));
+
+        unit.append(createLogDebugEvent("Debug message"));
+        unit.append(createLogDebugEvent("Another debug message"));
+        unit.append(createLogInfoEvent("Done", SUCCESS));
+
+        verifyExactLogEvents(INFO, "Done [2 events accumulated]", SUCCESS);
+    }
+
+    @Test
+    public void testDiscardPolicyDropsTheAccumulatedEvents() {
+        AccumulatingAppender unit = getUnit(MarkerPolicy.createPolicy("RETRY", "DISCARD"));
+
+        unit.append(createLogDebugEvent("Attempt 1"));
+        unit.append(createLogInfoEvent("Retrying", RETRY));
+        unit.append(createLogDebugEvent("Attempt 2"));
+        unit.append(createLogInfoEvent("Done", SUCCESS));
+
+        verifyExactLogEvents(INFO, "Attempt 2 : Done", SUCCESS);
+        assertThat(unit.getBufferedEventCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testEachAppenderCountsItsOwnEvents() {
+        AccumulatingAppender unit = getUnit("accuApp");
+        AccumulatingAppender other = getUnit("otherAccuApp");
+
+        unit.append(createLogDebugEvent("Debug message"));
+        unit.append(createLogDebugEvent("Another debug message"));
+        other.stop();
+
+        assertThat(unit.getBufferedEventCount(), equalTo(2L));
+        assertThat(other.getBufferedEventCount(), equalTo(0L));
+
+        unit.append(createLogInfoEvent("Done", SUCCESS));
+
+        verifyExactLogEvents(INFO, "Debug message : Another debug message : Done", SUCCESS);
+        assertThat(unit.getBufferedEventCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testEventsOfDeadThreadsAreTakenOffTheCount() throws InterruptedException {
+        AccumulatingAppender unit = getUnit();
+        Thread dead = new Thread(() -> {
+            unit.append(createLogDebugEvent("Never ended"));
+            unit.append(createLogDebugEvent("Also never ended"));
+        });
+
+        unit.append(createLogDebugEvent("Still running"));
+        dead.start();
+        dead.join();
+
+        assertThat(unit.getBufferedEventCount(), equalTo(1L));
+
+        unit.append(createLogInfoEvent("Done", SUCCESS));
+        verifyExactLogEvents(INFO, "Still running : Done", SUCCESS);
+        assertThat(unit.getBufferedEventCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testHandedOffEventsOfDeadThreadsAreDropped() throws InterruptedException {
+        AccumulatingAppender unit = getUnit();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread live = new Thread(() -> {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        live.start();
+        Thread dead = new Thread(() -> { });
+        dead.start();
+        dead.join();
+        Thread otherDead = new Thread(() -> { });
+        otherDead.start();
+        otherDead.join();
+
+        try {
+            unit.append(createHandedOffEvent("Still running", live.getId()));
+            unit.append(createHandedOffEvent("Never ended", dead.getId()));
+            unit.append(createHandedOffEvent("Also never ended", dead.getId()));
+            assertThat(unit.getBufferedEventCount(), equalTo(3L));
+
+            unit.append(createHandedOffEvent("Started", otherDead.getId()));
+            assertThat(unit.getBufferedEventCount(), equalTo(2L));
+
+            unit.append(createHandedOffEvent("Done", live.getId(), SUCCESS));
+            verifyExactLogEvents(INFO, "Still running : Done", SUCCESS);
+        } finally {
+            done.countDown();
+            live.join();
+        }
+    }
+
+    @Test
+    public void testCheckpointPolicyKeepsAccumulating() {
+        AccumulatingAppender unit = getUnit(MarkerPolicy.createPolicy("PARTIAL_SUCCESS", "CHECKPOINT"));
+
+        unit.append(createLogDebugEvent("Step 1"));
+        unit.append(createLogInfoEvent("Half way", PARTIAL_SUCCESS));
+        unit.append(createLogDebugEvent("Step 2"));
+        unit.append(createLogInfoEvent("Done", SUCCESS));
+
+        verifyExactLogEvents(A(
+                A(INFO, "Step 1 : Half way", PARTIAL_SUCCESS),
+                A(INFO, "Step 1 : Half way : Step 2 : Done", SUCCESS)));
+    }
+
+    @Test
+    public void testPassThroughPolicyLogsTheMarkedEventRightAway() {
+        AccumulatingAppender unit = getUnit(MarkerPolicy.createPolicy("AUDIT", "PASS_THROUGH"));
+        Marker audit = MarkerManager.getMarker("AUDIT");
+
+        unit.append(createLogDebugEvent("Debug message"));
+        unit.append(Log4jLogEvent.newBuilder().setLoggerName("Logger").setLevel(DEBUG).setMarker(audit)
+                .setMessage(new SimpleMessage("Audited")).build());
+        unit.append(createLogInfoEvent("Done", SUCCESS));
+
+        List<LogEvent> logEvents = captureLogEvents(mockAppender, 2);
+        assertThat(logEvents.get(0).getMessage().getFormattedMessage(), equalTo("Audited"));
+        assertThat(logEvents.get(1).getMessage().getFormattedMessage(), equalTo("Debug message : Audited : Done"));
+    }
+
+    @Test
+    public void testPolicyIsInheritedByDescendantMarkers() {
+        AccumulatingAppender unit = getUnit(MarkerPolicy.createPolicy("FAIL", "DISCARD"));
+
+        unit.append(createLogDebugEvent("Attempt 1"));
+        unit.append(createLogInfoEvent("Retrying", RETRY));
+
+        verifyNoLogEvents();
+    }
+
+    @Test
+    public void testInvalidPolicyIsIgnored() {
+        assertThat(MarkerPolicy.createPolicy("SUCCESS", "FLUSH_SOME"), is(nullValue()));
+        assertThat(MarkerPolicy.createPolicy(null, "DISCARD"), is(nullValue()));
+    }
+
     @Test
     public void testStartClearsPreviousLogEvents() {
         AccumulatingAppender unit = getUnit();
@@ -365,6 +551,30 @@ public class AccumulatingAppenderTest {
         verifyExactLogEvents(INFO, "Trace message 1 two : Debug message DEBUG : Warn message {} : Info message SUCCESS! : Fail message FAIL!", FAIL);
     }
 
+    @Test
+    public void testContextDataIsMergedIntoFlushedEvent() {
+        AccumulatingAppender unit = getUnit();
+
+        unit.append(createLogEvent("Info message 1", createContextData("a", "1", "b", "1")));
+        unit.append(createLogEvent("Info message 2", createContextData("a", "1", "b", "1")));
+        unit.append(createLogEvent("Info message 3", createContextData("b", "2", "c", "3"), SUCCESS));
+
+        LogEvent logEvent = captureLogEvents(mockAppender, 1).get(0);
+        assertThat(logEvent.getContextData().toMap(), equalTo(createContextData("a", "1", "b", "2", "c", "3").toMap()));
+        assertThat(((StringMap) logEvent.getContextData()).isFrozen(), is(true));
+    }
+
+    @Test
+    public void testContextStackIsPassedWithFlushedEvent() {
+        AccumulatingAppender unit = getUnit();
+
+        unit.append(createLogEvent("Info message 1", createContextStack("service")));
+        unit.append(createLogEvent("Info message 2", createContextStack("service", "dao"), SUCCESS));
+
+        LogEvent logEvent = captureLogEvents(mockAppender, 1).get(0);
+        assertThat(logEvent.getContextStack().asList(), contains("service", "dao"));
+    }
+
     private void verifyLogEvents(Level expLevel, String expMessage, Markers expMarker) {
         List<LogEvent> logEvents = captureLogEvents(mockAppender);
         assertThat(logEvents.size(), greaterThan(0));
@@ -575,6 +785,20 @@ public class AccumulatingAppenderTest {
                 .build();
     }
 
+    private Log4jLogEvent createHandedOffEvent(String message, long threadId) {
+        return createHandedOffEvent(message, threadId, null);
+    }
+
+    private Log4jLogEvent createHandedOffEvent(String message, long threadId, Markers marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Virtual Logger")
+                .setMessage(new SimpleMessage(message))
+                .setLevel(INFO)
+                .setMarker(marker)
+                .setThreadId(threadId)
+                .build();
+    }
+
     private Log4jLogEvent createLogEvent(String loggerName, Level level, String message, Object... arguments) {
         return Log4jLogEvent.newBuilder()
                 .setLoggerName(loggerName)
@@ -611,6 +835,46 @@ public class AccumulatingAppenderTest {
                 .build();
     }
 
+    private Log4jLogEvent createLogEvent(String message, StringMap contextData) {
+        return createLogEvent(message, contextData, null);
+    }
+
+    private Log4jLogEvent createLogEvent(String message, StringMap contextData, Markers marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Virtual Logger")
+                .setMessage(new SimpleMessage(message))
+                .setLevel(INFO)
+                .setMarker(marker)
+                .setContextData(contextData)
+                .build();
+    }
+
+    private Log4jLogEvent createLogEvent(String message, ThreadContext.ContextStack contextStack) {
+        return createLogEvent(message, contextStack, null);
+    }
+
+    private Log4jLogEvent createLogEvent(String message, ThreadContext.ContextStack contextStack, Markers marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Virtual Logger")
+                .setMessage(new SimpleMessage(message))
+                .setLevel(INFO)
+                .setMarker(marker)
+                .setContextStack(contextStack)
+                .build();
+    }
+
+    private static ThreadContext.ContextStack createContextStack(String... frames) {
+        return new MutableThreadContextStack(Arrays.asList(frames));
+    }
+
+    private static StringMap createContextData(String... keysAndValues) {
+        StringMap contextData = ContextDataFactory.createContextData();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            contextData.putValue(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return contextData;
+    }
+
     private AccumulatingAppender getUnit() {
         return getUnit("accuApp");
     }
@@ -629,10 +893,19 @@ public class AccumulatingAppenderTest {
 
     private AccumulatingAppender getUnit(
             String name, String passThroughLevel, String passExceptionThrough, String ignoreExceptions) {
+        return getUnit(name, passThroughLevel, passExceptionThrough, ignoreExceptions, null);
+    }
+
+    private AccumulatingAppender getUnit(MarkerPolicy... markerPolicies) {
+        return getUnit("accuApp", null, null, null, markerPolicies);
+    }
+
+    private AccumulatingAppender getUnit(String name, String passThroughLevel, String passExceptionThrough,
+                                         String ignoreExceptions, MarkerPolicy[] markerPolicies) {
         AccumulatingAppender unit = AccumulatingAppender.createAppender(
                 name, passThroughLevel, ignoreExceptions, passExceptionThrough,
                 new AppenderRef[] {AppenderRef.createAppenderRef(mockAppender.getName(), null, null)},
-                mockConfiguration, null, null);
+                mockConfiguration, null, null, markerPolicies, null);
 
         unit.start();
         return unit;
@@ -645,7 +918,11 @@ public class AccumulatingAppenderTest {
     }
 
     private Appender createMockAppender() {
-        Appender mockAppender = mock(Appender.class);
+        return createMockAppender(Appender.class);
+    }
+
+    private <T extends Appender> T createMockAppender(Class<T> type) {
+        T mockAppender = mock(type);
         when(mockAppender.getName()).thenReturn("mockAppender");
         when(mockAppender.ignoreExceptions()).thenReturn(true);
         when(mockAppender.isStarted()).thenReturn(true);
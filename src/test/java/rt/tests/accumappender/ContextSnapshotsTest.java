@@ -0,0 +1,105 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.spi.MutableThreadContextStack;
+import org.apache.logging.log4j.util.StringMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.logging.log4j.Level.INFO;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ContextSnapshotsTest {
+
+    @Test
+    public void testEqualContextDataIsSharedByAccumulatedEvents() {
+        List<LogEvent> logEvents = new ArrayList<>();
+
+        logEvents.add(ContextSnapshots.share(createLogEvent("one", createContextData("a", "1")), logEvents));
+        logEvents.add(ContextSnapshots.share(createLogEvent("two", createContextData("a", "1")), logEvents));
+        logEvents.add(ContextSnapshots.share(createLogEvent("three", createContextData("a", "2")), logEvents));
+
+        assertThat(logEvents.get(0).getContextData(), sameInstance(logEvents.get(1).getContextData()));
+        assertThat(((StringMap) logEvents.get(0).getContextData()).isFrozen(), is(true));
+        assertThat(logEvents.get(2).getContextData(), not(sameInstance(logEvents.get(1).getContextData())));
+        assertThat(logEvents.get(2).getContextData().getValue("a"), equalTo("2"));
+    }
+
+    @Test
+    public void testAccumulatedContextStacksShareCommonFrames() {
+        List<LogEvent> logEvents = new ArrayList<>();
+
+        logEvents.add(ContextSnapshots.share(createLogEvent("one", createContextStack("a", "b")), logEvents));
+        logEvents.add(ContextSnapshots.share(createLogEvent("two", createContextStack("a", "b", "c")), logEvents));
+        logEvents.add(ContextSnapshots.share(createLogEvent("three", createContextStack("a", "d")), logEvents));
+
+        LinkedContextStack first = (LinkedContextStack) logEvents.get(0).getContextStack();
+        LinkedContextStack second = (LinkedContextStack) logEvents.get(1).getContextStack();
+        LinkedContextStack third = (LinkedContextStack) logEvents.get(2).getContextStack();
+        assertThat(second.parent(), sameInstance(first));
+        assertThat(third.parent(), sameInstance(first.parent()));
+        assertThat(second.asList(), contains("a", "b", "c"));
+        assertThat(third.asList(), contains("a", "d"));
+        assertThat(third, equalTo(createContextStack("a", "d")));
+    }
+
+    @Test
+    public void testLogContextStacksAreAccumulatedAsTheyAre() {
+        List<LogEvent> logEvents = new ArrayList<>();
+        try {
+            LogContext.push("a");
+            LogContext.push("b");
+            logEvents.add(ContextSnapshots.share(createLogEvent("one", LogContext.getStack()), logEvents));
+            assertThat(LogContext.pop(), equalTo("b"));
+            LogContext.push("d");
+            logEvents.add(ContextSnapshots.share(createLogEvent("two", LogContext.getStack()), logEvents));
+        } finally {
+            LogContext.clear();
+        }
+
+        LinkedContextStack first = (LinkedContextStack) logEvents.get(0).getContextStack();
+        LinkedContextStack second = (LinkedContextStack) logEvents.get(1).getContextStack();
+        assertThat(second.parent(), sameInstance(first.parent()));
+        assertThat(first.asList(), contains("a", "b"));
+        assertThat(second.asList(), contains("a", "d"));
+        assertThat(LogContext.getStack(), is(nullValue()));
+    }
+
+    private static Log4jLogEvent createLogEvent(String message, StringMap contextData) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Virtual Logger")
+                .setMessage(new SimpleMessage(message))
+                .setLevel(INFO)
+                .setContextData(contextData)
+                .build();
+    }
+
+    private static Log4jLogEvent createLogEvent(String message, ThreadContext.ContextStack contextStack) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Virtual Logger")
+                .setMessage(new SimpleMessage(message))
+                .setLevel(INFO)
+                .setContextStack(contextStack)
+                .build();
+    }
+
+    private static ThreadContext.ContextStack createContextStack(String... frames) {
+        return new MutableThreadContextStack(Arrays.asList(frames));
+    }
+
+    private static StringMap createContextData(String... keysAndValues) {
+        StringMap contextData = ContextDataFactory.createContextData();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            contextData.putValue(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return contextData;
+    }
+}
@@ -3,9 +3,12 @@ package rt.tests.accumappender;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Filter.Result;
 import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.junit.Test;
+import rt.tests.logger.ExtLogBuilder;
 import rt.tests.logger.ExtLogger;
 
 import static org.apache.logging.log4j.Level.*;
@@ -65,6 +68,38 @@ public class ExtLoggerFilterTest {
         assertThat(unit.filter(createExtLogEvent(FATAL, FAIL, "Message {}")), equalTo(DENY));
     }
 
+    @Test
+    public void testEventsAreClassifiedByTheValueOfTheFqcn() {
+        ExtLoggerFilter unit = getUnit();
+
+        assertThat(unit.filter(createLogEvent(new String(ExtLogger.FQCN), INFO)), equalTo(NEUTRAL));
+        assertThat(unit.filter(createLogEvent(ExtLogBuilder.FQCN, INFO)), equalTo(NEUTRAL));
+        assertThat(unit.filter(createLogEvent("com.acme.OtherLogger", INFO)), equalTo(DENY));
+        assertThat(unit.filter(createLogEvent(ExtLogger.FQCN, INFO)), equalTo(NEUTRAL));
+        assertThat(unit.filter(createLogEvent(null, INFO)), equalTo(DENY));
+    }
+
+    @Test
+    public void testLoggersAreClassifiedByTheirClass() {
+        ExtLoggerFilter unit = getUnit();
+        Logger logger = LoggerContext.getContext(false).getLogger("ExtLoggerFilterTest");
+
+        assertThat(LoggerClassifier.isExtLoggerClass(ExtLogger.class), equalTo(true));
+        assertThat(LoggerClassifier.isExtLoggerClass(Logger.class), equalTo(false));
+        assertThat(LoggerClassifier.isExtLoggerClass(Logger.class), equalTo(false));
+        assertThat(unit.filter(logger, INFO, null, "Message {}", "value"), equalTo(DENY));
+        assertThat(getUnit(DENY, ACCEPT).filter(logger, INFO, null, "Message"), equalTo(ACCEPT));
+    }
+
+    private LogEvent createLogEvent(String fqcn, Level level) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLoggerFqcn(fqcn)
+                .setMessage(new ParameterizedMessage("Message"))
+                .setLevel(level)
+                .build();
+    }
+
     private LogEvent createExtLogEvent(Level level, Markers marker, String message, Object... arguments) {
         return Log4jLogEvent.newBuilder()
                 .setLoggerName("Logger")
@@ -0,0 +1,153 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.apache.logging.log4j.core.Filter.Result.DENY;
+import static org.apache.logging.log4j.core.Filter.Result.NEUTRAL;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+import static rt.tests.accumappender.Markers.RETRY;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class LoadSheddingFilterTest {
+
+    private AccumulatingAppender accumulatingAppender;
+    private Configuration mockConfiguration;
+
+    @Before
+    public void before() {
+        Appender mockAppender = mock(Appender.class);
+        when(mockAppender.getName()).thenReturn("mockAppender");
+        when(mockAppender.ignoreExceptions()).thenReturn(true);
+        when(mockAppender.isStarted()).thenReturn(true);
+        mockConfiguration = mock(Configuration.class);
+        when(mockConfiguration.getAppender("mockAppender")).thenReturn(mockAppender);
+        accumulatingAppender = AccumulatingAppender.createAppender("AccuAppender", null, null, null,
+                new AppenderRef[] {AppenderRef.createAppenderRef("mockAppender", null, null)},
+                mockConfiguration, null, null, null, null);
+        accumulatingAppender.start();
+        when(mockConfiguration.getAppender("AccuAppender")).thenReturn(accumulatingAppender);
+    }
+
+    @After
+    public void after() {
+        accumulatingAppender.stop();
+    }
+
+    @Test
+    public void testNothingIsDroppedWithoutPressure() {
+        LoadSheddingFilter unit = getUnit();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(unit.filter(createEvent(TRACE)), equalTo(NEUTRAL));
+        }
+        assertThat(unit.isShedding(), equalTo(false));
+        assertThat(unit.getMinimumLevel(), equalTo(ALL));
+    }
+
+    @Test
+    public void testMinimumLevelIsRaisedStepByStepUnderPressure() {
+        LoadSheddingFilter unit = getUnit();
+        accumulate(10);
+
+        unit.checkPressure();
+        assertThat(unit.getMinimumLevel(), equalTo(DEBUG));
+        assertThat(unit.filter(createEvent(TRACE)), equalTo(DENY));
+        assertThat(unit.filter(createEvent(DEBUG)), equalTo(NEUTRAL));
+
+        unit.checkPressure();
+        unit.checkPressure();
+        unit.checkPressure();
+        assertThat(unit.getMinimumLevel(), equalTo(WARN));
+        assertThat(unit.filter(createEvent(INFO)), equalTo(DENY));
+        assertThat(unit.filter(createEvent(WARN)), equalTo(NEUTRAL));
+        assertThat(unit.getShedEventCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testMinimumLevelStaysBetweenTheWatermarks() {
+        LoadSheddingFilter unit = getUnit();
+        accumulate(10);
+        unit.checkPressure();
+        unit.checkPressure();
+
+        accumulatingAppender.append(createEvent(INFO, SUCCESS));
+        accumulate(6);
+        unit.checkPressure();
+        assertThat(unit.getMinimumLevel(), equalTo(INFO));
+
+        accumulatingAppender.append(createEvent(INFO, SUCCESS));
+        unit.checkPressure();
+        assertThat(unit.getMinimumLevel(), equalTo(DEBUG));
+        unit.checkPressure();
+        assertThat(unit.getMinimumLevel(), equalTo(ALL));
+    }
+
+    @Test
+    public void testReleasingMarkersAreNeverDropped() {
+        LoadSheddingFilter unit = getUnit();
+        accumulate(10);
+        for (int i = 0; i < 3; i++) {
+            unit.checkPressure();
+        }
+
+        assertThat(unit.filter(createEvent(DEBUG, SUCCESS)), equalTo(NEUTRAL));
+        assertThat(unit.filter(createEvent(DEBUG, RETRY)), equalTo(NEUTRAL));
+        assertThat(unit.filter(createEvent(DEBUG)), equalTo(DENY));
+    }
+
+    @Test
+    public void testPressureIsCheckedEveryInterval() {
+        LoadSheddingFilter unit = getUnit();
+        accumulate(10);
+
+        for (int i = 0; i < 3; i++) {
+            unit.filter(createEvent(ERROR));
+        }
+        assertThat(unit.isShedding(), equalTo(false));
+        unit.filter(createEvent(ERROR));
+        assertThat(unit.isShedding(), equalTo(true));
+    }
+
+    private void accumulate(int count) {
+        for (int i = 0; i < count; i++) {
+            accumulatingAppender.append(createEvent(DEBUG));
+        }
+    }
+
+    private LoadSheddingFilter getUnit() {
+        LoadSheddingFilter filter = LoadSheddingFilter.newLoadSheddingFilterBuilder()
+                .setConfiguration(mockConfiguration)
+                .setAppender("AccuAppender")
+                .setHighWatermark(8)
+                .setLowWatermark(2)
+                .setCheckInterval(4)
+                .build();
+        filter.start();
+        return filter;
+    }
+
+    private LogEvent createEvent(Level level) {
+        return createEvent(level, null);
+    }
+
+    private LogEvent createEvent(Level level, Markers marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage("A message"))
+                .build();
+    }
+}
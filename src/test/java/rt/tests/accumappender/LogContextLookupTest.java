@@ -0,0 +1,164 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.junit.LoggerContextRule;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.test.appender.ListAppender;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LogContextLookupTest {
+
+    @ClassRule
+    public static LoggerContextRule init = new LoggerContextRule("log4j2-test5.xml");
+
+    private final LogContextLookup unit = new LogContextLookup();
+
+    @Before
+    public void before() {
+        init.getListAppender("List").clear();
+    }
+
+    @After
+    public void after() {
+        LogContext.clear();
+    }
+
+    @Test
+    public void testKeysOfTheConverterAreResolvedToSlotsWhenThePatternIsParsed() {
+        assertThat(LogContext.findKey("requestId"), is(notNullValue()));
+    }
+
+    @Test
+    public void testLookupWithoutEventGivesTheValueOfTheCurrentThread() {
+        assertThat(unit.lookup("requestId"), is(nullValue()));
+
+        LogContext.put("requestId", "R-9");
+
+        assertThat(unit.lookup("requestId"), equalTo("R-9"));
+    }
+
+    @Test
+    public void testValuesOfTheLoggingThreadAreLoggedForEveryEvent() {
+        Logger logger = LogManager.getLogger("com.acme.context");
+
+        LogContext.put("requestId", "R-1");
+        logger.info("First");
+        LogContext.put("requestId", "R-2");
+        LogContext.put("tenant", "acme");
+        logger.info("Second");
+        LogContext.clear();
+        logger.info("Third");
+
+        assertThat(init.getListAppender("List").getMessages(), contains(
+                "First [R-1] [none]\n", "Second [R-2] [acme]\n", "Third [] [none]\n"));
+    }
+
+    @Test
+    public void testValuesAreLookedUpByKeyOrByName() {
+        LogContext.Key key = LogContext.key("LogContextLookupTest.user");
+        key.set("joe");
+
+        assertThat(LogContextLookup.lookup(createEvent(), key), equalTo("joe"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.user"), equalTo("joe"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.unknown"), is(nullValue()));
+    }
+
+    @Test
+    public void testValuesOfEventsFromOtherThreadsAreTakenFromTheContextData() throws InterruptedException {
+        LogContext.key("LogContextLookupTest.order").set("on the logging thread");
+        SortedArrayStringMap contextData = new SortedArrayStringMap();
+        contextData.putValue("LogContextLookupTest.order", "O-1");
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setMessage(new SimpleMessage("A message"))
+                .setContextData(contextData)
+                .setThreadId(Thread.currentThread().getId() + 1000)
+                .build();
+
+        assertThat(unit.lookup(event, "LogContextLookupTest.order"), equalTo("O-1"));
+    }
+
+    @Test
+    public void testConstantValueIsComputedOnceUntilInvalidated() {
+        AtomicInteger calls = new AtomicInteger();
+        LogContextLookup.register("LogContextLookupTest.version", CachePolicy.CONSTANT,
+                () -> "v" + calls.incrementAndGet());
+
+        assertThat(calls.get(), equalTo(1));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.version"), equalTo("v1"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.version"), equalTo("v1"));
+
+        LogContextLookup.invalidate("LogContextLookupTest.version");
+
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.version"), equalTo("v2"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.version"), equalTo("v2"));
+    }
+
+    @Test
+    public void testValueComputedDuringAnInvalidationIsNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        LogContextLookup.register("LogContextLookupTest.build", CachePolicy.CONSTANT, () -> {
+            if (calls.incrementAndGet() == 2) {
+                LogContextLookup.invalidate("LogContextLookupTest.build");
+            }
+            return "b" + calls.get();
+        });
+
+        LogContextLookup.invalidate("LogContextLookupTest.build");
+
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.build"), equalTo("b2"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.build"), equalTo("b3"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.build"), equalTo("b3"));
+    }
+
+    @Test
+    public void testTtlValueIsComputedAgainWhenExpired() {
+        AtomicInteger calls = new AtomicInteger();
+        LogContextLookup.register("LogContextLookupTest.cached", CachePolicy.TTL, 1, TimeUnit.HOURS,
+                () -> "c" + calls.incrementAndGet());
+        LogContextLookup.register("LogContextLookupTest.expired", CachePolicy.TTL, 0, TimeUnit.NANOSECONDS,
+                () -> "e" + calls.incrementAndGet());
+
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.cached"), equalTo("c1"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.cached"), equalTo("c1"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.expired"), equalTo("e2"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.expired"), equalTo("e3"));
+
+        LogContextLookup.invalidateAll();
+
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.cached"), equalTo("c4"));
+    }
+
+    @Test
+    public void testPerEventValueIsComputedForEveryLookupUnlessSetOnTheThread() {
+        AtomicInteger calls = new AtomicInteger();
+        LogContextLookup.register("LogContextLookupTest.sequence", CachePolicy.PER_EVENT,
+                () -> "s" + calls.incrementAndGet());
+
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.sequence"), equalTo("s1"));
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.sequence"), equalTo("s2"));
+
+        LogContext.put("LogContextLookupTest.sequence", "set");
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.sequence"), equalTo("set"));
+
+        LogContextLookup.unregister("LogContextLookupTest.sequence");
+        LogContext.clear();
+        assertThat(unit.lookup(createEvent(), "LogContextLookupTest.sequence"), is(nullValue()));
+    }
+
+    private LogEvent createEvent() {
+        return Log4jLogEvent.newBuilder().setMessage(new SimpleMessage("A message")).build();
+    }
+}
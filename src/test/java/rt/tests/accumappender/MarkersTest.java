@@ -0,0 +1,95 @@
+package rt.tests.accumappender;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.Filter.Result;
+import org.apache.logging.log4j.core.filter.MarkerFilter;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.*;
+
+public class MarkersTest {
+
+    @Test
+    public void testMarkerIsAnInstanceOfItselfAndItsParents() {
+        assertThat(SUCCESS.isInstanceOf(SUCCESS), equalTo(true));
+        assertThat(PARTIAL_SUCCESS.isInstanceOf(SUCCESS), equalTo(true));
+        assertThat(PARTIAL_SUCCESS.isInstanceOf("SUCCESS"), equalTo(true));
+        assertThat(RETRY.isInstanceOf(FAIL), equalTo(true));
+
+        assertThat(SUCCESS.isInstanceOf(PARTIAL_SUCCESS), equalTo(false));
+        assertThat(RETRY.isInstanceOf(SUCCESS), equalTo(false));
+        assertThat(FAIL.isInstanceOf("UNKNOWN"), equalTo(false));
+        assertThat(SUCCESS.isInstanceOf(MarkerManager.getMarker("SUCCESS")), equalTo(false));
+    }
+
+    @Test
+    public void testEveryMarkerHasItsOwnBit() {
+        long bits = 0;
+        for (Markers marker : Markers.values()) {
+            assertThat(Long.bitCount(marker.bit()), equalTo(1));
+            assertThat(bits & marker.bit(), equalTo(0L));
+            bits |= marker.bit();
+        }
+    }
+
+    @Test
+    public void testParentsAreReported() {
+        assertThat(SUCCESS.hasParents(), equalTo(false));
+        assertThat(SUCCESS.getParents(), is(nullValue()));
+        assertThat(PARTIAL_SUCCESS.hasParents(), equalTo(true));
+        assertThat(PARTIAL_SUCCESS.getParents(), arrayContaining((Marker) SUCCESS));
+    }
+
+    @Test
+    public void testMaskMatchesDescendantsAndForeignChildren() {
+        Marker foreign = MarkerManager.getMarker("MarkersTest.PAYMENT_DONE").setParents(SUCCESS);
+
+        assertThat(Markers.isInstanceOfAny(PARTIAL_SUCCESS, SUCCESS.bit()), equalTo(true));
+        assertThat(Markers.isInstanceOfAny(RETRY, SUCCESS.bit() | FAIL.bit()), equalTo(true));
+        assertThat(Markers.isInstanceOfAny(RETRY, SUCCESS.bit()), equalTo(false));
+        assertThat(Markers.isInstanceOfAny(foreign, SUCCESS.bit()), equalTo(true));
+        assertThat(Markers.isInstanceOfAny(foreign, FAIL.bit()), equalTo(false));
+        assertThat(Markers.isInstanceOfAny(null, SUCCESS.bit()), equalTo(false));
+    }
+
+    @Test
+    public void testMarkerFilterMatchesDescendants() {
+        MarkerFilter filter = MarkerFilter.createFilter("FAIL", Result.ACCEPT, Result.DENY);
+
+        assertThat(filter.filter(createEvent(RETRY)), equalTo(Result.ACCEPT));
+        assertThat(filter.filter(createEvent(PARTIAL_SUCCESS)), equalTo(Result.DENY));
+    }
+
+    @Test
+    public void testCodesAreStable() {
+        // Stored in the binary logs, these must never change
+        assertThat(SUCCESS.code(), equalTo(1));
+        assertThat(FAIL.code(), equalTo(2));
+        assertThat(PARTIAL_SUCCESS.code(), equalTo(3));
+        assertThat(RETRY.code(), equalTo(4));
+        for (Markers marker : Markers.values()) {
+            assertThat(Markers.forCode(marker.code()), sameInstance(marker));
+        }
+        assertThat(Markers.forCode(0), is(nullValue()));
+        assertThat(Markers.forCode(255), is(nullValue()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHierarchyCannotBeChanged() {
+        SUCCESS.addParents(FAIL);
+    }
+
+    private Log4jLogEvent createEvent(Marker marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLevel(Level.INFO)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage("A message"))
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package rt.tests.accumappender.async;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MpscRingBufferTest {
+
+    @Test
+    public void testPublishedSlotsAreDrainedInOrder() {
+        MpscRingBuffer<long[]> unit = new MpscRingBuffer<>(4, () -> new long[1], WaitStrategy.create("BusySpin"));
+
+        for (int i = 0; i < 3; i++) {
+            long sequence = unit.next();
+            unit.get(sequence)[0] = i * 10;
+            unit.publish(sequence);
+        }
+
+        List<Long> values = new ArrayList<>();
+        List<Boolean> endOfBatch = new ArrayList<>();
+        int drained = unit.drain((slot, last) -> {
+            values.add(slot[0]);
+            endOfBatch.add(last);
+        });
+
+        assertThat(drained, equalTo(3));
+        assertThat(values.toString(), equalTo("[0, 10, 20]"));
+        assertThat(endOfBatch.toString(), equalTo("[false, false, true]"));
+        assertThat(unit.size(), equalTo(0L));
+    }
+
+    @Test
+    public void testUnpublishedSlotIsNotDrained() {
+        MpscRingBuffer<long[]> unit = new MpscRingBuffer<>(4, () -> new long[1], WaitStrategy.create("Yield"));
+
+        long first = unit.next();
+        long second = unit.next();
+        unit.publish(second);
+
+        assertThat(unit.drain((slot, last) -> { }), equalTo(0));
+
+        unit.publish(first);
+
+        assertThat(unit.drain((slot, last) -> { }), equalTo(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRingSizeMustBeAPowerOfTwo() {
+        new MpscRingBuffer<>(6, Object::new, WaitStrategy.create(null));
+    }
+
+    @Test
+    public void testNoSlotIsLostWithManyProducers() throws InterruptedException {
+        for (String strategy : new String[] {"Block", "Sleep", "Yield", "BusySpin"}) {
+            MpscRingBuffer<long[]> unit = new MpscRingBuffer<>(256, () -> new long[1], WaitStrategy.create(strategy));
+            AtomicLong sum = new AtomicLong();
+            AtomicLong count = new AtomicLong();
+            int producers = 4;
+            int perProducer = 10_000;
+
+            Thread consumer = new Thread(() -> unit.consume((slot, last) -> {
+                sum.addAndGet(slot[0]);
+                count.incrementAndGet();
+            }, () -> count.get() < producers * perProducer));
+            consumer.start();
+
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 1; i <= perProducer; i++) {
+                        long sequence = unit.next();
+                        unit.get(sequence)[0] = i;
+                        unit.publish(sequence);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            consumer.join(10_000);
+
+            assertThat(strategy, count.get(), equalTo((long) producers * perProducer));
+            assertThat(strategy, sum.get(), equalTo(producers * (perProducer * (perProducer + 1L) / 2)));
+        }
+    }
+}
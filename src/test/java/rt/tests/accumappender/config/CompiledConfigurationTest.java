@@ -0,0 +1,127 @@
+package rt.tests.accumappender.config;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.ConsoleAppender;
+import org.apache.logging.log4j.core.appender.FileAppender;
+import org.apache.logging.log4j.core.config.ConfigurationException;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rt.tests.accumappender.AccumulatingAppender;
+import rt.tests.accumappender.ExtLoggerConfig;
+import rt.tests.accumappender.ExtLoggerFilter;
+import rt.tests.accumappender.NoExtLoggerFilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CompiledConfigurationTest {
+
+    private static final String XML = "<Configuration name=\"compiled\" status=\"WARN\">"
+            + "<Properties><Property name=\"dir\">%s</Property></Properties>"
+            + "<Appenders>"
+            + "<Console name=\"Console\" target=\"SYSTEM_OUT\"><PatternLayout pattern=\"%%p %%m%%n\"/></Console>"
+            + "<File name=\"File\" fileName=\"${dir}/app.log\">"
+            + "<PatternLayout><Pattern>%%d %%p %%m%%n</Pattern></PatternLayout>"
+            + "</File>"
+            + "<Accumulating name=\"AccuAppender\"><AppenderRef ref=\"File\"/></Accumulating>"
+            + "</Appenders>"
+            + "<Loggers>"
+            + "<Logger name=\"rt.tests\" level=\"info\" additivity=\"false\">"
+            + "<AppenderRef ref=\"Console\"><NoExtLoggerFilter/></AppenderRef>"
+            + "<AppenderRef ref=\"AccuAppender\"><ExtLoggerFilter onMismatch=\"NEUTRAL\"/></AppenderRef>"
+            + "</Logger>"
+            + "<ExtLogger name=\"rt.tests.ext\" level=\"debug\"><AppenderRef ref=\"File\"/></ExtLogger>"
+            + "<Root level=\"warn\"><AppenderRef ref=\"Console\"/></Root>"
+            + "</Loggers>"
+            + "</Configuration>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTheCompiledTopologyMatchesTheXml() throws IOException {
+        CompiledConfiguration unit = getUnit(String.format(XML, folder.getRoot().getPath()));
+
+        assertThat(unit.getName(), equalTo("compiled"));
+        assertThat(unit.getAppenders().keySet(), containsInAnyOrder("Console", "File", "AccuAppender"));
+        assertThat(unit.getAppender("Console"), instanceOf(ConsoleAppender.class));
+        assertThat(unit.getAppender("Console").getLayout(), instanceOf(PatternLayout.class));
+        assertThat(((PatternLayout) unit.getAppender("Console").getLayout()).getConversionPattern(), equalTo("%p %m%n"));
+        assertThat(((FileAppender) unit.getAppender("File")).getFileName(),
+                equalTo(new File(folder.getRoot(), "app.log").getPath()));
+        assertThat(((PatternLayout) unit.getAppender("File").getLayout()).getConversionPattern(),
+                equalTo("%d %p %m%n"));
+        assertThat(unit.getAppender("AccuAppender"), instanceOf(AccumulatingAppender.class));
+
+        LoggerConfig logger = unit.getLoggers().get("rt.tests");
+        assertThat(logger.getLevel(), equalTo(Level.INFO));
+        assertThat(logger.isAdditive(), equalTo(false));
+        assertThat(logger.getAppenders().keySet(), containsInAnyOrder("Console", "AccuAppender"));
+        assertThat(logger.getAppenderRefs().get(0).getFilter(), instanceOf(NoExtLoggerFilter.class));
+        assertThat(logger.getAppenderRefs().get(1).getFilter(), instanceOf(ExtLoggerFilter.class));
+        assertThat(((ExtLoggerFilter) logger.getAppenderRefs().get(1).getFilter()).getOnMismatch(),
+                equalTo(Filter.Result.NEUTRAL));
+
+        LoggerConfig extLogger = unit.getLoggerConfig("rt.tests.ext.Service");
+        assertThat(extLogger, instanceOf(ExtLoggerConfig.class));
+        assertThat(extLogger.getParent(), sameInstance(logger));
+        assertThat(extLogger.getAppenders().keySet(), contains("File"));
+
+        assertThat(unit.getRootLogger().getLevel(), equalTo(Level.WARN));
+        assertThat(unit.getRootLogger().getAppenders().keySet(), contains("Console"));
+        unit.stop();
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testUnsupportedElementsFailTheCompilation() throws IOException {
+        compile("<Configuration><Appenders><Socket name=\"Socket\" host=\"localhost\"/></Appenders></Configuration>");
+    }
+
+    @Test
+    public void testUnsupportedAttributesFailTheCompilation() throws IOException {
+        String[] unsupported = {
+                "<Configuration monitorInterval=\"30\"/>",
+                "<Configuration packages=\"com.acme\"/>",
+                "<Configuration><Appenders><Console name=\"Console\"><PatternLayout charset=\"UTF-16\"/></Console>"
+                        + "</Appenders></Configuration>",
+                "<Configuration><Appenders><Console name=\"Console\"><PatternLayout header=\"Start\"/></Console>"
+                        + "</Appenders></Configuration>",
+                "<Configuration><Appenders><File name=\"File\" fileName=\"app.log\" createOnDemand=\"true\"/>"
+                        + "</Appenders></Configuration>"};
+        for (String xml : unsupported) {
+            try {
+                compile(xml);
+                fail("Compiled " + xml);
+            } catch (ConfigurationException e) {
+                assertThat(e.getMessage(), containsString("is not supported by compiled configurations"));
+            }
+        }
+    }
+
+    private static CompiledConfiguration getUnit(String xml) throws IOException {
+        CompiledConfiguration configuration = new CompiledConfiguration(new LoggerContext("compiled"),
+                new ConfigurationSource(new ByteArrayInputStream(compile(xml))));
+        configuration.initialize();
+        configuration.start();
+        return configuration;
+    }
+
+    private static byte[] compile(String xml) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigurationCompiler.compile(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toByteArray();
+    }
+}
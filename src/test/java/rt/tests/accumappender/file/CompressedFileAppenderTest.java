@@ -0,0 +1,242 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.FAIL;
+
+public class CompressedFileAppenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTransactionsAreCompressed() throws IOException {
+        File file = new File(folder.getRoot(), "fail.log.gz");
+        CompressedFileAppender unit = getUnit(file, "256KB");
+
+        for (int i = 0; i < 100; i++) {
+            appendTransaction(unit, i);
+        }
+        unit.append(createEvent(WARN, "Passed through", null));
+        unit.stop();
+
+        List<String> lines = read(file);
+        assertThat(lines.size(), equalTo(201));
+        assertThat(lines.get(0), equalTo("DEBUG Started 0"));
+        assertThat(lines.get(199), equalTo("ERROR Failed 99"));
+        assertThat(lines.get(200), equalTo("WARN Passed through"));
+        assertThat(unit.getFrameCount(), equalTo(1L));
+        assertThat(file.length(), lessThan(201L * 10));
+    }
+
+    @Test
+    public void testFramesHoldWholeTransactions() throws IOException {
+        File file = new File(folder.getRoot(), "fail.log.gz");
+        CompressedFileAppender unit = getUnit(file, "1");
+
+        for (int i = 0; i < 10; i++) {
+            appendTransaction(unit, i);
+        }
+        unit.stop();
+
+        assertThat(unit.getFrameCount(), equalTo(10L));
+        assertThat(read(file).size(), equalTo(20));
+    }
+
+    @Test
+    public void testAnExistingFileIsAppendedTo() throws IOException {
+        File file = new File(folder.getRoot(), "fail.log.gz");
+        CompressedFileAppender unit = getUnit(file, "256KB");
+        appendTransaction(unit, 1);
+        unit.stop();
+
+        unit = getUnit(file, "256KB");
+        appendTransaction(unit, 2);
+        unit.stop();
+
+        assertThat(read(file), contains("DEBUG Started 1", "ERROR Failed 1", "DEBUG Started 2", "ERROR Failed 2"));
+    }
+
+    @Test
+    public void testAFrameWhichCouldNotBeWrittenIsTruncated() throws Exception {
+        File file = new File(folder.getRoot(), "fail.log.gz");
+        FailingFileOutputStream out = new FailingFileOutputStream(file);
+        CompressedFileAppender unit = getUnit(file, out, 16);
+
+        appendTransaction(unit, 1);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (unit.getFrameCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // The gzip header goes through, the rest of the frame fails
+        out.budget.set(12);
+        appendTransaction(unit, 2);
+        while (out.failures.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        out.budget.set(Long.MAX_VALUE);
+        appendTransaction(unit, 3);
+        unit.stop();
+
+        assertThat(out.failures.get(), greaterThan(0));
+        assertThat(unit.getFrameCount(), equalTo(2L));
+        assertThat(read(file), contains("DEBUG Started 1", "ERROR Failed 1", "DEBUG Started 3", "ERROR Failed 3"));
+    }
+
+    @Test
+    public void testAppendersOfTheSameFileShareIt() throws IOException {
+        File file = new File(folder.getRoot(), "fail.log.gz");
+        CompressedFileAppender old = getUnit(file, "256KB");
+        appendTransaction(old, 1);
+
+        // Reconfiguration: the new appender starts before the old one stops
+        CompressedFileAppender unit = getUnit(file, "256KB");
+        appendTransaction(unit, 2);
+        old.stop();
+        unit.stop();
+
+        assertThat(read(file), contains("DEBUG Started 1", "ERROR Failed 1", "DEBUG Started 2", "ERROR Failed 2"));
+    }
+
+    @Test
+    public void testTheCompressorSurvivesARuntimeException() throws Exception {
+        File file = new File(folder.getRoot(), "fail.log.gz");
+        FailingFileOutputStream out = new FailingFileOutputStream(file);
+        CompressedFileAppender unit = getUnit(file, out, 16);
+
+        out.runtimeFailures.set(1);
+        appendTransaction(unit, 1);
+        appendTransaction(unit, 2);
+        unit.stop();
+
+        assertThat(out.failures.get(), equalTo(1));
+        assertThat(read(file), contains("DEBUG Started 2", "ERROR Failed 2"));
+    }
+
+    @Test
+    public void testStopDoesNotWaitForAFullQueueBeyondItsTimeout() throws Exception {
+        File file = new File(folder.getRoot(), "fail.log.gz");
+        FailingFileOutputStream out = new FailingFileOutputStream(file);
+        out.release = new CountDownLatch(1);
+        CompressedFileAppender unit = getUnit(file, out, 1);
+
+        appendTransaction(unit, 1);
+        assertThat(out.blocked.await(10, TimeUnit.SECONDS), equalTo(true));
+        appendTransaction(unit, 2);
+        long start = System.nanoTime();
+        unit.stop(200, TimeUnit.MILLISECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        out.release.countDown();
+
+        assertThat(elapsed, lessThan(5_000L));
+        assertThat(unit.isStopped(), equalTo(true));
+    }
+
+    private static final class FailingFileOutputStream extends FileOutputStream {
+
+        final AtomicLong budget = new AtomicLong(Long.MAX_VALUE);
+        final AtomicInteger runtimeFailures = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        volatile CountDownLatch release;
+
+        FailingFileOutputStream(File file) throws IOException {
+            super(file, true);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (release != null) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (runtimeFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                failures.incrementAndGet();
+                throw new IllegalStateException("Broken stream");
+            }
+            if (budget.addAndGet(-len) < 0) {
+                int allowed = (int) Math.max(0, len + budget.getAndSet(0));
+                super.write(b, off, allowed);
+                failures.incrementAndGet();
+                throw new IOException("Disk full");
+            }
+            super.write(b, off, len);
+        }
+    }
+
+    private static void appendTransaction(CompressedFileAppender unit, int number) {
+        LogEvent flushEvent = createEvent(ERROR, "Failed " + number, FAIL);
+        unit.appendTransaction(flushEvent, Arrays.asList(createEvent(DEBUG, "Started " + number, null), flushEvent));
+    }
+
+    private static List<String> read(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private CompressedFileAppender getUnit(File file, FailingFileOutputStream out, int queueSize) {
+        CompressedFileAppender unit = new CompressedFileAppender("CompressedFile",
+                PatternLayout.newBuilder().withPattern("%p %m%n").build(), null, false,
+                new CompressedFileManager(file.getPath(), out), queueSize, true, 1, 60000);
+        unit.start();
+        return unit;
+    }
+
+    private CompressedFileAppender getUnit(File file, String frameSize) {
+        CompressedFileAppender unit = CompressedFileAppender.newBuilder()
+                .setFileName(file.getPath())
+                .setFrameSize(frameSize)
+                .setFlushInterval(60000)
+                .withName("CompressedFile")
+                .withLayout(PatternLayout.newBuilder().withPattern("%p %m%n").build())
+                .build();
+        unit.start();
+        return unit;
+    }
+
+    private static Log4jLogEvent createEvent(Level level, String message, Marker marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+}
@@ -0,0 +1,231 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+import static rt.tests.accumappender.Markers.FAIL;
+
+public class GroupCommitAppenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTransactionEventsAreWrittenTogether() throws IOException {
+        File file = new File(folder.getRoot(), "transactions.log");
+        GroupCommitAppender unit = getUnit(file);
+
+        LogEvent flushEvent = createEvent(ERROR, "Failed", FAIL);
+        unit.appendTransaction(flushEvent, Arrays.asList(createEvent(DEBUG, "Started", null), flushEvent));
+        unit.append(createEvent(WARN, "Passed through", null));
+        unit.stop();
+
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8),
+                contains("DEBUG Started", "ERROR Failed", "WARN Passed through"));
+        assertThat(unit.getCommitCount(), equalTo(2L));
+        assertThat(unit.getBatchCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testConcurrentTransactionsAreAllWrittenWhole() throws Exception {
+        File file = new File(folder.getRoot(), "transactions.log");
+        GroupCommitAppender unit = getUnit(file);
+        int threads = 8;
+        int transactions = 200;
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = "worker-" + t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < transactions; i++) {
+                    LogEvent flushEvent = createEvent(ERROR, name + " failed " + i, FAIL);
+                    unit.appendTransaction(flushEvent,
+                            Arrays.asList(createEvent(DEBUG, name + " started " + i, null), flushEvent));
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        unit.stop();
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines.size(), equalTo(threads * transactions * 2));
+        Set<String> distinct = new HashSet<>();
+        for (int i = 0; i < lines.size(); i += 2) {
+            String started = lines.get(i);
+            String failed = lines.get(i + 1);
+            assertThat(failed, equalTo(started.replace("DEBUG", "ERROR").replace("started", "failed")));
+            distinct.add(started);
+        }
+        assertThat(distinct.size(), equalTo(threads * transactions));
+        assertThat(unit.getCommitCount(), equalTo((long) threads * transactions));
+        assertThat(unit.getBatchCount(), lessThanOrEqualTo(unit.getCommitCount()));
+    }
+
+    @Test
+    public void testAnInterruptedWaiterWithdrawsItsTransaction() throws Exception {
+        CountDownLatch firstWrite = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StringBuilder written = new StringBuilder();
+        GroupCommitAppender unit = getUnit(mockChannel(written, firstWrite, release, false, false));
+
+        Thread leader = new Thread(() -> unit.append(createEvent(INFO, "Leader", null)));
+        leader.start();
+        firstWrite.await();
+        List<Exception> failures = new ArrayList<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                unit.append(createEvent(INFO, "Interrupted", null));
+            } catch (AppenderLoggingException e) {
+                if (Thread.interrupted()) {
+                    failures.add(e);
+                }
+            }
+            unit.append(createEvent(INFO, "Waiter", null));
+        });
+        waiter.start();
+        awaitWaiting(waiter);
+        waiter.interrupt();
+        // Waiting again, for its second transaction
+        Thread.sleep(50);
+        awaitWaiting(waiter);
+        release.countDown();
+        leader.join();
+        waiter.join();
+
+        assertThat(failures, hasSize(1));
+        assertThat(written.toString(), equalTo("INFO Leader\nINFO Waiter\n"));
+    }
+
+    @Test
+    public void testEveryFailedBatchReportsItsFailure() throws Exception {
+        CountDownLatch firstWrite = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommitAppender unit = getUnit(mockChannel(new StringBuilder(), firstWrite, release, true, true));
+
+        List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String message = "Append " + i;
+            Thread thread = new Thread(() -> {
+                try {
+                    unit.append(createEvent(INFO, message, null));
+                } catch (AppenderLoggingException e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            if (i == 0) {
+                firstWrite.await();
+            } else {
+                awaitWaiting(thread);
+            }
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(failures, hasSize(3));
+    }
+
+    private static FileChannel mockChannel(StringBuilder written, CountDownLatch firstWrite, CountDownLatch release,
+                                           boolean failFirst, boolean failNext) throws IOException {
+        FileChannel channel = mock(FileChannel.class);
+        AtomicInteger writes = new AtomicInteger();
+        when(channel.write(Mockito.any(ByteBuffer[].class), anyInt(), anyInt())).thenAnswer(invocation -> {
+            boolean first = writes.getAndIncrement() == 0;
+            if (first) {
+                firstWrite.countDown();
+                release.await();
+            }
+            if (first ? failFirst : failNext) {
+                throw new IOException("Disk full");
+            }
+            ByteBuffer[] buffers = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int length = invocation.getArgument(2);
+            long count = 0;
+            for (int i = offset; i < offset + length; i++) {
+                count += buffers[i].remaining();
+                synchronized (written) {
+                    written.append(StandardCharsets.UTF_8.decode(buffers[i]));
+                }
+            }
+            return count;
+        });
+        return channel;
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private GroupCommitAppender getUnit(FileChannel channel) {
+        GroupCommitAppender unit = new GroupCommitAppender("GroupCommitFile",
+                PatternLayout.newBuilder().withPattern("%p %m%n").build(), null, false, "mocked.log", channel, false);
+        unit.start();
+        return unit;
+    }
+
+    private GroupCommitAppender getUnit(File file) {
+        GroupCommitAppender unit = GroupCommitAppender.newBuilder()
+                .setFileName(file.getPath())
+                .withName("GroupCommitFile")
+                .withLayout(PatternLayout.newBuilder().withPattern("%p %m%n").build())
+                .build();
+        unit.start();
+        return unit;
+    }
+
+    private static Log4jLogEvent createEvent(Level level, String message, Marker marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+}
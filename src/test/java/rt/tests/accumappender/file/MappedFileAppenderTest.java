@@ -0,0 +1,120 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.FAIL;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class MappedFileAppenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEventsAreWrittenAcrossSegments() throws IOException {
+        File file = new File(folder.getRoot(), "mapped.log");
+        MappedFileAppender unit = getUnit(file, "16", false);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            unit.append(createEvent(INFO, "Message number " + i, null));
+            expected.append("INFO Message number ").append(i).append('\n');
+        }
+        assertThat(unit.getPosition(), equalTo((long) expected.length()));
+        unit.stop();
+
+        assertThat(read(file), equalTo(expected.toString()));
+    }
+
+    @Test
+    public void testExistingFileIsAppendedTo() throws IOException {
+        File file = new File(folder.getRoot(), "mapped.log");
+        Files.write(file.toPath(), "Existing\n".getBytes(StandardCharsets.UTF_8));
+
+        MappedFileAppender unit = getUnit(file, "1KB", false);
+        unit.append(createEvent(WARN, "Appended", null));
+        unit.stop();
+
+        assertThat(read(file), equalTo("Existing\nWARN Appended\n"));
+    }
+
+    @Test
+    public void testZerosLeftByACrashAreSkipped() throws IOException {
+        File file = new File(folder.getRoot(), "mapped.log");
+        Files.write(file.toPath(), Arrays.copyOf("Existing\n".getBytes(StandardCharsets.UTF_8), 100_000));
+
+        MappedFileAppender unit = getUnit(file, "1KB", false);
+        unit.append(createEvent(WARN, "Appended", null));
+        unit.stop();
+
+        assertThat(read(file), equalTo("Existing\nWARN Appended\n"));
+    }
+
+    @Test
+    public void testAppendersOfTheSameFileShareIt() throws IOException {
+        File file = new File(folder.getRoot(), "mapped.log");
+        MappedFileAppender old = getUnit(file, "1KB", false);
+        old.append(createEvent(INFO, "Old", null));
+
+        // Reconfiguration: the new appender starts before the old one stops
+        MappedFileAppender unit = getUnit(file, "1KB", false);
+        old.stop();
+        unit.append(createEvent(INFO, "New", null));
+        unit.stop();
+
+        assertThat(read(file), equalTo("INFO Old\nINFO New\n"));
+    }
+
+    @Test
+    public void testFileIsForcedAtTheEndOfTransactions() throws IOException {
+        MappedFileAppender unit = getUnit(new File(folder.getRoot(), "mapped.log"), "1KB", true);
+
+        unit.append(createEvent(INFO, "Passed through", null));
+        unit.append(createEvent(INFO, "Succeeded", SUCCESS));
+        unit.append(createEvent(ERROR, "Failed", FAIL));
+        unit.stop();
+
+        assertThat(unit.getForceCount(), equalTo(2L));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private MappedFileAppender getUnit(File file, String segmentSize, boolean forceOnTransactionEnd) {
+        MappedFileAppender unit = MappedFileAppender.newBuilder()
+                .setFileName(file.getPath())
+                .setSegmentSize(segmentSize)
+                .setForceOnTransactionEnd(forceOnTransactionEnd)
+                .withName("MappedFile")
+                .withLayout(PatternLayout.newBuilder().withPattern("%p %m%n").build())
+                .build();
+        unit.start();
+        return unit;
+    }
+
+    private static Log4jLogEvent createEvent(Level level, String message, Marker marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+}
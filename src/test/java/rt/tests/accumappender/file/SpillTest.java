@@ -0,0 +1,154 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class SpillTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUnflushedEventsAreRecovered() throws IOException {
+        Spill unit = new Spill(folder.getRoot().getPath(), 4096);
+        unit.append(createEvent(1, "main", DEBUG, "Flushed", null), false);
+        unit.append(createEvent(1, "main", INFO, "Done", SUCCESS), false);
+        unit.reset(1, false);
+        unit.append(createEvent(1, "main", DEBUG, "Started", null), false);
+        unit.append(createEvent(1, "main", WARN, "Out of memory soon", null), false);
+        unit.append(createEvent(2, "worker", DEBUG, "Handed off", null), true);
+
+        File recovered = SpillRecovery.recover(folder.getRoot().toPath(), null);
+
+        String text = new String(Files.readAllBytes(recovered.toPath()), StandardCharsets.UTF_8);
+        assertThat(text, containsString("Unflushed transaction of thread 1 in "));
+        assertThat(text, containsString("DEBUG [main] Logger - Started"));
+        assertThat(text, containsString("WARN [main] Logger - Out of memory soon"));
+        assertThat(text, containsString("Unflushed transaction of thread 2 in "));
+        assertThat(text, containsString("DEBUG [worker] Logger - Handed off"));
+        assertThat(text, not(containsString("Flushed")));
+        assertThat(folder.getRoot().list((dir, name) -> name.endsWith(".spill")), emptyArray());
+    }
+
+    @Test
+    public void testFlushedTransactionsLeaveNothingToRecover() throws IOException {
+        Spill unit = new Spill(folder.getRoot().getPath(), 4096);
+        unit.append(createEvent(1, "main", DEBUG, "Started", null), false);
+        unit.append(createEvent(1, "main", INFO, "Done", SUCCESS), false);
+        unit.reset(1, false);
+
+        assertThat(SpillRecovery.recover(folder.getRoot().toPath(), null), is(nullValue()));
+    }
+
+    @Test
+    public void testEventsBeyondTheSizeAreCountedAsDropped() throws IOException {
+        Spill unit = new Spill(folder.getRoot().getPath(), 128);
+        for (int i = 0; i < 10; i++) {
+            unit.append(createEvent(1, "main", DEBUG, "Event number " + i, null), false);
+        }
+
+        File recovered = SpillRecovery.recover(folder.getRoot().toPath(), null);
+
+        String text = new String(Files.readAllBytes(recovered.toPath()), StandardCharsets.UTF_8);
+        assertThat(text, containsString("Event number 0"));
+        assertThat(text, containsString("more dropped"));
+        assertThat(text, not(containsString("Event number 9")));
+    }
+
+    @Test
+    public void testClosingDeletesTheSpillFiles() {
+        Spill unit = new Spill(folder.getRoot().getPath(), 4096);
+        unit.append(createEvent(1, "main", DEBUG, "Started", null), false);
+        assertThat(spillFiles(), arrayWithSize(1));
+
+        unit.close();
+
+        assertThat(spillFiles(), emptyArray());
+    }
+
+    @Test
+    public void testTheFilesOfTheCurrentProcessAreNotRecoveredOnStart() {
+        Spill running = new Spill(folder.getRoot().getPath(), 4096);
+        running.append(createEvent(1, "main", DEBUG, "Started", null), false);
+
+        assertThat(new Spill(folder.getRoot().getPath(), 4096).recover(), is(nullValue()));
+        assertThat(spillFiles(), arrayWithSize(1));
+    }
+
+    @Test
+    public void testTheFilesOfALiveProcessAreNotRecovered() throws IOException {
+        Files.write(new File(folder.getRoot(), "0live-1-1.spill").toPath(), new byte[0]);
+        try (FileChannel channel = FileChannel.open(new File(folder.getRoot(), "0live.lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+
+            assertThat(new Spill(folder.getRoot().getPath(), 4096).recover(), is(nullValue()));
+        }
+        assertThat(spillFiles(), arrayContaining("0live-1-1.spill"));
+    }
+
+    @Test
+    public void testTheFilesOfADeadProcessAreRecoveredWhateverItsProcessId() throws IOException {
+        // A process restarted in a container has the same process id, but another run id
+        Spill crashed = new Spill(folder.getRoot().getPath(), 4096);
+        crashed.append(createEvent(1, "main", WARN, "Crashed", null), false);
+        File spillFile = new File(folder.getRoot(), spillFiles()[0]);
+        assertThat(spillFile.renameTo(new File(folder.getRoot(), "0dead-1-1.spill")), is(true));
+        Files.write(new File(folder.getRoot(), "0dead.lock").toPath(), new byte[0]);
+
+        File recovered = new Spill(folder.getRoot().getPath(), 4096).recover();
+
+        assertThat(new String(Files.readAllBytes(recovered.toPath()), StandardCharsets.UTF_8),
+                containsString("WARN [main] Logger - Crashed"));
+        assertThat(spillFiles(), emptyArray());
+        assertThat(new File(folder.getRoot(), "0dead.lock").exists(), is(false));
+    }
+
+    @Test
+    public void testTheFilesOfDeadThreadsAreDeleted() throws InterruptedException {
+        Spill unit = new Spill(folder.getRoot().getPath(), 4096);
+        Thread thread = new Thread(() -> unit.append(createEvent(Thread.currentThread().getId(), "worker", DEBUG,
+                "Started", null), false));
+        thread.start();
+        thread.join();
+        assertThat(spillFiles(), arrayWithSize(1));
+
+        unit.append(createEvent(Thread.currentThread().getId(), "main", DEBUG, "Started", null), false);
+
+        assertThat(spillFiles(), arrayContaining(endsWith("-" + Thread.currentThread().getId() + ".spill")));
+    }
+
+    private String[] spillFiles() {
+        return folder.getRoot().list((dir, name) -> name.endsWith(".spill"));
+    }
+
+    private static Log4jLogEvent createEvent(long threadId, String threadName, Level level, String message,
+                                             Marker marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .setThreadId(threadId)
+                .setThreadName(threadName)
+                .build();
+    }
+}
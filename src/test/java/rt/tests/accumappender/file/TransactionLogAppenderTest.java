@@ -0,0 +1,182 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.StringMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.FAIL;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class TransactionLogAppenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTransactionsAreReadBack() throws IOException {
+        File file = new File(folder.getRoot(), "transactions.bin");
+        TransactionLogAppender unit = getUnit(file);
+
+        StringMap contextData = ContextDataFactory.createContextData();
+        contextData.putValue("requestId", "42");
+        LogEvent first = createEvent(1000, DEBUG, null, "Started", "main", null);
+        LogEvent second = createEvent(1003, WARN, null, "Slow", "worker", contextData);
+        LogEvent flush = createEvent(998, ERROR, FAIL, "Failed", "main", null);
+        unit.appendTransaction(flush, Arrays.asList(first, second, flush));
+        unit.append(createEvent(2000, INFO, SUCCESS, "Passed through", "main", null));
+        unit.stop();
+
+        try (TransactionDecoder decoder = new TransactionDecoder(new FileInputStream(file))) {
+            TransactionRecord record = decoder.next();
+            assertThat(record.getEvents().size(), equalTo(3));
+            verifyEvent(record.getEvents().get(0), 1000, "DEBUG", null, "Started", "main");
+            verifyEvent(record.getEvents().get(1), 1003, "WARN", null, "Slow", "worker");
+            verifyEvent(record.getFlushEvent(), 998, "ERROR", "FAIL", "Failed", "main");
+            assertThat(record.getEvents().get(1).getContextData(), equalTo(Collections.singletonMap("requestId", "42")));
+
+            record = decoder.next();
+            assertThat(record.getEvents().size(), equalTo(1));
+            verifyEvent(record.getFlushEvent(), 2000, "INFO", "SUCCESS", "Passed through", "main");
+
+            assertThat(decoder.next(), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testCustomLevelsMarkersAndStackTracesAreKept() throws IOException {
+        File file = new File(folder.getRoot(), "transactions.bin");
+        TransactionLogAppender unit = getUnit(file);
+
+        Log4jLogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(Level.forName("NOTICE", 450))
+                .setMarker(MarkerManager.getMarker("AUDIT"))
+                .setMessage(new SimpleMessage("Noticed"))
+                .setThrown(new IllegalStateException("Broken"))
+                .setTimeMillis(1000)
+                .build();
+        unit.append(event);
+        unit.stop();
+
+        try (TransactionDecoder decoder = new TransactionDecoder(new FileInputStream(file))) {
+            TransactionRecord.Event decoded = decoder.next().getFlushEvent();
+            assertThat(decoded.getLevel(), equalTo("NOTICE"));
+            assertThat(decoded.getMarker(), equalTo("AUDIT"));
+            assertThat(decoded.getThrown(), startsWith("java.lang.IllegalStateException: Broken"));
+        }
+    }
+
+    @Test
+    public void testAnExistingLogIsAppendedTo() throws IOException {
+        File file = new File(folder.getRoot(), "transactions.bin");
+        TransactionLogAppender unit = getUnit(file);
+        unit.append(createEvent(1000, INFO, null, "First", "main", null));
+        unit.stop();
+
+        unit = getUnit(file);
+        unit.append(createEvent(2000, INFO, null, "Second", "main", null));
+        unit.stop();
+
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        try (TransactionDecoder decoder = new TransactionDecoder(new FileInputStream(file))) {
+            assertThat(TransactionLogTool.print(decoder, new PrintStream(printed, true, "UTF-8")), equalTo(2));
+        }
+        String text = new String(printed.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(text, containsString("1970-01-01T00:00:01Z INFO [main] Logger - First"));
+        assertThat(text, containsString("1970-01-01T00:00:02Z INFO [main] Logger - Second"));
+    }
+
+    @Test
+    public void testAppendersOfTheSameFileShareIt() throws IOException {
+        File file = new File(folder.getRoot(), "transactions.bin");
+        TransactionLogAppender old = getUnit(file);
+        old.append(createEvent(1000, INFO, null, "Old", "main", null));
+
+        // Reconfiguration: the new appender starts before the old one stops
+        TransactionLogAppender unit = getUnit(file);
+        unit.append(createEvent(2000, INFO, null, "New", "main", null));
+        old.append(createEvent(3000, INFO, null, "Old again", "main", null));
+        old.stop();
+        unit.append(createEvent(4000, INFO, null, "New again", "main", null));
+        unit.stop();
+
+        try (TransactionDecoder decoder = new TransactionDecoder(new FileInputStream(file))) {
+            assertThat(decoder.next().getFlushEvent().getMessage(), equalTo("Old"));
+            assertThat(decoder.next().getFlushEvent().getMessage(), equalTo("New"));
+            assertThat(decoder.next().getFlushEvent().getMessage(), equalTo("Old again"));
+            assertThat(decoder.next().getFlushEvent().getMessage(), equalTo("New again"));
+            assertThat(decoder.next(), is(nullValue()));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedRecordIsReported() throws IOException {
+        File file = new File(folder.getRoot(), "transactions.bin");
+        TransactionLogAppender unit = getUnit(file);
+        unit.append(createEvent(1000, INFO, null, "Truncated", "main", null));
+        unit.stop();
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (TransactionDecoder decoder = new TransactionDecoder(new FileInputStream(file))) {
+            decoder.next();
+        }
+    }
+
+    private static void verifyEvent(TransactionRecord.Event event, long timeMillis, String level, String marker,
+                                    String message, String threadName) {
+        assertThat(event.getTimeMillis(), equalTo(timeMillis));
+        assertThat(event.getLevel(), equalTo(level));
+        assertThat(event.getMarker(), equalTo(marker));
+        assertThat(event.getMessage(), equalTo(message));
+        assertThat(event.getThreadName(), equalTo(threadName));
+        assertThat(event.getLoggerName(), equalTo("Logger"));
+    }
+
+    private TransactionLogAppender getUnit(File file) {
+        TransactionLogAppender unit = TransactionLogAppender.newBuilder()
+                .setFileName(file.getPath())
+                .withName("TransactionLog")
+                .build();
+        unit.start();
+        return unit;
+    }
+
+    private static Log4jLogEvent createEvent(long timeMillis, Level level, Marker marker, String message,
+                                             String threadName, StringMap contextData) {
+        Log4jLogEvent.Builder builder = Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .setThreadName(threadName)
+                .setTimeMillis(timeMillis);
+        if (contextData != null) {
+            builder.setContextData(contextData);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,179 @@
+package rt.tests.accumappender.file;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.StringMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.*;
+
+public class TransactionStoreAppenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFailedTransactionsAreFoundByRequestId() throws IOException {
+        TransactionStoreAppender unit = getUnit("256MB");
+
+        appendTransaction(unit, "request-1", 1000, FAIL);
+        appendTransaction(unit, "request-2", 2000, SUCCESS);
+        appendTransaction(unit, "request-2", 3000, RETRY);
+        appendTransaction(unit, "request-3", 4000, FAIL);
+
+        assertThat(unit.getStore().size(), equalTo(3));
+        List<TransactionRecord> found = unit.getStore().findByRequestId("request-2");
+        assertThat(found.size(), equalTo(1));
+        assertThat(found.get(0).getFlushEvent().getMessage(), equalTo("Failed request-2"));
+        assertThat(found.get(0).getFlushEvent().getMarker(), equalTo("RETRY"));
+        assertThat(found.get(0).getEvents().get(0).getMessage(), equalTo("Started request-2"));
+        assertThat(unit.getStore().findByRequestId("request-4"), empty());
+        unit.stop();
+    }
+
+    @Test
+    public void testTheIndexIsReloaded() throws IOException {
+        TransactionStoreAppender unit = getUnit("256MB");
+        appendTransaction(unit, "request-1", 1000, FAIL);
+        appendTransaction(unit, "request-2", 2000, FAIL);
+        unit.stop();
+
+        unit = getUnit("256MB");
+        appendTransaction(unit, "request-1", 3000, FAIL);
+
+        List<TransactionRecord> found = unit.getStore().findByRequestId("request-1");
+        assertThat(found.size(), equalTo(2));
+        assertThat(found.get(0).getFlushEvent().getTimeMillis(), equalTo(1000L));
+        assertThat(found.get(1).getFlushEvent().getTimeMillis(), equalTo(3000L));
+        unit.stop();
+    }
+
+    @Test
+    public void testARecordTornByACrashIsDropped() throws IOException {
+        TransactionStoreAppender unit = getUnit("256MB");
+        appendTransaction(unit, "request-1", 1000, FAIL);
+        appendTransaction(unit, "request-2", 2000, FAIL);
+        unit.stop();
+        // The length and the first bytes of a record
+        Path segment = folder.getRoot().toPath().resolve("segment-000001.rttx");
+        Files.write(segment, new byte[]{0x40, 1, 2}, StandardOpenOption.APPEND);
+
+        unit = getUnit("256MB");
+        appendTransaction(unit, "request-3", 3000, FAIL);
+        unit.stop();
+
+        try (TransactionDecoder decoder = new TransactionDecoder(Files.newInputStream(segment))) {
+            assertThat(decoder.next().getFlushEvent().getMessage(), equalTo("Failed request-1"));
+            assertThat(decoder.next().getFlushEvent().getMessage(), equalTo("Failed request-2"));
+            assertThat(decoder.next().getFlushEvent().getMessage(), equalTo("Failed request-3"));
+            assertThat(decoder.next(), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testAppendersOfTheSameDirectoryShareTheStore() throws IOException {
+        TransactionStoreAppender old = getUnit("256MB");
+        appendTransaction(old, "request-1", 1000, FAIL);
+
+        // Reconfiguration: the new appender starts before the old one stops
+        TransactionStoreAppender unit = getUnit("256MB");
+        old.stop();
+        appendTransaction(unit, "request-2", 2000, FAIL);
+        unit.stop();
+
+        unit = getUnit("256MB");
+        assertThat(unit.getStore().size(), equalTo(2));
+        assertThat(unit.getStore().findByRequestId("request-1").get(0).getFlushEvent().getMessage(),
+                equalTo("Failed request-1"));
+        assertThat(unit.getStore().findByRequestId("request-2").get(0).getFlushEvent().getMessage(),
+                equalTo("Failed request-2"));
+        unit.stop();
+    }
+
+    @Test(expected = IOException.class)
+    public void testADirectoryIsOpenByASingleStore() throws IOException {
+        TransactionStoreAppender unit = getUnit("256MB");
+        try {
+            new TransactionStore(folder.getRoot().getPath(), 1024, "requestId").close();
+        } finally {
+            unit.stop();
+        }
+    }
+
+    @Test
+    public void testTransactionsAreSpreadOverSegmentFiles() throws IOException {
+        TransactionStoreAppender unit = getUnit("100");
+        for (int i = 0; i < 10; i++) {
+            appendTransaction(unit, "request-" + i, 1000 + i, FAIL);
+        }
+
+        assertThat(folder.getRoot().list((dir, name) -> name.endsWith(".rttx")).length, greaterThan(1));
+        for (int i = 0; i < 10; i++) {
+            List<TransactionRecord> found = unit.getStore().findByRequestId("request-" + i);
+            assertThat(found.size(), equalTo(1));
+            assertThat(found.get(0).getFlushEvent().getMessage(), equalTo("Failed request-" + i));
+        }
+        unit.stop();
+    }
+
+    @Test
+    public void testTransactionsAreFoundByTimeAndMarker() throws IOException {
+        TransactionStoreAppender unit = getUnit("256MB");
+        appendTransaction(unit, "request-1", 1000, FAIL);
+        appendTransaction(unit, "request-2", 2000, RETRY);
+        appendTransaction(unit, "request-3", 3000, FAIL);
+
+        assertThat(unit.getStore().find(1500, 3500, null).size(), equalTo(2));
+        assertThat(unit.getStore().find(0, Long.MAX_VALUE, RETRY).size(), equalTo(1));
+        assertThat(unit.getStore().find(0, Long.MAX_VALUE, FAIL).size(), equalTo(3));
+        unit.stop();
+    }
+
+    private static void appendTransaction(TransactionStoreAppender unit, String requestId, long timeMillis,
+                                          Marker marker) {
+        StringMap contextData = ContextDataFactory.createContextData();
+        contextData.putValue("requestId", requestId);
+        LogEvent flushEvent = createEvent(timeMillis, ERROR, marker, "Failed " + requestId, contextData);
+        unit.appendTransaction(flushEvent, Arrays.asList(
+                createEvent(timeMillis - 10, DEBUG, null, "Started " + requestId, contextData), flushEvent));
+    }
+
+    private TransactionStoreAppender getUnit(String maxFileSize) {
+        TransactionStoreAppender unit = TransactionStoreAppender.newBuilder()
+                .setDirectory(folder.getRoot().getPath())
+                .setMaxFileSize(maxFileSize)
+                .withName("FailStore")
+                .build();
+        unit.start();
+        return unit;
+    }
+
+    private static Log4jLogEvent createEvent(long timeMillis, Level level, Marker marker, String message,
+                                             StringMap contextData) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .setContextData(contextData)
+                .setTimeMillis(timeMillis)
+                .build();
+    }
+}
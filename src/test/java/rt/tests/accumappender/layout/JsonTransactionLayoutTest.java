@@ -0,0 +1,137 @@
+package rt.tests.accumappender.layout;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.ContextDataFactory;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.StringMap;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.FAIL;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class JsonTransactionLayoutTest {
+
+    private final JsonTransactionLayout unit = JsonTransactionLayout.newBuilder().build();
+
+    @Test
+    public void testTransactionIsOneObjectWithItsEvents() {
+        StringMap contextData = ContextDataFactory.createContextData();
+        contextData.putValue("requestId", "r-1");
+        LogEvent first = createEvent(1000, DEBUG, null, new ParameterizedMessage("Started {}", 42), null);
+        LogEvent flush = createEvent(1005, ERROR, FAIL, new SimpleMessage("Failed"), contextData);
+
+        String json = encode(flush, first, flush);
+
+        assertThat(json, equalTo("{\"timeMillis\":1005,\"startMillis\":1000,\"level\":\"ERROR\",\"marker\":\"FAIL\","
+                + "\"thread\":\"main\",\"logger\":\"Logger\",\"eventCount\":2,\"events\":["
+                + "{\"timeMillis\":1000,\"level\":\"DEBUG\",\"logger\":\"Logger\",\"message\":\"Started 42\"},"
+                + "{\"timeMillis\":1005,\"level\":\"ERROR\",\"marker\":\"FAIL\",\"logger\":\"Logger\","
+                + "\"message\":\"Failed\",\"contextData\":{\"requestId\":\"r-1\"}}]}\n"));
+    }
+
+    @Test
+    public void testStringsAreEscaped() {
+        LogEvent event = createEvent(1000, INFO, SUCCESS,
+                new SimpleMessage("Quote \" backslash \\ tab \t line\n control \u0001 accent é euro €"
+                        + " emoji 😀"), null);
+
+        String json = encode(event, event);
+
+        assertThat(json, containsString("\"message\":\"Quote \\\" backslash \\\\ tab \\t line\\n control \\u0001"
+                + " accent é euro € emoji 😀\""));
+    }
+
+    @Test
+    public void testThrownIsWrittenAsObject() {
+        Log4jLogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(ERROR)
+                .setMessage(new SimpleMessage("Failed"))
+                .setThreadName("main")
+                .setThrown(new IllegalStateException("Broken", new RuntimeException("Cause")))
+                .setTimeMillis(1000)
+                .build();
+
+        String json = encode(event, event);
+
+        assertThat(json, containsString("\"thrown\":{\"class\":\"java.lang.IllegalStateException\","
+                + "\"message\":\"Broken\",\"stack\":[\"rt.tests.accumappender.layout.JsonTransactionLayoutTest."
+                + "testThrownIsWrittenAsObject(JsonTransactionLayoutTest.java:"));
+        assertThat(json, containsString("\"cause\":{\"class\":\"java.lang.RuntimeException\",\"message\":\"Cause\""));
+    }
+
+    @Test
+    public void testSingleEventIsATransactionOfItsOwn() {
+        LogEvent event = createEvent(1000, WARN, null, new SimpleMessage("Alone"), null);
+
+        String json = new String(unit.toByteArray(event), StandardCharsets.UTF_8);
+
+        assertThat(json, equalTo("{\"timeMillis\":1000,\"startMillis\":1000,\"level\":\"WARN\",\"thread\":\"main\","
+                + "\"logger\":\"Logger\",\"eventCount\":1,\"events\":["
+                + "{\"timeMillis\":1000,\"level\":\"WARN\",\"logger\":\"Logger\",\"message\":\"Alone\"}]}\n"));
+    }
+
+    /**
+     * Encodes into a destination of a few bytes, to drain it in the middle of every token.
+     */
+    private String encode(LogEvent flushEvent, LogEvent... events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(7);
+        ByteBufferDestination destination = new ByteBufferDestination() {
+            @Override
+            public ByteBuffer getByteBuffer() {
+                return buffer;
+            }
+
+            @Override
+            public ByteBuffer drain(ByteBuffer buf) {
+                buf.flip();
+                out.write(buf.array(), buf.position(), buf.remaining());
+                buf.clear();
+                return buf;
+            }
+
+            @Override
+            public void writeBytes(ByteBuffer data) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void writeBytes(byte[] data, int offset, int length) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        unit.encodeTransaction(flushEvent, Arrays.asList(events), destination);
+        destination.drain(buffer);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static LogEvent createEvent(long timeMillis, Level level, Marker marker,
+                                        Message message, StringMap contextData) {
+        Log4jLogEvent.Builder builder = Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(message)
+                .setThreadName("main")
+                .setTimeMillis(timeMillis);
+        if (contextData != null) {
+            builder.setContextData(contextData);
+        }
+        return builder.build();
+    }
+}
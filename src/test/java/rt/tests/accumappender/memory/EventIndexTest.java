@@ -0,0 +1,113 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.*;
+
+public class EventIndexTest {
+
+    @Test
+    public void testEventsAreFoundByAllCriteria() {
+        EventIndex unit = new EventIndex(0);
+        unit.add(createEvent("Logger1", "thread1", INFO, null, "one", 1000));
+        unit.add(createEvent("Logger1", "thread2", ERROR, FAIL, "two", 2000));
+        unit.add(createEvent("Logger2", "thread1", ERROR, FAIL, "three", 3000));
+        unit.add(createEvent("Logger1", "thread1", ERROR, FAIL, "four", 4000));
+        unit.add(createEvent("Logger1", "thread1", WARN, SUCCESS, "five", 5000));
+
+        assertThat(messages(unit.query().marker(FAIL).thread("thread1").list()), contains("three", "four"));
+        assertThat(messages(unit.query().marker(FAIL).logger("Logger1").list()), contains("two", "four"));
+        assertThat(messages(unit.query().minLevel(WARN).between(3000, 5001).list()), contains("three", "four", "five"));
+        assertThat(messages(unit.query().level(INFO).list()), contains("one"));
+        assertThat(unit.query().thread("thread1").count(), equalTo(4));
+        assertThat(unit.query().count(), equalTo(5));
+    }
+
+    @Test
+    public void testUnknownValuesMatchNothing() {
+        EventIndex unit = new EventIndex(0);
+        unit.add(createEvent("Logger", "thread", INFO, null, "one", 1000));
+
+        assertThat(unit.query().thread("other").count(), equalTo(0));
+        assertThat(unit.query().marker(FAIL).count(), equalTo(0));
+        assertThat(unit.query().minLevel(ERROR).count(), equalTo(0));
+    }
+
+    @Test
+    public void testMarkerDescendantsAreFoundByTheirAncestors() {
+        Marker timeout = MarkerManager.getMarker("TIMEOUT").setParents(FAIL);
+        EventIndex unit = new EventIndex(0);
+        unit.add(createEvent("Logger", "thread", ERROR, timeout, "timed out", 1000));
+        unit.add(createEvent("Logger", "thread", ERROR, FAIL, "failed", 2000));
+
+        assertThat(messages(unit.query().marker(FAIL).list()), contains("timed out", "failed"));
+        assertThat(messages(unit.query().marker("TIMEOUT").list()), contains("timed out"));
+    }
+
+    @Test
+    public void testManyEventsAreIntersected() {
+        EventIndex unit = new EventIndex(0);
+        for (int i = 0; i < 100_000; i++) {
+            unit.add(createEvent("Logger" + (i % 7), "thread" + (i % 13), i % 100 == 0 ? ERROR : DEBUG,
+                    i % 100 == 0 ? FAIL : null, Integer.toString(i), i));
+        }
+
+        List<LogEvent> found = unit.query().marker(FAIL).thread("thread3").logger("Logger5").list();
+
+        assertThat(found.size(), equalTo(11));
+        for (LogEvent event : found) {
+            int i = Integer.parseInt(event.getMessage().getFormattedMessage());
+            assertThat(i % 100 == 0 && i % 13 == 3 && i % 7 == 5, equalTo(true));
+        }
+    }
+
+    @Test
+    public void testEventsBeyondMaxEventsAreDropped() {
+        EventIndex unit = new EventIndex(1);
+
+        unit.add(createEvent("Logger", "thread", INFO, null, "one", 1000));
+        unit.add(createEvent("Logger", "thread", INFO, null, "two", 2000));
+
+        assertThat(unit.size(), equalTo(1));
+        assertThat(unit.getDroppedCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testAppenderIsBoundedByDefault() {
+        EventIndexAppender appender = EventIndexAppender.newBuilder().setName("Bounded").build();
+
+        assertThat(appender.getMaxEvents(), equalTo(100_000));
+    }
+
+    private static List<String> messages(List<LogEvent> events) {
+        List<String> messages = new ArrayList<>();
+        for (LogEvent event : events) {
+            messages.add(event.getMessage().getFormattedMessage());
+        }
+        return messages;
+    }
+
+    private static LogEvent createEvent(String loggerName, String threadName, Level level, Marker marker,
+                                        String message, long timeMillis) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName(loggerName)
+                .setThreadName(threadName)
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .setTimeMillis(timeMillis)
+                .build();
+    }
+}
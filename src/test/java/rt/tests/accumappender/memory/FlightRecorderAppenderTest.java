@@ -0,0 +1,198 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.FAIL;
+
+public class FlightRecorderAppenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FlightRecorderAppender unit;
+
+    @After
+    public void after() {
+        if (unit != null) {
+            unit.stop();
+        }
+    }
+
+    @Test
+    public void testOnlyTheLastEventsAreDumped() throws IOException {
+        unit = getUnit(null, false);
+
+        for (int i = 0; i < 10; i++) {
+            unit.append(createEvent(DEBUG, "Message " + i, null));
+        }
+
+        assertThat(dumpLines(), arrayContaining("DEBUG Message 6", "DEBUG Message 7", "DEBUG Message 8",
+                "DEBUG Message 9"));
+        assertThat(unit.getRecordedEventCount(), equalTo(10L));
+    }
+
+    @Test
+    public void testLongEventsAreTruncated() throws IOException {
+        unit = getUnit(null, false);
+
+        unit.append(createEvent(INFO, "A message longer than the slot", null));
+
+        assertThat(dumpLines(), arrayContaining("INFO A message longer than t"));
+    }
+
+    @Test
+    public void testFailEventDumpsTheRecordedEvents() throws IOException {
+        File dumpFile = new File(folder.getRoot(), "dump.log");
+        unit = getUnit(dumpFile.getPath(), true);
+
+        unit.append(createEvent(DEBUG, "Other thread", null));
+        unit.append(createEvent(ERROR, "Failed", FAIL));
+        unit.append(createEvent(ERROR, "Failed again", FAIL));
+        unit.stop();
+
+        String dump = new String(Files.readAllBytes(dumpFile.toPath()), StandardCharsets.UTF_8);
+        assertThat(dump, containsString("(FAIL in "));
+        assertThat(dump, containsString("DEBUG Other thread\nERROR Failed\n"));
+        assertThat(unit.getDumpCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testConcurrentDumpsDoNotInterleave() throws Exception {
+        File dumpFile = new File(folder.getRoot(), "dump.log");
+        unit = getUnit(dumpFile.getPath(), false, "64KB");
+        int slots = unit.getCapacityInEvents();
+        for (int i = 0; i < slots; i++) {
+            unit.append(createEvent(DEBUG, "Message " + i, null));
+        }
+
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 10; j++) {
+                    unit.dump();
+                }
+            });
+            threads[i].start();
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<String> lines = Files.readAllLines(dumpFile.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines.size(), equalTo(40 * (slots + 1)));
+        for (int i = 0; i < lines.size(); i++) {
+            assertThat(lines.get(i).startsWith("----- "), equalTo(i % (slots + 1) == 0));
+        }
+    }
+
+    @Test
+    public void testDumpIsAJmxOperation() throws Exception {
+        File dumpFile = new File(folder.getRoot(), "dump.log");
+        unit = getUnit(dumpFile.getPath(), false);
+        unit.append(createEvent(INFO, "Message", null));
+
+        Object dumped = ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("rt.tests.accumappender:type=FlightRecorder,name=\"Recorder\""), "dump", null, null);
+
+        assertThat(dumped, equalTo((Object) 1));
+        assertThat(new String(Files.readAllBytes(dumpFile.toPath()), StandardCharsets.UTF_8),
+                endsWith("INFO Message\n"));
+    }
+
+    @Test
+    public void testANewRecorderTakesTheMBeanNameOver() throws Exception {
+        File dumpFile = new File(folder.getRoot(), "dump.log");
+        FlightRecorderAppender old = getUnit(dumpFile.getPath(), false);
+        unit = getUnit(dumpFile.getPath(), false);
+        old.stop();
+        unit.append(createEvent(INFO, "New recorder", null));
+
+        Object dumped = ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("rt.tests.accumappender:type=FlightRecorder,name=\"Recorder\""), "dump", null, null);
+
+        assertThat(dumped, equalTo((Object) 1));
+        assertThat(new String(Files.readAllBytes(dumpFile.toPath()), StandardCharsets.UTF_8),
+                endsWith("INFO New recorder\n"));
+    }
+
+    @Test
+    public void testAWriterLateByATurnOfTheRingDropsItsRecord() {
+        OffHeapRing ring = new OffHeapRing(32, 32);
+        long late = ring.claim();
+        long next = ring.claim();
+
+        ring.write(next, ByteBuffer.wrap("Next".getBytes(StandardCharsets.US_ASCII)));
+        ring.write(late, ByteBuffer.wrap("Late".getBytes(StandardCharsets.US_ASCII)));
+
+        List<String> records = new ArrayList<>();
+        ring.read((sequence, buffer, length) -> records.add(sequence + " " + new String(buffer, 0, length,
+                StandardCharsets.US_ASCII)));
+        assertThat(records, contains(next + " Next"));
+        assertThat(ring.getDroppedCount(), equalTo(1L));
+    }
+
+    private String[] dumpLines() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        unit.dump(out, "test");
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        return Arrays.copyOfRange(lines, 1, lines.length);
+    }
+
+    private FlightRecorderAppender getUnit(String dumpFile, boolean dumpOnFail) {
+        return getUnit(dumpFile, dumpOnFail, "128");
+    }
+
+    private FlightRecorderAppender getUnit(String dumpFile, boolean dumpOnFail, String size) {
+        FlightRecorderAppender unit = FlightRecorderAppender.newBuilder()
+                .setSize(size)
+                .setSlotSize(32)
+                .setDumpFile(dumpFile)
+                .setDumpOnFail(dumpOnFail)
+                .setMinDumpInterval(60_000)
+                .withName("Recorder")
+                .withLayout(PatternLayout.newBuilder().withPattern("%p %m%n").build())
+                .build();
+        unit.start();
+        return unit;
+    }
+
+    private static Log4jLogEvent createEvent(Level level, String message, Marker marker) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMarker(marker)
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+}
@@ -0,0 +1,136 @@
+package rt.tests.accumappender.memory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.logging.log4j.Level.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryAppenderTest {
+
+    @Test
+    public void testEventsAreReturnedAsOutput() {
+        MemoryAppender unit = getUnit(16, null);
+
+        unit.append(createEvent(INFO, "Info message"));
+        unit.append(createEvent(WARN, "Warning spanning several chunks"));
+
+        assertThat(unit.getOutput(), equalTo("INFO Info message\nWARN Warning spanning several chunks\n"));
+        assertThat(unit.getPosition(), equalTo(55L));
+        assertThat(unit.getByteBuffers().length, equalTo(4));
+    }
+
+    @Test
+    public void testCursorReadsOnlyNewEvents() {
+        MemoryAppender unit = getUnit(16, null);
+        unit.append(createEvent(INFO, "Before"));
+
+        MemoryAppender.Cursor cursor = unit.newCursor();
+        unit.append(createEvent(INFO, "One"));
+        unit.append(createEvent(INFO, "Two"));
+
+        assertThat(cursor.nextString(), equalTo("INFO One\nINFO Two\n"));
+        assertThat(cursor.nextString(), equalTo(""));
+
+        unit.append(createEvent(ERROR, "Three"));
+
+        ByteBuffer dst = ByteBuffer.allocate(64);
+        assertThat(cursor.read(dst), equalTo(12));
+        assertThat(new String(dst.array(), 0, dst.position()), equalTo("ERROR Three\n"));
+        assertThat(cursor.getPosition(), equalTo(unit.getPosition()));
+    }
+
+    @Test
+    public void testByteBuffersAreReadOnlyViews() {
+        MemoryAppender unit = getUnit(1024, null);
+        unit.append(createEvent(INFO, "Message"));
+
+        ByteBuffer[] views = unit.getByteBuffers();
+
+        assertThat(views.length, equalTo(1));
+        assertThat(views[0].isReadOnly(), equalTo(true));
+        assertThat(views[0].remaining(), equalTo(13));
+    }
+
+    @Test
+    public void testEventsBeyondMaxSizeAreDropped() {
+        MemoryAppender unit = getUnit(16, "20");
+
+        unit.append(createEvent(INFO, "Message 1"));
+        unit.append(createEvent(INFO, "Message 2"));
+
+        assertThat(unit.getOutput(), equalTo("INFO Message 1\n"));
+        assertThat(unit.getDroppedEventCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testEventsOfConcurrentThreadsAreNotInterleaved() throws InterruptedException {
+        MemoryAppender unit = getUnit(64, null);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final String name = "thread" + t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    unit.append(createEvent(INFO, name + " message " + i));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        String[] lines = unit.getOutput().split("\n");
+        assertThat(lines.length, equalTo(4000));
+        for (String line : lines) {
+            assertTrue(line, line.matches("INFO thread\\d message \\d+"));
+        }
+    }
+
+    @Test
+    public void testAWriterDoesNotWaitForThePrecedingOnesToCommit() {
+        ChunkedByteStore store = new ChunkedByteStore(4, 0);
+        long first = store.claim(3);
+        long second = store.claim(3);
+
+        store.write(second, ByteBuffer.wrap("def".getBytes(StandardCharsets.US_ASCII)));
+        store.commit(second, second + 3);
+        assertThat(store.size(), equalTo(0L));
+
+        store.write(first, ByteBuffer.wrap("abc".getBytes(StandardCharsets.US_ASCII)));
+        store.commit(first, first + 3);
+        assertThat(store.size(), equalTo(6L));
+        ByteBuffer bytes = ByteBuffer.allocate(6);
+        store.read(0, bytes);
+        assertThat(new String(bytes.array(), StandardCharsets.US_ASCII), equalTo("abcdef"));
+    }
+
+    private MemoryAppender getUnit(int chunkSize, String maxSize) {
+        MemoryAppender unit = MemoryAppender.newBuilder()
+                .setChunkSize(chunkSize)
+                .setMaxSize(maxSize)
+                .withName("Memory")
+                .withLayout(PatternLayout.newBuilder().withPattern("%p %m%n").build())
+                .build();
+        unit.start();
+        return unit;
+    }
+
+    private static Log4jLogEvent createEvent(Level level, String message) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("Logger")
+                .setLevel(level)
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+package rt.tests.bench;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.spi.AbstractLogger;
+import rt.tests.accumappender.ExtLoggerFilter;
+import rt.tests.accumappender.NoExtLoggerFilter;
+import rt.tests.logger.ExtLogger;
+
+/**
+ * Compares the {@code ExtLoggerFilter} and {@code NoExtLoggerFilter} pair, as put on every appender reference, with
+ * the former classification comparing the FQCN of every event with {@code String.equals}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=rt.tests.bench.FilterBenchmark}.
+ * </p>
+ */
+public class FilterBenchmark {
+
+    private static int sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+
+        LogEvent[] events = {
+                createEvent(ExtLogger.FQCN),
+                createEvent(AbstractLogger.class.getName()),
+                createEvent(new String(ExtLogger.FQCN)),
+                createEvent(AbstractLogger.class.getName())
+        };
+        Filter extFilter = new ExtLoggerFilter(Filter.Result.NEUTRAL, Filter.Result.DENY);
+        Filter noExtFilter = new NoExtLoggerFilter(Filter.Result.NEUTRAL, Filter.Result.DENY);
+
+        Filter legacyExtFilter = new EqualsExtLoggerFilter(false);
+        Filter legacyNoExtFilter = new EqualsExtLoggerFilter(true);
+
+        for (int round = 0; round < 3; round++) {
+            long equalsBased = time(iterations, events, event ->
+                    legacyExtFilter.filter(event).ordinal() + legacyNoExtFilter.filter(event).ordinal());
+            long cached = time(iterations, events, event ->
+                    extFilter.filter(event).ordinal() + noExtFilter.filter(event).ordinal());
+
+            System.out.printf("round %d: String.equals %5.2f ns/event, cached classification %5.2f ns/event%n",
+                    round, (double) equalsBased / iterations, (double) cached / iterations);
+        }
+        System.out.println(sink == 42 ? "" : " ");
+    }
+
+    /**
+     * The former classification of both filters.
+     */
+    private static class EqualsExtLoggerFilter extends ExtLoggerFilter {
+        private final boolean inverted;
+
+        EqualsExtLoggerFilter(boolean inverted) {
+            super(Result.NEUTRAL, Result.DENY);
+            this.inverted = inverted;
+        }
+
+        @Override
+        protected boolean isMatch(LogEvent event) {
+            return ExtLogger.FQCN.equals(event.getLoggerFqcn()) != inverted;
+        }
+    }
+
+    private static long time(int iterations, LogEvent[] events, Classification classification) {
+        int result = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result += classification.apply(events[i & 3]);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += result;
+        return elapsed;
+    }
+
+    private static LogEvent createEvent(String fqcn) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("bench.filter")
+                .setLoggerFqcn(fqcn)
+                .setLevel(Level.INFO)
+                .setMessage(new SimpleMessage("A message"))
+                .build();
+    }
+
+    private interface Classification {
+        int apply(LogEvent event);
+    }
+}
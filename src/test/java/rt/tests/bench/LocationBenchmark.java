@@ -0,0 +1,50 @@
+package rt.tests.bench;
+
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configurator;
+import rt.tests.logger.ExtLogEventFactory;
+import rt.tests.logger.ExtLogger;
+
+/**
+ * Compares logging with {@code includeLocation="true"} when Log4j walks the stack to find the caller and when the
+ * location is precomputed, as done by the call sites woven with the {@code weave-location} profile.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=rt.tests.bench.LocationBenchmark}.
+ * </p>
+ */
+public class LocationBenchmark {
+
+    private static final StackTraceElement CALL_SITE =
+            new StackTraceElement(LocationBenchmark.class.getName(), "injected", "LocationBenchmark.java", 1);
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        try (LoggerContext context = Configurator.initialize("bench", "bench/log4j2-location.xml")) {
+            ExtLogger logger = ExtLogger.create("bench.location");
+
+            for (int round = 0; round < 3; round++) {
+                long stackWalk = time(iterations, () -> logger.info("Located by stack walking"));
+                long injected = time(iterations, () -> {
+                    ExtLogEventFactory.setCallSite(CALL_SITE);
+                    try {
+                        logger.info("Located at build time");
+                    } finally {
+                        ExtLogEventFactory.clearCallSite();
+                    }
+                });
+
+                System.out.printf("round %d: stack walk %6d ns/op, injected %6d ns/op%n",
+                        round, stackWalk / iterations, injected / iterations);
+            }
+        }
+    }
+
+    private static long time(int iterations, Runnable call) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+        return System.nanoTime() - start;
+    }
+}
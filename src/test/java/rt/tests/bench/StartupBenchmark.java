@@ -0,0 +1,55 @@
+package rt.tests.bench;
+
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configurator;
+import rt.tests.accumappender.config.ConfigurationCompiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compares starting a logger context from {@code bench/log4j2-startup.xml} and from the same configuration compiled
+ * by {@link ConfigurationCompiler}. The first start pays for the class loading of a fresh JVM, so it is printed apart
+ * and each kind of configuration runs in its own JVM.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=rt.tests.bench.StartupBenchmark -Dexec.args=xml},
+ * then with {@code -Dexec.args=compiled}.
+ * </p>
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        boolean compiled = args.length == 0 || args[0].equals("compiled");
+        int starts = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        String location = "bench/log4j2-startup.xml";
+        if (compiled) {
+            File file = new File("target/bench/log4j2-startup.compiled");
+            file.getParentFile().mkdirs();
+            try (InputStream in = StartupBenchmark.class.getClassLoader().getResourceAsStream(location);
+                 OutputStream out = new FileOutputStream(file)) {
+                ConfigurationCompiler.compile(in, out);
+            }
+            location = file.getPath();
+        }
+
+        long first = start(location);
+        long total = 0;
+        for (int i = 0; i < starts; i++) {
+            total += start(location);
+        }
+        System.out.printf("%s: first start %6d us, then %6d us per start%n",
+                compiled ? "compiled" : "xml", first / 1000, total / starts / 1000);
+    }
+
+    private static long start(String location) {
+        long start = System.nanoTime();
+        LoggerContext context = Configurator.initialize("bench", location);
+        long elapsed = System.nanoTime() - start;
+        Configurator.shutdown(context);
+        return elapsed;
+    }
+}
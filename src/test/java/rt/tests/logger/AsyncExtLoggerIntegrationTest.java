@@ -0,0 +1,132 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.junit.LoggerContextRule;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.test.appender.ListAppender;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import rt.tests.accumappender.LoadSheddingFilter;
+import rt.tests.accumappender.async.AsyncExtLoggerConfig;
+import rt.tests.accumappender.async.WaitStrategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class AsyncExtLoggerIntegrationTest {
+
+    @ClassRule
+    public static LoggerContextRule init = new LoggerContextRule("log4j2-test3.xml");
+    private static ListAppender listAppender;
+
+    @BeforeClass
+    public static void setupLogging() {
+        listAppender = init.getAppender("List");
+    }
+
+    @Before
+    public void before() {
+        listAppender.clear();
+    }
+
+    @Test
+    public void testAccumulatedEventsAreLoggedInTheBackground() throws InterruptedException {
+        ExtLogger logger = ExtLogger.create("com.acme.async");
+
+        logger.debug("A debug message");
+        logger.info(SUCCESS, "An info message");
+
+        List<String> messages = awaitMessages(1);
+        assertThat(messages.get(0), containsString("[" + Thread.currentThread().getName() + "]"));
+        assertThat(messages.get(0), containsString("A debug message : An info message"));
+    }
+
+    @Test
+    public void testLoadSheddingFilterWatchesTheAsyncLogger() {
+        LoadSheddingFilter filter = (LoadSheddingFilter) init.getConfiguration().getLoggerConfig("com.acme.async")
+                .getFilter();
+
+        filter.checkPressure();
+
+        assertThat(filter.isShedding(), equalTo(false));
+        assertThat(filter.getMinimumLevel(), equalTo(Level.ALL));
+    }
+
+    @Test
+    public void testEventsShedByALoggerFilterAreNotQueued() throws InterruptedException {
+        // Always under pressure: the minimum level goes up one step per event, to INFO
+        LoadSheddingFilter filter = new LoadSheddingFilter(Filter.Result.NEUTRAL, Filter.Result.DENY, null, null, null,
+                0, -1, 0.75, 0.25, 1, Level.INFO);
+        ListAppender appender = new ListAppender("ShedList");
+        appender.start();
+        AsyncExtLoggerConfig loggerConfig = new AsyncExtLoggerConfig("com.acme.shed", Collections.emptyList(),
+                filter, Level.DEBUG, false, null, init.getConfiguration(), false, 16, WaitStrategy.create(null));
+        loggerConfig.addAppender(appender, null, null);
+        loggerConfig.start();
+        try {
+            for (int i = 0; i < 3; i++) {
+                loggerConfig.log("com.acme.shed", ExtLogger.FQCN, null, Level.DEBUG, new SimpleMessage("Step " + i), null);
+            }
+            // Counted on the logging thread, before the events reached the ring
+            assertThat(filter.getShedEventCount(), equalTo(2L));
+            loggerConfig.log("com.acme.shed", ExtLogger.FQCN, SUCCESS, Level.DEBUG, new SimpleMessage("Done"), null);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (appender.getEvents().size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(appender.getEvents().stream().map(e -> e.getMessage().getFormattedMessage())
+                    .collect(Collectors.toList()), contains("Step 0", "Done"));
+        } finally {
+            loggerConfig.stop();
+            appender.stop();
+        }
+    }
+
+    @Test
+    public void testEventsAreAccumulatedPerLoggingThread() throws InterruptedException {
+        ExtLogger logger = ExtLogger.create("com.acme.async");
+        int threadCount = 4;
+        int eventCount = 200;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < eventCount; i++) {
+                    logger.debug("Step {}", i);
+                }
+                logger.info(SUCCESS, "Done");
+            }, "Producer-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<String> messages = awaitMessages(threadCount);
+        assertThat(messages.size(), equalTo(threadCount));
+        for (String message : messages) {
+            assertThat(message, startsWith("[Producer-"));
+            assertThat(message, containsString("Step 0 : Step 1 : "));
+            assertThat(message, endsWith("Step " + (eventCount - 1) + " : Done" + System.lineSeparator()));
+        }
+    }
+
+    private List<String> awaitMessages(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (listAppender.getMessages().size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return listAppender.getMessages();
+    }
+}
@@ -0,0 +1,88 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.junit.LoggerContextRule;
+import org.apache.logging.log4j.test.appender.ListAppender;
+import org.junit.*;
+
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class ExtLogBuilderIntegrationTest {
+
+    @ClassRule
+    public static LoggerContextRule init = new LoggerContextRule("log4j2-test6.xml");
+    private static ListAppender accuListAppender;
+    private static ListAppender listAppender;
+
+    @BeforeClass
+    public static void setupLogging() {
+        accuListAppender = init.getAppender("ListAccuApp");
+        listAppender = init.getAppender("List");
+    }
+
+    @Before
+    public void before() {
+        accuListAppender.clear();
+        listAppender.clear();
+    }
+
+    @Test
+    public void testStructuredFieldsAreAccumulatedAsContextData() {
+        ExtLogger logger = ExtLogger.create("com.acme.tests");
+
+        logger.atDebug().with("orderId", "A-1").with("items", 3).log("Order received");
+        logger.atTrace().with("ignored", true).log("Not logged");
+        logger.atInfo().withMarker(SUCCESS).with("latencyMs", 12.5).with("items", 4).log("Order {} done", "A-1");
+
+        assertThat(getLog(accuListAppender),
+                containsString("Order received : Order A-1 done {items=4, latencyMs=12.5, orderId=A-1}"));
+    }
+
+    @Test
+    public void testBuilderEventsAreRoutedAsExtLoggerEvents() {
+        ExtLogger logger = ExtLogger.create("com.acme.tests");
+
+        logger.atDebug().with("orderId", "A-2").log("Order received");
+        logger.atInfo().withMarker(SUCCESS).log("Order done");
+
+        assertThat(getLog(accuListAppender), containsString("Order received : Order done"));
+        assertThat(listAppender.getMessages(), empty());
+    }
+
+    @Test
+    public void testBuilderIsReusedByTheThread() {
+        ExtLogger logger = ExtLogger.create("com.acme.tests");
+
+        ExtLogBuilder first = logger.atDebug();
+        first.log("First");
+        ExtLogBuilder second = logger.atDebug();
+        ExtLogBuilder nested = logger.atDebug();
+        nested.log("Nested");
+        second.log("Second");
+
+        assertThat(second, sameInstance(first));
+        assertThat(nested, not(sameInstance(first)));
+        assertThat(logger.atTrace(), sameInstance(ExtLogBuilder.NOOP));
+    }
+
+    @Test
+    public void testAChainNeverEndedDoesNotKeepTheThreadFromReusingABuilder() {
+        ExtLogger logger = ExtLogger.create("com.acme.tests");
+
+        ExtLogBuilder abandoned = logger.atDebug().with("orderId", "A-3");
+        ExtLogBuilder first = logger.atDebug();
+        first.log("First");
+        ExtLogBuilder second = logger.atDebug();
+        second.log("Second");
+
+        assertThat(first, not(sameInstance(abandoned)));
+        assertThat(second, sameInstance(first));
+    }
+
+    private static String getLog(ListAppender appender) {
+        return appender.getMessages().stream().collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,121 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.After;
+import org.junit.Test;
+import rt.tests.accumappender.LogContext;
+
+import static org.apache.logging.log4j.Level.INFO;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ExtLogEventFactoryTest {
+
+    private static final StackTraceElement CALL_SITE =
+            new StackTraceElement("com.acme.Service", "call", "Service.java", 42);
+
+    @After
+    public void after() {
+        ExtLogEventFactory.clearCallSite();
+    }
+
+    @Test
+    public void testEventCarriesTheCallSite() {
+        ExtLogEventFactory.setCallSite(CALL_SITE);
+
+        LogEvent event = createEvent();
+        event.setIncludeLocation(true);
+
+        assertThat(event.getSource(), sameInstance(CALL_SITE));
+        assertThat(event.getLoggerFqcn(), equalTo(ExtLogger.FQCN));
+        assertThat(event.getMessage().getFormattedMessage(), equalTo("A message"));
+        assertThat(event.getTimeMillis(), greaterThan(0L));
+    }
+
+    @Test
+    public void testEventWithoutCallSiteHasNoSourceUnlessLocationIsIncluded() {
+        ExtLogEventFactory.setCallSite(CALL_SITE);
+        ExtLogEventFactory.clearCallSite();
+
+        LogEvent event = FakeLogger.log(new ExtLogEventFactory());
+        StackTraceElement located = FakeLogger.locate(new ExtLogEventFactory());
+
+        assertThat(event.getSource(), is(nullValue()));
+        assertThat(located.getClassName(), equalTo(ExtLogEventFactoryTest.class.getName()));
+        assertThat(located.getMethodName(), equalTo("testEventWithoutCallSiteHasNoSourceUnlessLocationIsIncluded"));
+    }
+
+    @Test
+    public void testEagerLocationFindsTheCallerOfTheLogger() {
+        LogEvent event = FakeLogger.log(new ExtLogEventFactory(true));
+
+        assertThat(event.getSource().getClassName(), equalTo(ExtLogEventFactoryTest.class.getName()));
+        assertThat(event.getSource().getMethodName(), equalTo("testEagerLocationFindsTheCallerOfTheLogger"));
+    }
+
+    @Test
+    public void testFieldsAreAddedToTheContextData() {
+        FieldsMessage message = new FieldsMessage(new SimpleMessage("A message"),
+                new Object[] {"orderId", "A-1", "latencyMs", FieldsMessage.DOUBLE, "retried", FieldsMessage.BOOLEAN},
+                new long[] {0L, Double.doubleToRawLongBits(1.5), 1L}, 3);
+
+        LogEvent event = new ExtLogEventFactory().createEvent("com.acme.tests", null, ExtLogger.FQCN, INFO,
+                message, null, null);
+
+        assertThat(event.getContextData().getValue("orderId"), equalTo((Object) "A-1"));
+        assertThat(event.getContextData().getValue("latencyMs"), equalTo((Object) 1.5));
+        assertThat(event.getContextData().getValue("retried"), equalTo((Object) true));
+        assertThat(event.getMessage().getFormattedMessage(), equalTo("A message"));
+    }
+
+    @Test
+    public void testLogContextIsCopiedForEventsLeavingTheThread() {
+        LogContext.put("ExtLogEventFactoryTest.requestId", "R-1");
+        try {
+            LogEvent event = new ExtLogEventFactory(false, true).createEvent("com.acme.tests", null, ExtLogger.FQCN,
+                    INFO, new SimpleMessage("A message"), null, null);
+
+            assertThat(event.getContextData().getValue("ExtLogEventFactoryTest.requestId"), equalTo((Object) "R-1"));
+            assertThat(createEvent().getContextData().containsKey("ExtLogEventFactoryTest.requestId"), equalTo(false));
+        } finally {
+            LogContext.clear();
+        }
+    }
+
+    @Test
+    public void testEventCarriesTheLogContextStack() {
+        LogContext.push("service");
+        LogContext.push("dao");
+        try {
+            LogEvent event = createEvent();
+
+            assertThat(event.getContextStack(), sameInstance(LogContext.getStack()));
+            assertThat(event.getContextStack().asList(), contains("service", "dao"));
+        } finally {
+            LogContext.clear();
+        }
+        assertThat(createEvent().getContextStack().getDepth(), equalTo(0));
+    }
+
+    private LogEvent createEvent() {
+        return new ExtLogEventFactory().createEvent("com.acme.tests", null, ExtLogger.FQCN, INFO,
+                new SimpleMessage("A message"), null, null);
+    }
+
+    private static class FakeLogger {
+        static LogEvent log(ExtLogEventFactory factory) {
+            return factory.createEvent("com.acme.tests", null, FakeLogger.class.getName(), INFO,
+                    new SimpleMessage("A message"), null, null);
+        }
+
+        /**
+         * Includes the location while the logger is still on the stack, as Log4j walks it when the source is read.
+         */
+        static StackTraceElement locate(ExtLogEventFactory factory) {
+            LogEvent event = log(factory);
+            event.setIncludeLocation(true);
+            return event.getSource();
+        }
+    }
+}
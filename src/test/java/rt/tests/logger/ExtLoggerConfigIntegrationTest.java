@@ -0,0 +1,115 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.core.impl.DefaultLogEventFactory;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.junit.LoggerContextRule;
+import org.apache.logging.log4j.test.appender.ListAppender;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import rt.tests.accumappender.ExtLoggerConfig;
+
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static rt.tests.accumappender.Markers.SUCCESS;
+
+public class ExtLoggerConfigIntegrationTest {
+
+    @ClassRule
+    public static LoggerContextRule init = new LoggerContextRule("log4j2-test4.xml");
+
+    @Before
+    public void before() {
+        getList("ListAccuApp").clear();
+        getList("List").clear();
+        getList("ListErrors").clear();
+    }
+
+    @Test
+    public void testAppenderReferencesAreCompiledIntoADecisionTable() {
+        assertThat(getConfig().isDecisionTableCompiled(), equalTo(true));
+    }
+
+    @Test
+    public void testAConfiguredLogEventFactoryIsKept() {
+        assertThat(getConfig().getLogEventFactory(), instanceOf(ExtLogEventFactory.class));
+
+        System.setProperty(Constants.LOG4J_LOG_EVENT_FACTORY, DefaultLogEventFactory.class.getName());
+        try {
+            ExtLoggerConfig config = new ExtLoggerConfig("com.acme.configured", Collections.emptyList(), null,
+                    Level.INFO, true, null, init.getConfiguration(), false);
+
+            assertThat(config.getLogEventFactory(), not(instanceOf(ExtLogEventFactory.class)));
+        } finally {
+            System.clearProperty(Constants.LOG4J_LOG_EVENT_FACTORY);
+        }
+    }
+
+    @Test
+    public void testEventsAreRoutedByLoggerKindAndLevel() {
+        ExtLogger extLogger = ExtLogger.create("com.acme.routed");
+        Logger logger = LogManager.getLogger("com.acme.routed");
+
+        extLogger.debug("An ext debug message");
+        extLogger.warn(SUCCESS, "An ext warning");
+        logger.info("A regular info message");
+        logger.error("A regular error");
+
+        assertThat(getLog("ListAccuApp"), equalTo("WARN  com.acme.routed - An ext debug message : An ext warning\n"));
+        assertThat(getLog("List"), equalTo("INFO  com.acme.routed - A regular info message\n"
+                + "ERROR com.acme.routed - A regular error\n"));
+        assertThat(getLog("ListErrors"), equalTo("WARN  com.acme.routed - An ext warning\n"
+                + "ERROR com.acme.routed - A regular error\n"));
+    }
+
+    @Test
+    public void testEventsNotCoveredByTheTableAreRoutedTheRegularWay() {
+        Logger logger = LogManager.getLogger("com.acme.routed");
+
+        logger.log(Level.forName("NOTICE", 350), "A custom level message");
+        logger.warn(MarkerManager.getMarker("AUDIT"), "A foreign marker");
+
+        assertThat(getLog("List"), equalTo("NOTICE com.acme.routed - A custom level message\n"
+                + "WARN  com.acme.routed - A foreign marker\n"));
+        assertThat(getLog("ListErrors"), equalTo("WARN  com.acme.routed - A foreign marker\n"));
+    }
+
+    @Test
+    public void testFiltersWhichCannotBeCompiledDisableTheTable() {
+        ExtLoggerConfig config = getConfig();
+        Filter filter = new AbstractFilter() {
+        };
+        try {
+            config.addAppender(getList("ListErrors"), null, filter);
+            config.removeAppender("ListErrors");
+            config.addAppender(getList("ListErrors"), null, filter);
+
+            assertThat(config.isDecisionTableCompiled(), equalTo(false));
+        } finally {
+            config.removeAppender("ListErrors");
+            config.addAppender(getList("ListErrors"), Level.WARN, null);
+        }
+        assertThat(config.isDecisionTableCompiled(), equalTo(true));
+    }
+
+    private ExtLoggerConfig getConfig() {
+        return (ExtLoggerConfig) init.getConfiguration().getLoggerConfig("com.acme.routed");
+    }
+
+    private ListAppender getList(String name) {
+        return init.getListAppender(name);
+    }
+
+    private String getLog(String name) {
+        return getList(name).getMessages().stream().collect(Collectors.joining());
+    }
+}
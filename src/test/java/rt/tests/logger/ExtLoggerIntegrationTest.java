@@ -9,7 +9,7 @@ import rt.tests.accumappender.Markers;
 
 import java.util.stream.Collectors;
 
-import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 import static rt.tests.accumappender.Markers.FAIL;
 import static rt.tests.accumappender.Markers.SUCCESS;
@@ -71,6 +71,31 @@ public class ExtLoggerIntegrationTest {
         assertThat(log, containsString("at " + this.getClass().getName() + ".testExceptionIsLoggedIntoTheLog("));
     }
 
+    @Test
+    public void testLimitedCallsAreAccumulatedWithTheDroppedCount() {
+        ExtLogger logger = ExtLogger.create("com.acme.tests");
+        LogLimiter limiter = LogLimiter.oneIn(3);
+
+        for (int i = 0; i < 4; i++) {
+            logger.debug(limiter, "Polling {}", i);
+        }
+        logger.info(SUCCESS, "Done");
+
+        assertThat(getLog(), containsString("Polling 0 : Polling 3 [2 similar events dropped] : Done"));
+    }
+
+    @Test
+    public void testConfiguredMarkerPolicyIsApplied() {
+        ExtLogger logger = ExtLogger.create("com.acme.tests");
+
+        logger.debug("Attempt 1");
+        logger.warn(Markers.RETRY, "Retrying");
+        logger.info(SUCCESS, "Done");
+
+        assertThat(listAppender.getMessages().size(), equalTo(2));
+        assertThat(getLog(), containsString("Attempt 1 : Retrying : Done"));
+    }
+
     private String getLog() {
         return listAppender.getMessages().stream().collect(Collectors.joining());
     }
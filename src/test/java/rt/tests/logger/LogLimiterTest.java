@@ -0,0 +1,68 @@
+package rt.tests.logger;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class LogLimiterTest {
+
+    @Test
+    public void testSamplerLetsTheFirstAndEveryNthCallThrough() {
+        LogLimiter unit = LogLimiter.oneIn(3);
+
+        StringBuilder passed = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            passed.append(unit.tryAcquire() ? 'x' : '.');
+        }
+
+        assertThat(passed.toString(), equalTo("x..x..x"));
+        assertThat(unit.getDroppedCount(), equalTo(4L));
+    }
+
+    @Test
+    public void testDroppedCountIsReportedOnce() {
+        LogLimiter unit = LogLimiter.oneIn(2);
+
+        unit.tryAcquire();
+        unit.tryAcquire();
+        unit.tryAcquire();
+
+        assertThat(unit.drainDroppedCount(), equalTo(1L));
+        assertThat(unit.drainDroppedCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testTokenBucketAllowsTheBurstThenTheRate() {
+        LogLimiter unit = LogLimiter.perSecond(10, 3);
+        long now = 1_000_000_000L;
+
+        assertThat(unit.tryAcquire(now), equalTo(true));
+        assertThat(unit.tryAcquire(now), equalTo(true));
+        assertThat(unit.tryAcquire(now), equalTo(true));
+        assertThat(unit.tryAcquire(now), equalTo(false));
+
+        assertThat(unit.tryAcquire(now + 50_000_000L), equalTo(false));
+        assertThat(unit.tryAcquire(now + 100_000_000L), equalTo(true));
+        assertThat(unit.tryAcquire(now + 100_000_000L), equalTo(false));
+
+        assertThat(unit.tryAcquire(now + 10_000_000_000L), equalTo(true));
+        assertThat(unit.tryAcquire(now + 10_000_000_000L), equalTo(true));
+        assertThat(unit.tryAcquire(now + 10_000_000_000L), equalTo(true));
+        assertThat(unit.tryAcquire(now + 10_000_000_000L), equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSamplingRateMustBePositive() {
+        LogLimiter.oneIn(0);
+    }
+
+    @Test
+    public void testDroppedEventsMessageReportsTheCount() {
+        DroppedEventsMessage unit = new DroppedEventsMessage(new ParameterizedMessage("Retry {}", 3), 41);
+
+        assertThat(unit.getFormattedMessage(), equalTo("Retry 3 [41 similar events dropped]"));
+        assertThat(unit.getDroppedCount(), equalTo(41L));
+    }
+}
@@ -0,0 +1,30 @@
+package rt.tests.logger;
+
+import org.junit.Test;
+import rt.tests.accumappender.LongCounter;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks that the {@code test-java9-overlays} execution loads the classes of {@code src/main/java9}.
+ */
+public class MultiReleaseOverlayTest {
+
+    @Test
+    public void testTheOverlaysAreLoaded() {
+        assertThat(LongCounter.class.getResource("LongCounter.class").toString(), containsString("/versions/9/"));
+        assertThat(CallerLocator.class.getResource("CallerLocator.class").toString(), containsString("/versions/9/"));
+        assertThat(LongCounter.class.getResource("memory/Fences.class").toString(), containsString("/versions/9/"));
+    }
+
+    @Test
+    public void testTheCounterWorks() {
+        LongCounter counter = new LongCounter(5);
+
+        assertThat(counter.incrementAndGet(), equalTo(6L));
+        assertThat(counter.addAndGet(-6), equalTo(0L));
+        assertThat(counter.compareAndSet(0, 3), equalTo(true));
+        assertThat(counter.get(), equalTo(3L));
+    }
+}